@@ -0,0 +1,155 @@
+package ies.castillodeluna.ad.ejercicios.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ies.castillodeluna.ad.ejercicios.DAO.ConnectionProvider;
+
+/**
+ * Coste del envoltorio de las conexiones: delegación de una llamada cualquiera
+ * y preparación de sentencias a través de la caché, frente a la conexión directa
+ * y frente al antiguo envoltorio reflexivo (java.lang.reflect.Proxy), que además
+ * se creaba de nuevo cada vez que se pedía la conexión.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConnectionProxyBenchmark {
+
+    private final static String SQL = "SELECT ? + 1";
+
+    private Connection directa;
+    private ConnectionProvider proveedor;
+    private Connection envoltorio;
+    private Connection reflexivo;
+
+    /**
+     * Réplica del despacho del antiguo envoltorio: intercepta close() y prepareStatement(String)
+     * comparando el nombre del método, e invoca el resto por reflexión sobre la conexión real.
+     * Como la caché de sentencias no es accesible desde aquí, las sentencias se obtienen de
+     * la misma caché a través del envoltorio actual.
+     */
+    private static class Reflexivo implements InvocationHandler {
+
+        private final Connection realConnection;
+        private final Connection sentencias;
+
+        private Reflexivo(Connection conn, Connection sentencias) {
+            realConnection = conn;
+            this.sentencias = sentencias;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if(method.getName().equals("close")) return null;
+            if(method.getName().equals("prepareStatement") && args.length == 1) {
+                return sentencias.prepareStatement((String) args[0]);
+            }
+            try {
+                return method.invoke(realConnection, args);
+            }
+            catch(InvocationTargetException err) {
+                throw err.getCause();
+            }
+        }
+
+        public static Connection wrap(Connection conn, Connection sentencias) {
+            return (Connection) Proxy.newProxyInstance(
+                conn.getClass().getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new Reflexivo(conn, sentencias)
+            );
+        }
+    }
+
+    @Setup
+    public void setup() throws SQLException {
+        directa = DriverManager.getConnection("jdbc:sqlite::memory:");
+        proveedor = ConnectionProvider.fromConnection(directa);
+        envoltorio = proveedor.getConnection();
+        reflexivo = Reflexivo.wrap(directa, envoltorio);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        directa.close();
+    }
+
+    @Benchmark
+    public boolean llamadaDirecta() throws SQLException {
+        return directa.getAutoCommit();
+    }
+
+    @Benchmark
+    public boolean llamadaEnvoltorio() throws SQLException {
+        return envoltorio.getAutoCommit();
+    }
+
+    @Benchmark
+    public boolean llamadaReflexiva() throws SQLException {
+        return reflexivo.getAutoCommit();
+    }
+
+    /**
+     * Obtener la conexión, usarla y cerrarla: el proveedor reaprovecha su envoltorio.
+     */
+    @Benchmark
+    public boolean conexionEnvoltorio() throws SQLException {
+        try(Connection conn = proveedor.getConnection()) {
+            return conn.getAutoCommit();
+        }
+    }
+
+    /**
+     * Lo mismo con el antiguo proveedor, que creaba un proxy en cada getConnection().
+     */
+    @Benchmark
+    public boolean conexionReflexiva() throws SQLException {
+        try(Connection conn = Reflexivo.wrap(directa, envoltorio)) {
+            return conn.getAutoCommit();
+        }
+    }
+
+    @Benchmark
+    public int prepararDirecta() throws SQLException {
+        try(PreparedStatement pstmt = directa.prepareStatement(SQL)) {
+            return pstmt.getParameterMetaData().getParameterCount();
+        }
+    }
+
+    @Benchmark
+    public int prepararEnvoltorio() throws SQLException {
+        try(PreparedStatement pstmt = envoltorio.prepareStatement(SQL)) {
+            return pstmt.getParameterMetaData().getParameterCount();
+        }
+    }
+
+    @Benchmark
+    public int prepararReflexiva() throws SQLException {
+        try(PreparedStatement pstmt = reflexivo.prepareStatement(SQL)) {
+            return pstmt.getParameterMetaData().getParameterCount();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ies.castillodeluna.ad.ejercicios.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.DAO.Crud;
+import ies.castillodeluna.ad.ejercicios.backend.sqlite.ConexionSqlite;
+import ies.castillodeluna.ad.ejercicios.model.Cliente;
+import ies.castillodeluna.ad.ejercicios.model.Pedido;
+import ies.castillodeluna.ad.ejercicios.model.ZonaEnvio;
+
+/**
+ * Operaciones CRUD de cada DAO de SQLite sobre una base de datos en un archivo temporal
+ * con {@value #FILAS} registros por tabla. Los registros insertados durante una iteración
+ * se borran al acabarla, para que todas las iteraciones trabajen con las mismas tablas.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CrudBenchmark {
+
+    private final static int FILAS = 10_000;
+    private final static int LOTE = 100;
+
+    @Param({"Zonas_Envio", "Clientes", "Pedidos"})
+    public String tabla;
+
+    private Path db;
+    private ConexionSqlite conexion;
+    private Crud<Entity> dao;
+    private IntFunction<Entity> nuevo;
+    private String idColumna;
+    private int maxId;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @SuppressWarnings("unchecked")
+    private static Crud<Entity> generico(Crud<? extends Entity> dao) {
+        return (Crud<Entity>) dao;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        db = Files.createTempFile("benchmark", ".db");
+        Map<String, Object> opciones = new HashMap<>();
+        opciones.put("url", db.toString());
+        conexion = new ConexionSqlite(opciones);
+
+        List<ZonaEnvio> zonas = new ArrayList<>();
+        for(int i = 0; i < FILAS; i++) zonas.add(new ZonaEnvio(0, "Zona " + i, i % 20));
+        conexion.getZonaEnvioDao().insert(zonas);
+
+        List<Cliente> clientes = new ArrayList<>();
+        for(int i = 0; i < FILAS; i++) clientes.add(new Cliente(0, "Cliente " + i, "cliente" + i + "@example.com", "600000000", 1 + i % FILAS));
+        conexion.getClienteDao().insert(clientes);
+
+        List<Pedido> pedidos = new ArrayList<>();
+        for(int i = 0; i < FILAS; i++) pedidos.add(new Pedido(0, new Date(), i % 500, 1 + i % FILAS));
+        conexion.getPedidoDao().insert(pedidos);
+
+        switch(tabla) {
+            case "Zonas_Envio" -> {
+                dao = generico(conexion.getZonaEnvioDao());
+                nuevo = i -> new ZonaEnvio(0, "Nueva " + i, 5);
+                idColumna = "id_zona";
+            }
+            case "Clientes" -> {
+                dao = generico(conexion.getClienteDao());
+                nuevo = i -> new Cliente(0, "Nuevo " + i, "nuevo@example.com", "600000000", 1);
+                idColumna = "id_cliente";
+            }
+            case "Pedidos" -> {
+                dao = generico(conexion.getPedidoDao());
+                nuevo = i -> new Pedido(0, new Date(), i, 1);
+                idColumna = "id_pedido";
+            }
+            default -> throw new IllegalArgumentException(tabla);
+        }
+
+        try(
+            Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db);
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery(String.format("SELECT MAX(%s) FROM %s", idColumna, tabla));
+        ) {
+            rs.next();
+            maxId = rs.getInt(1);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void limpiar() throws Exception {
+        try(
+            Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db);
+            PreparedStatement pstmt = conn.prepareStatement(String.format("DELETE FROM %s WHERE %s > ?", tabla, idColumna));
+        ) {
+            pstmt.setInt(1, maxId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void borrar() throws Exception {
+        conexion.close();
+        for(String sufijo: new String[] { "", "-wal", "-shm" }) {
+            Files.deleteIfExists(Path.of(db + sufijo));
+        }
+    }
+
+    @Benchmark
+    public Optional<Entity> getById() throws Exception {
+        return dao.get(1 + random.nextInt(maxId));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void scan(Blackhole bh) throws Exception {
+        try(Stream<Entity> stream = dao.get()) {
+            stream.forEach(bh::consume);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOTE)
+    public void insertSingle() throws Exception {
+        for(int i = 0; i < LOTE; i++) dao.insert(nuevo.apply(i));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOTE)
+    public void insertBulk() throws Exception {
+        List<Entity> lote = new ArrayList<>(LOTE);
+        for(int i = 0; i < LOTE; i++) lote.add(nuevo.apply(i));
+        dao.insert(lote);
+    }
+}
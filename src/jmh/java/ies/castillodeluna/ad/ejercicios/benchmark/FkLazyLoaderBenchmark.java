@@ -0,0 +1,114 @@
+package ies.castillodeluna.ad.ejercicios.benchmark;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ies.castillodeluna.ad.ejercicios.FkLazyLoader;
+import ies.castillodeluna.ad.ejercicios.DAO.Crud;
+import ies.castillodeluna.ad.ejercicios.model.Cliente;
+import ies.castillodeluna.ad.ejercicios.model.ZonaEnvio;
+
+/**
+ * Coste de crear los envoltorios de carga perezosa y de las llamadas a sus getters.
+ * La zona se obtiene de un DAO en memoria, para medir sólo la intercepción.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FkLazyLoaderBenchmark {
+
+    /**
+     * DAO que siempre devuelve la misma zona.
+     */
+    private static class ZonaFija implements Crud<ZonaEnvio> {
+        private final Optional<ZonaEnvio> zona = Optional.of(new ZonaEnvio(1, "Norte", 5));
+
+        @Override
+        public Optional<ZonaEnvio> get(int id) {
+            return zona;
+        }
+
+        @Override
+        public Stream<ZonaEnvio> get() {
+            return zona.stream();
+        }
+
+        @Override
+        public boolean delete(int id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void insert(ZonaEnvio obj) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean update(ZonaEnvio obj) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean update(int oldId, int newId) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final Crud<ZonaEnvio> zonaDao = new ZonaFija();
+    private Cliente cliente;
+    private Cliente proxy;
+
+    @Setup
+    public void setup() {
+        cliente = new Cliente(1, "Ana López", "ana.lopez@example.com", "600123456", 1);
+        proxy = crear();
+    }
+
+    private Cliente crear() {
+        Cliente proxy = new FkLazyLoader<>(new Cliente()).setFk("zona", 1, zonaDao).createProxy();
+        proxy.setNombre(cliente.getNombre());
+        return proxy;
+    }
+
+    @Benchmark
+    public Cliente createProxy() {
+        return new FkLazyLoader<>(new Cliente()).setFk("zona", 1, zonaDao).createProxy();
+    }
+
+    @Benchmark
+    public String getterSinEnvoltorio() {
+        return cliente.getNombre();
+    }
+
+    @Benchmark
+    public String getterNoFk() {
+        return proxy.getNombre();
+    }
+
+    @Benchmark
+    public ZonaEnvio getterFkCargada() {
+        return proxy.getZona();
+    }
+
+    @Benchmark
+    public ZonaEnvio getterFkPendiente() {
+        // setZona no se intercepta, así que sólo se mide la carga.
+        proxy.setZona(null);
+        return proxy.getZona();
+    }
+}
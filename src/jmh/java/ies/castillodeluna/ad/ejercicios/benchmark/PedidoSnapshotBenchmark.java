@@ -0,0 +1,107 @@
+package ies.castillodeluna.ad.ejercicios.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ies.castillodeluna.ad.ejercicios.DAO.PedidoDao;
+import ies.castillodeluna.ad.ejercicios.backend.sqlite.ConexionSqlite;
+import ies.castillodeluna.ad.ejercicios.model.Cliente;
+import ies.castillodeluna.ad.ejercicios.model.Pedido;
+import ies.castillodeluna.ad.ejercicios.model.ResumenPedidos;
+import ies.castillodeluna.ad.ejercicios.model.ZonaEnvio;
+import ies.castillodeluna.ad.ejercicios.snapshot.PedidoSnapshot;
+
+/**
+ * Suma de los importes de {@value #FILAS} pedidos recorriéndolos con el DAO
+ * y con la instantánea columnar.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PedidoSnapshotBenchmark {
+
+    private final static int FILAS = 500_000;
+    private final static int CLIENTES = 100;
+
+    private Path db;
+    private ConexionSqlite conexion;
+    private Path fichero;
+    private PedidoDao dao;
+    private PedidoSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        db = Files.createTempFile("benchmark", ".db");
+        fichero = Files.createTempFile("benchmark", ".snap");
+        Map<String, Object> opciones = new HashMap<>();
+        opciones.put("url", db.toString());
+        conexion = new ConexionSqlite(opciones);
+
+        conexion.getZonaEnvioDao().insert(new ZonaEnvio(0, "Zona", 5));
+        List<Cliente> clientes = new ArrayList<>();
+        for(int i = 0; i < CLIENTES; i++) clientes.add(new Cliente(0, "Cliente " + i, "cliente" + i + "@example.com", "600000000", 1));
+        conexion.getClienteDao().insert(clientes);
+
+        List<Pedido> pedidos = new ArrayList<>();
+        for(int i = 0; i < FILAS; i++) pedidos.add(new Pedido(0, new Date(), i % 500, 1 + i % CLIENTES));
+        conexion.getPedidoDao().insert(pedidos);
+
+        dao = conexion.getPedidoDao();
+        conexion.snapshotPedidos(fichero, true);
+        snapshot = PedidoSnapshot.open(fichero);
+    }
+
+    @TearDown(Level.Trial)
+    public void borrar() throws Exception {
+        conexion.close();
+        for(String sufijo: new String[] { "", "-wal", "-shm" }) {
+            Files.deleteIfExists(Path.of(db + sufijo));
+        }
+        Files.deleteIfExists(fichero);
+    }
+
+    @Benchmark
+    public double sumaDao() throws Exception {
+        try(Stream<Pedido> stream = dao.get()) {
+            return stream.mapToDouble(Pedido::getImporte).sum();
+        }
+    }
+
+    @Benchmark
+    public double sumaSnapshot() {
+        return snapshot.sumImporte();
+    }
+
+    @Benchmark
+    public ResumenPedidos resumenClienteDao() throws Exception {
+        return dao.getResumenCliente(1);
+    }
+
+    @Benchmark
+    public ResumenPedidos resumenClienteSnapshot() {
+        return snapshot.getResumenCliente(1);
+    }
+}
@@ -0,0 +1,79 @@
+package ies.castillodeluna.ad.ejercicios.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ies.castillodeluna.ad.ejercicios.SqlScriptReader;
+import ies.castillodeluna.ad.ejercicios.SqlUtils;
+
+/**
+ * Descomposición en sentencias de guiones SQL grandes: inserciones de una y varias
+ * líneas, y disparadores cuyo cuerpo (BEGIN ... END) contiene varios puntos y coma.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SplitSqlBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int sentencias;
+
+    private byte[] guion;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("CREATE TABLE Pedidos (\n    id_pedido INTEGER PRIMARY KEY,\n    fecha DATE NOT NULL,\n    importe_total DECIMAL(10, 2) NOT NULL\n);\n\n");
+        for(int i = 0; i < sentencias; i++) {
+            if(i % 100 == 0) {
+                sb.append("CREATE TRIGGER t").append(i).append(" AFTER INSERT ON Pedidos\nBEGIN\n")
+                  .append("    UPDATE Pedidos SET importe_total = importe_total + 1 WHERE id_pedido = NEW.id_pedido;\n")
+                  .append("    DELETE FROM Pedidos WHERE importe_total < 0;\nEND;\n");
+            }
+            else if(i % 2 == 0) {
+                sb.append("INSERT INTO Pedidos (id_pedido, fecha, importe_total) VALUES\n    (")
+                  .append(i).append(", '2024-01-01', ").append(i % 500).append(".50);\n");
+            }
+            else {
+                sb.append("INSERT INTO Pedidos (id_pedido, fecha, importe_total) VALUES (")
+                  .append(i).append(", '2024-01-01', ").append(i % 500).append(".50);\n");
+            }
+        }
+        guion = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<String> splitSQL() throws IOException {
+        return SqlUtils.splitSQL(new ByteArrayInputStream(guion));
+    }
+
+    /**
+     * Recorrido sin acumular las sentencias, como hace SqlUtils.executeSQL.
+     */
+    @Benchmark
+    public void scriptReader(Blackhole bh) throws IOException {
+        SqlScriptReader sr = new SqlScriptReader(new InputStreamReader(new ByteArrayInputStream(guion), StandardCharsets.UTF_8));
+        String sentencia;
+        while((sentencia = sr.next()) != null) bh.consume(sentencia);
+    }
+}
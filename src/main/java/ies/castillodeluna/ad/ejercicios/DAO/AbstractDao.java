@@ -26,6 +26,11 @@ import javax.sql.DataSource;
 public abstract class AbstractDao {
 
     protected final ConnectionProvider cp;
+    /**
+     * Proveedor de las conexiones con las que se hacen las consultas. Salvo que
+     * se proporcione una fuente de datos específica para ello, es el mismo que cp.
+     */
+    protected final ConnectionProvider readCp;
 
     /**
      * Constructor cuando se quiere aprovechar un ConnectionProvider
@@ -35,6 +40,7 @@ public abstract class AbstractDao {
      */
     protected AbstractDao(ConnectionProvider cp) {
         this.cp = cp;
+        readCp = cp;
     }
 
     /**
@@ -44,6 +50,19 @@ public abstract class AbstractDao {
      */
     protected AbstractDao(DataSource ds) {
         cp = ConnectionProvider.fromDataSource(ds);
+        readCp = cp;
+    }
+
+    /**
+     * Constructor cuando se desea que las consultas y las modificaciones se hagan
+     * con conexiones de fuentes de datos distintas (p.e. un pool de sólo lectura
+     * y otro con una única conexión para escribir).
+     * @param ds Un DataSource a partir del cual crear las conexiones para modificar.
+     * @param readDs Un DataSource a partir del cual crear las conexiones para consultar.
+     */
+    protected AbstractDao(DataSource ds, DataSource readDs) {
+        cp = ConnectionProvider.fromDataSource(ds);
+        readCp = readDs == ds ? cp : ConnectionProvider.fromDataSource(readDs);
     }
 
     /**
@@ -55,5 +74,16 @@ public abstract class AbstractDao {
      */
     protected AbstractDao(Connection conn) {
         cp = ConnectionProvider.fromConnection(conn);
+        readCp = cp;
+    }
+
+    /**
+     * Establece el objeto que traza las sentencias que ejecuta el objeto DAO
+     * (y los que comparten con él sus conexiones, p.e. para resolver las claves foráneas).
+     * @param tracer El objeto o null, para dejar de trazar.
+     */
+    public void setTracer(SqlTracer tracer) {
+        cp.setTracer(tracer);
+        readCp.setTracer(tracer);
     }
 }
@@ -0,0 +1,161 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+
+/**
+ * Versión asíncrona de {@link Crud}: cada operación se ejecuta en el ejecutor
+ * indicado (típicamente, un hilo virtual por tarea) y devuelve un CompletableFuture.
+ * Los errores de acceso completan el futuro con un {@link DataAccessException}
+ * envuelto en un CompletionException.
+ * <p>
+ * El número de operaciones simultáneas se limita con semáforos, uno para las consultas
+ * y otro para las modificaciones, que deberían tener tantos permisos como conexiones
+ * tiene el pool que usa cada una: las operaciones que exceden el límite esperan a que
+ * otra acabe, en vez de agotar el tiempo de espera del pool.
+ * <pre>
+ *     AsyncCrud&lt;Cliente&gt; clienteDao = conexion.async(conexion.getClienteDao());
+ *     clienteDao.get(1).thenAccept(c -&gt; c.ifPresent(System.out::println));
+ * </pre>
+ * Los flujos se leen por completo antes de completar el futuro, ya que retienen
+ * una conexión mientras no se cierran.
+ */
+public class AsyncCrud<T extends Entity> {
+
+    /**
+     * Operación que puede generar un error de acceso.
+     */
+    @FunctionalInterface
+    private static interface Operacion<R> {
+        R run() throws DataAccessException;
+    }
+
+    private final Crud<T> dao;
+    private final Executor executor;
+    private final Semaphore lecturas;
+    private final Semaphore escrituras;
+
+    /**
+     * Constructor de la clase.
+     * @param dao El objeto DAO que realiza las operaciones.
+     * @param executor El ejecutor en el que se ejecutan las operaciones.
+     * @param lecturas El semáforo que limita las consultas simultáneas
+     *      (puede compartirse entre varios objetos).
+     * @param escrituras El semáforo que limita las modificaciones simultáneas
+     *      (puede ser el mismo que el de las consultas, si usan el mismo pool).
+     */
+    public AsyncCrud(Crud<T> dao, Executor executor, Semaphore lecturas, Semaphore escrituras) {
+        this.dao = dao;
+        this.executor = executor;
+        this.lecturas = lecturas;
+        this.escrituras = escrituras;
+    }
+
+    /**
+     * Constructor de la clase para cuando consultas y modificaciones usan el mismo pool.
+     * @param dao El objeto DAO que realiza las operaciones.
+     * @param executor El ejecutor en el que se ejecutan las operaciones.
+     * @param permisos El semáforo que limita las operaciones simultáneas
+     *      (puede compartirse entre varios objetos).
+     */
+    public AsyncCrud(Crud<T> dao, Executor executor, Semaphore permisos) {
+        this(dao, executor, permisos, permisos);
+    }
+
+    /**
+     * Devuelve el objeto DAO síncrono.
+     * @return El objeto DAO.
+     */
+    public Crud<T> getDao() {
+        return dao;
+    }
+
+    private <R> CompletableFuture<R> submit(Semaphore permisos, Operacion<R> operacion) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permisos.acquire();
+            }
+            catch(InterruptedException err) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(err);
+            }
+            try {
+                return operacion.run();
+            }
+            catch(DataAccessException err) {
+                throw new CompletionException(err);
+            }
+            finally {
+                permisos.release();
+            }
+        }, executor);
+    }
+
+    /** @see Crud#get(int) */
+    public CompletableFuture<Optional<T>> get(int id) {
+        return submit(lecturas, () -> dao.get(id));
+    }
+
+    /** @see Crud#get() */
+    public CompletableFuture<List<T>> get() {
+        return submit(lecturas, () -> {
+            try(Stream<T> stream = dao.get()) {
+                return stream.toList();
+            }
+        });
+    }
+
+    /** @see Crud#get(Collection) */
+    public CompletableFuture<List<T>> get(Collection<Integer> ids) {
+        return submit(lecturas, () -> {
+            try(Stream<T> stream = dao.get(ids)) {
+                return stream.toList();
+            }
+        });
+    }
+
+    /** @see Crud#delete(int) */
+    public CompletableFuture<Boolean> delete(int id) {
+        return submit(escrituras, () -> dao.delete(id));
+    }
+
+    /** @see Crud#delete(Entity) */
+    public CompletableFuture<Boolean> delete(T obj) {
+        return submit(escrituras, () -> dao.delete(obj));
+    }
+
+    /** @see Crud#insert(Entity) */
+    public CompletableFuture<Void> insert(T obj) {
+        return submit(escrituras, () -> {
+            dao.insert(obj);
+            return null;
+        });
+    }
+
+    /** @see Crud#insert(Iterable) */
+    public CompletableFuture<Void> insert(Iterable<T> objs) {
+        return submit(escrituras, () -> {
+            dao.insert(objs);
+            return null;
+        });
+    }
+
+    /** @see Crud#update(Entity) */
+    public CompletableFuture<Boolean> update(T obj) {
+        return submit(escrituras, () -> dao.update(obj));
+    }
+
+    /** @see Crud#update(int, int) */
+    public CompletableFuture<Boolean> update(int oldId, int newId) {
+        return submit(escrituras, () -> dao.update(oldId, newId));
+    }
+}
@@ -0,0 +1,188 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+
+/**
+ * Decorador que añade a cualquier objeto DAO una caché de lectura de las
+ * entidades obtenidas por su identificador:
+ * <pre>
+ *     EntityCache&lt;Cliente&gt; cache = new EntityCache&lt;&gt;(1000, Policy.TINYLFU, Duration.ofMinutes(5), true);
+ *     Crud&lt;Cliente&gt; clienteDao = new CachedCrud&lt;&gt;(new ClienteSqlite(ds), cache);
+ *
+ *     clienteDao.get(1);  // Consulta la base de datos.
+ *     clienteDao.get(1);  // Se obtiene de la caché.
+ * </pre>
+ * Las modificaciones hechas a través del decorador invalidan las entradas afectadas,
+ * pero no las hechas directamente con el DAO decorado. Los flujos completos
+ * ({@link #get()}) no se cachean. Una consulta no cachea su resultado si, mientras
+ * se hacía, se invalidó la entrada, porque podría haber leído la versión anterior.
+ */
+public class CachedCrud<T extends Entity> implements Crud<T> {
+
+    private final Crud<T> dao;
+    private final EntityCache<T> cache;
+    private final boolean readThrough;
+    private final DeferredInvalidations diferidas;
+
+    /**
+     * Constructor del decorador.
+     * @param dao El objeto DAO que realiza las operaciones.
+     * @param cache La caché, que puede compartirse entre varios decoradores.
+     */
+    public CachedCrud(Crud<T> dao, EntityCache<T> cache) {
+        this(dao, cache, true);
+    }
+
+    /**
+     * Constructor del decorador.
+     * @param dao El objeto DAO que realiza las operaciones.
+     * @param cache La caché, que puede compartirse entre varios decoradores.
+     * @param readThrough Si las lecturas usan la caché. Si es false, el decorador se
+     *      limita a invalidar las entradas que se modifican, lo cual es lo apropiado
+     *      dentro de una transacción, cuyas lecturas pueden no llegar a confirmarse.
+     */
+    public CachedCrud(Crud<T> dao, EntityCache<T> cache, boolean readThrough) {
+        this(dao, cache, readThrough, null);
+    }
+
+    /**
+     * Constructor del decorador.
+     * @param dao El objeto DAO que realiza las operaciones.
+     * @param cache La caché, que puede compartirse entre varios decoradores.
+     * @param readThrough Si las lecturas usan la caché.
+     * @param diferidas Dónde se aplazan las invalidaciones hasta que acabe la transacción
+     *      en la que se hacen las modificaciones (o null, para invalidar inmediatamente).
+     */
+    public CachedCrud(Crud<T> dao, EntityCache<T> cache, boolean readThrough, DeferredInvalidations diferidas) {
+        this.dao = dao;
+        this.cache = cache;
+        this.readThrough = readThrough;
+        this.diferidas = diferidas;
+    }
+
+    /**
+     * Devuelve la caché que usa el decorador, por ejemplo para consultar sus estadísticas.
+     * @return La caché.
+     */
+    public EntityCache<T> getCache() {
+        return cache;
+    }
+
+    /**
+     * Invalida entradas de la caché o lo aplaza hasta que acabe la transacción.
+     * @param invalidacion La invalidación.
+     */
+    private void invalidar(Runnable invalidacion) {
+        if(diferidas == null) invalidacion.run();
+        else diferidas.add(invalidacion);
+    }
+
+    @Override
+    public Optional<T> get(int id) throws DataAccessException {
+        if(!readThrough) return dao.get(id);
+
+        Optional<T> value = cache.get(id);
+        if(value == null) {
+            long stamp = cache.stamp(id);
+            value = dao.get(id);
+            cache.put(id, value, stamp);
+        }
+        return value;
+    }
+
+    @Override
+    public Stream<T> get() throws DataAccessException {
+        return dao.get();
+    }
+
+    /**
+     * Obtiene de la caché los objetos que estén en ella y consulta
+     * de una vez al DAO el resto.
+     */
+    @Override
+    public Stream<T> get(Collection<Integer> ids) throws DataAccessException {
+        if(!readThrough) return dao.get(ids);
+
+        List<T> objs = new ArrayList<>(ids.size());
+        Map<Integer, Long> pendientes = new HashMap<>();
+        for(Integer id: ids) {
+            if(id == null) continue;
+            Optional<T> value = cache.get(id);
+            if(value == null) pendientes.put(id, cache.stamp(id));
+            else value.ifPresent(objs::add);
+        }
+        if(pendientes.isEmpty()) return objs.stream();
+
+        try(Stream<T> stream = dao.get(pendientes.keySet())) {
+            stream.forEach(obj -> {
+                objs.add(obj);
+                Long stamp = pendientes.remove(obj.getId());
+                if(stamp != null) cache.put(obj.getId(), Optional.of(obj), stamp);
+            });
+        }
+        pendientes.forEach((id, stamp) -> cache.put(id, Optional.empty(), stamp));
+        return objs.stream();
+    }
+
+    @Override
+    public boolean delete(int id) throws DataAccessException {
+        try {
+            return dao.delete(id);
+        }
+        finally {
+            invalidar(() -> cache.invalidate(id));
+        }
+    }
+
+    @Override
+    public void insert(T obj) throws DataAccessException {
+        try {
+            dao.insert(obj);
+        }
+        finally {
+            invalidar(cache::invalidateMissing);
+        }
+    }
+
+    @Override
+    public void insert(Iterable<T> objs) throws DataAccessException {
+        try {
+            dao.insert(objs);
+        }
+        finally {
+            invalidar(cache::invalidateMissing);
+        }
+    }
+
+    @Override
+    public boolean update(T obj) throws DataAccessException {
+        try {
+            return dao.update(obj);
+        }
+        finally {
+            invalidar(() -> cache.invalidate(obj.getId()));
+        }
+    }
+
+    @Override
+    public boolean update(int oldId, int newId) throws DataAccessException {
+        try {
+            return dao.update(oldId, newId);
+        }
+        finally {
+            invalidar(() -> {
+                cache.invalidate(oldId);
+                cache.invalidate(newId);
+            });
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.util.stream.Stream;
+
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.model.Pedido;
+import ies.castillodeluna.ad.ejercicios.model.ResumenPedidos;
+
+/**
+ * Versión de {@link CachedCrud} para pedidos. Las consultas propias
+ * de {@link PedidoDao} no se cachean.
+ */
+public class CachedPedidoDao extends CachedCrud<Pedido> implements PedidoDao {
+
+    private final PedidoDao dao;
+
+    /**
+     * Constructor del decorador.
+     * @param dao El objeto DAO que realiza las operaciones.
+     * @param cache La caché, que puede compartirse entre varios decoradores.
+     * @param readThrough Si las lecturas usan la caché o sólo se invalidan las entradas modificadas.
+     */
+    public CachedPedidoDao(PedidoDao dao, EntityCache<Pedido> cache, boolean readThrough) {
+        this(dao, cache, readThrough, null);
+    }
+
+    /**
+     * Constructor del decorador.
+     * @param dao El objeto DAO que realiza las operaciones.
+     * @param cache La caché, que puede compartirse entre varios decoradores.
+     * @param readThrough Si las lecturas usan la caché.
+     * @param diferidas Dónde se aplazan las invalidaciones hasta que acabe la transacción
+     *      (o null, para invalidar inmediatamente).
+     */
+    public CachedPedidoDao(PedidoDao dao, EntityCache<Pedido> cache, boolean readThrough, DeferredInvalidations diferidas) {
+        super(dao, cache, readThrough, diferidas);
+        this.dao = dao;
+    }
+
+    @Override
+    public Stream<Pedido> getByCliente(int idCliente) throws DataAccessException {
+        return dao.getByCliente(idCliente);
+    }
+
+    @Override
+    public ResumenPedidos getResumenCliente(int idCliente) throws DataAccessException {
+        return dao.getResumenCliente(idCliente);
+    }
+
+    @Override
+    public Stream<ResumenPedidos> getResumenPorCliente() throws DataAccessException {
+        return dao.getResumenPorCliente();
+    }
+
+    @Override
+    public Stream<ResumenPedidos> getResumenPorZona() throws DataAccessException {
+        return dao.getResumenPorZona();
+    }
+}
@@ -11,12 +11,44 @@ import javax.sql.DataSource;
 public abstract class ConnectionProvider {
     protected boolean closeable;
 
+    // Traza de las sentencias de las conexiones (null, si no se trazan).
+    private volatile SqlTracer tracer;
+
     public abstract Connection getConnection() throws SQLException;
 
     public boolean isCloseable() {
         return closeable;
     }
 
+    /**
+     * Establece el objeto que traza las sentencias ejecutadas con las conexiones
+     * que se obtengan a partir de ahora con este ConnectionProvider.
+     * @param tracer El objeto o null, para dejar de trazar.
+     */
+    public void setTracer(SqlTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    public SqlTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Envuelve una conexión para que sus sentencias preparadas se obtengan
+     * de la caché asociada a la conexión física y, si se ha establecido
+     * un {@link SqlTracer}, para trazar las sentencias.
+     * @param conn La conexión.
+     * @param closeable Si se desea cerrar la conexión al invocar su método .close().
+     * @param cacheSize El número máximo de sentencias cacheadas (0, para no cachear).
+     * @param tracer El objeto que traza las sentencias o null, si no se quieren trazar.
+     * @return La conexión envuelta.
+     * @throws SQLException Cuando se produce un error al manipular la conexión.
+     */
+    private static Connection wrap(Connection conn, boolean closeable, int cacheSize, SqlTracer tracer) throws SQLException {
+        StatementCache cache = cacheSize > 0 ? StatementCache.forConnection(conn, cacheSize) : null;
+        return ConnectionProxy.wrap(conn, closeable, cache, tracer);
+    }
+
     /**
      * Genera un ConnectionProvider cuyo método getConnection() crea una
      * conexión a partir de un DataSource.
@@ -24,11 +56,29 @@ public abstract class ConnectionProvider {
      * @return El objeto ConnectionProvider.
      */
     public static ConnectionProvider fromDataSource(DataSource ds) {
+        return fromDataSource(ds, StatementCache.CAPACITY);
+    }
+
+    /**
+     * Genera un ConnectionProvider cuyo método getConnection() crea una
+     * conexión a partir de un DataSource y cachea sus sentencias preparadas.
+     * @param ds El DataSource proporcionado por un pool de conexión.
+     * @param cacheSize El número máximo de sentencias cacheadas por conexión (0, para no cachear).
+     * @return El objeto ConnectionProvider.
+     */
+    public static ConnectionProvider fromDataSource(DataSource ds, int cacheSize) {
         return new ConnectionProvider() {
             @Override
             public Connection getConnection() throws SQLException {
                 closeable = true;
-                return ds.getConnection();
+                Connection conn = ds.getConnection();
+                try {
+                    return wrap(conn, closeable, cacheSize, getTracer());
+                }
+                catch(SQLException err) {
+                    conn.close();
+                    throw err;
+                }
             }
         };
     }
@@ -38,17 +88,40 @@ public abstract class ConnectionProvider {
      * un envoltorio del propio objeto Connection que se le proporciona como
      * parámetro. El envoltorio actúa exactamente igual que el objeto, con
      * la excepción de que su método .close() no cierra el objeto de conexión.
+     * Todas las llamadas devuelven el mismo envoltorio.
      * @param conn El objeto Connection.
      * @return El objeto ConnectionProvider.
      */
     public static ConnectionProvider fromConnection(Connection conn) {
+        return fromConnection(conn, StatementCache.CAPACITY);
+    }
+
+    /**
+     * Genera un ConnectionProvider cuyo método .getConnection() devuelve
+     * un envoltorio del propio objeto Connection que no cierra la conexión
+     * y cachea sus sentencias preparadas.
+     * @param conn El objeto Connection.
+     * @param cacheSize El número máximo de sentencias cacheadas (0, para no cachear).
+     * @return El objeto ConnectionProvider.
+     */
+    public static ConnectionProvider fromConnection(Connection conn, int cacheSize) {
         return new ConnectionProvider() {
+            // El envoltorio se crea una sola vez y se reaprovecha
+            // durante toda la vida del proveedor (salvo que cambie la traza).
+            private Connection wrapped;
+            private SqlTracer wrappedTracer;
+
             @Override
             public Connection getConnection() throws SQLException {
                 closeable = false;
                 // Gracias a esto conn no se cerrará aunque se intente
                 // cerrar (con un try-with-resources) en la implementación.
-                return ConnectionProxy.wrap(conn, closeable);
+                SqlTracer tracer = getTracer();
+                if(wrapped == null || wrappedTracer != tracer) {
+                    wrapped = wrap(conn, closeable, cacheSize, tracer);
+                    wrappedTracer = tracer;
+                }
+                return wrapped;
             }
         };
     }
@@ -1,49 +1,397 @@
 package ies.castillodeluna.ad.ejercicios.DAO;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
 
 /**
- * Crea un proxy para las conexión con el propósito de interceptar
+ * Envoltorio para las conexiones con el propósito de interceptar
  * el método close y cerrarlo o no hacerlo dependiendo de lo que se indique
- * al construirlo
+ * al construirlo. Si se le proporciona una caché de sentencias, intercepta
+ * también .prepareStatement(String) para obtener de ella las sentencias y,
+ * si se le proporciona un {@link SqlTracer}, envuelve las sentencias que crean
+ * .prepareStatement(String) y .createStatement() para medir sus ejecuciones.
+ * El resto de métodos delegan directamente en la conexión envuelta, sin
+ * usar reflexión, por lo que el envoltorio apenas añade coste a cada llamada.
  */
-class ConnectionProxy implements InvocationHandler {
+class ConnectionProxy implements Connection {
 
     private final Connection realConnection;
     private final boolean closeable;
+    private final StatementCache cache;
+    private final SqlTracer tracer;
+    // Sentencias de la caché entregadas con esta conexión, para devolverlas
+    // a la caché al cerrarla aunque el código no las haya cerrado.
+    private final List<PreparedStatement> prestadas;
 
     /**
-     * Constructor del proxy
+     * Constructor del envoltorio
      * @param conn La conexion que se quiere envolver.
-     * @param closeable Si se desea cerrar el objeto Connection al invocar 
+     * @param closeable Si se desea cerrar el objeto Connection al invocar
      *   su método .close().
+     * @param cache La caché de sentencias preparadas o null, si no se quiere usar.
+     * @param tracer El objeto que traza las sentencias o null, si no se quieren trazar.
      */
-    private ConnectionProxy(Connection conn, boolean closeable) {
+    private ConnectionProxy(Connection conn, boolean closeable, StatementCache cache, SqlTracer tracer) {
         realConnection = conn;
         this.closeable = closeable;
+        this.cache = cache;
+        this.tracer = tracer;
+        prestadas = cache != null && closeable ? new ArrayList<>() : null;
     }
 
-    @Override
-    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        if(method.getName().equals("close") && !closeable) return null;
-        return method.invoke(realConnection, args);
+    /**
+     * Crea el envoltorio para la conexión.
+     * @param connection La conexion que se quiere envolver.
+     * @param closeable Si se desea cerrar el objeto Connection al invocar
+     *   su método .close().
+     * @return El objeto envuelto.
+     */
+    public static Connection wrap(Connection connection, boolean closeable) {
+        return wrap(connection, closeable, null);
     }
 
     /**
      * Crea el envoltorio para la conexión.
      * @param connection La conexion que se quiere envolver.
-     * @param closeable Si se desea cerrar el objeto Connection al invocar 
+     * @param closeable Si se desea cerrar el objeto Connection al invocar
      *   su método .close().
+     * @param cache La caché de sentencias preparadas o null, si no se quiere usar.
      * @return El objeto envuelto.
      */
-    public static Connection wrap(Connection connection, boolean closeable) {
-        return (Connection) Proxy.newProxyInstance(
-            connection.getClass().getClassLoader(),
-            new Class<?>[]{Connection.class},
-            new ConnectionProxy(connection, closeable)
-        );
+    public static Connection wrap(Connection connection, boolean closeable, StatementCache cache) {
+        return wrap(connection, closeable, cache, null);
+    }
+
+    /**
+     * Crea el envoltorio para la conexión.
+     * @param connection La conexion que se quiere envolver.
+     * @param closeable Si se desea cerrar el objeto Connection al invocar
+     *   su método .close().
+     * @param cache La caché de sentencias preparadas o null, si no se quiere usar.
+     * @param tracer El objeto que traza las sentencias o null, si no se quieren trazar.
+     * @return El objeto envuelto.
+     */
+    public static Connection wrap(Connection connection, boolean closeable, StatementCache cache, SqlTracer tracer) {
+        return new ConnectionProxy(connection, closeable, cache, tracer);
+    }
+
+    /**
+     * Cierra la conexión, si así se indicó al construir el envoltorio. Las sentencias
+     * de la caché se preparan sobre la conexión física, así que el pool no puede saber
+     * si con ellas se dejó una transacción sin confirmar: al restablecer el modo
+     * autocommit la confirmaría. Por eso, se deshace antes de devolver la conexión.
+     */
+    @Override
+    public void close() throws SQLException {
+        if(!closeable) return;
+        try {
+            if(prestadas != null) {
+                for(PreparedStatement pstmt: prestadas) pstmt.close();
+                prestadas.clear();
+                if(!realConnection.isClosed() && !realConnection.getAutoCommit()) realConnection.rollback();
+            }
+        }
+        finally {
+            realConnection.close();
+        }
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        PreparedStatement pstmt = cache != null ? cache.prepare(sql, realConnection) : realConnection.prepareStatement(sql);
+        if(prestadas != null && pstmt instanceof StatementCache.CachedPreparedStatement) {
+            // Las cerradas ya han vuelto a la caché.
+            if(prestadas.size() >= 16) prestadas.removeIf(p -> {
+                try {
+                    return p.isClosed();
+                }
+                catch(SQLException err) {
+                    return true;
+                }
+            });
+            prestadas.add(pstmt);
+        }
+        return tracer != null ? TracingStatement.wrap(pstmt, realConnection, tracer, sql) : pstmt;
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        Statement stmt = realConnection.createStatement();
+        return tracer != null ? TracingStatement.wrap(stmt, realConnection, tracer) : stmt;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : realConnection.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || realConnection.isWrapperFor(iface);
+    }
+
+    // Métodos que simplemente delegan en la conexión envuelta.
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        return realConnection.prepareCall(sql);
+    }
+
+    @Override
+    public String nativeSQL(String sql) throws SQLException {
+        return realConnection.nativeSQL(sql);
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        realConnection.setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        return realConnection.getAutoCommit();
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        realConnection.commit();
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        realConnection.rollback();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return realConnection.isClosed();
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        return realConnection.getMetaData();
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        realConnection.setReadOnly(readOnly);
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        return realConnection.isReadOnly();
+    }
+
+    @Override
+    public void setCatalog(String catalog) throws SQLException {
+        realConnection.setCatalog(catalog);
+    }
+
+    @Override
+    public String getCatalog() throws SQLException {
+        return realConnection.getCatalog();
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        realConnection.setTransactionIsolation(level);
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        return realConnection.getTransactionIsolation();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return realConnection.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        realConnection.clearWarnings();
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return realConnection.createStatement(resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return realConnection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return realConnection.prepareCall(sql, resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        return realConnection.getTypeMap();
+    }
+
+    @Override
+    public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+        realConnection.setTypeMap(map);
+    }
+
+    @Override
+    public void setHoldability(int holdability) throws SQLException {
+        realConnection.setHoldability(holdability);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return realConnection.getHoldability();
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        return realConnection.setSavepoint();
+    }
+
+    @Override
+    public Savepoint setSavepoint(String name) throws SQLException {
+        return realConnection.setSavepoint(name);
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        realConnection.rollback(savepoint);
+    }
+
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        realConnection.releaseSavepoint(savepoint);
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return realConnection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return realConnection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return realConnection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return realConnection.prepareStatement(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return realConnection.prepareStatement(sql, columnIndexes);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return realConnection.prepareStatement(sql, columnNames);
+    }
+
+    @Override
+    public Clob createClob() throws SQLException {
+        return realConnection.createClob();
+    }
+
+    @Override
+    public Blob createBlob() throws SQLException {
+        return realConnection.createBlob();
+    }
+
+    @Override
+    public NClob createNClob() throws SQLException {
+        return realConnection.createNClob();
+    }
+
+    @Override
+    public SQLXML createSQLXML() throws SQLException {
+        return realConnection.createSQLXML();
+    }
+
+    @Override
+    public boolean isValid(int timeout) throws SQLException {
+        return realConnection.isValid(timeout);
+    }
+
+    @Override
+    public void setClientInfo(String name, String value) throws SQLClientInfoException {
+        realConnection.setClientInfo(name, value);
+    }
+
+    @Override
+    public void setClientInfo(Properties properties) throws SQLClientInfoException {
+        realConnection.setClientInfo(properties);
+    }
+
+    @Override
+    public String getClientInfo(String name) throws SQLException {
+        return realConnection.getClientInfo(name);
+    }
+
+    @Override
+    public Properties getClientInfo() throws SQLException {
+        return realConnection.getClientInfo();
+    }
+
+    @Override
+    public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+        return realConnection.createArrayOf(typeName, elements);
+    }
+
+    @Override
+    public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+        return realConnection.createStruct(typeName, attributes);
+    }
+
+    @Override
+    public void setSchema(String schema) throws SQLException {
+        realConnection.setSchema(schema);
+    }
+
+    @Override
+    public String getSchema() throws SQLException {
+        return realConnection.getSchema();
+    }
+
+    @Override
+    public void abort(Executor executor) throws SQLException {
+        realConnection.abort(executor);
+    }
+
+    @Override
+    public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+        realConnection.setNetworkTimeout(executor, milliseconds);
+    }
+
+    @Override
+    public int getNetworkTimeout() throws SQLException {
+        return realConnection.getNetworkTimeout();
     }
 }
@@ -1,6 +1,9 @@
 package ies.castillodeluna.ad.ejercicios.DAO;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
 
@@ -22,6 +25,19 @@ public interface Crud<T extends Entity> {
      * @throws DataAccessException Cuando se produce un error de acceso.
      */
     public Stream<T> get() throws DataAccessException;
+    /**
+     * Obtiene los objetos cuyos identificadores se indican. Los identificadores
+     * que no existen se ignoran y el orden de los objetos no está garantizado.
+     * Las implementaciones deberían resolverlo con una única consulta.
+     * @param ids Los identificadores de los objetos que se quieren recuperar.
+     * @return El flujo de objetos.
+     * @throws DataAccessException Cuando se produce un error de acceso.
+     */
+    default Stream<T> get(Collection<Integer> ids) throws DataAccessException {
+        List<T> objs = new ArrayList<>(ids.size());
+        for(Integer id: ids) get(id).ifPresent(objs::add);
+        return objs.stream();
+    }
 
     /**
      * Borrar un objeto del almacenamiento a partir de su identificador.
@@ -0,0 +1,67 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+
+/**
+ * Invalidaciones de caché aplazadas hasta que acaba una transacción. Si las entradas
+ * se invalidaran al modificarse, otro hilo podría volver a cachear la versión anterior
+ * (que es la que sigue viendo mientras no se confirma), así que los {@link CachedCrud}
+ * de la transacción las acumulan aquí y se aplican tras confirmarla o deshacerla.
+ * <p>
+ * También se anotan las tablas de referencia ({@link ReferenceCrud}) que modifica la
+ * transacción, cuya copia en memoria sólo hay que volver a cargar si se confirma.
+ */
+public class DeferredInvalidations {
+
+    private final List<Runnable> pendientes = new ArrayList<>();
+    private final Set<ReferenceCrud<?>> referencias = new LinkedHashSet<>();
+
+    /**
+     * Aplaza una invalidación.
+     * @param invalidacion La invalidación.
+     */
+    synchronized void add(Runnable invalidacion) {
+        pendientes.add(invalidacion);
+    }
+
+    /**
+     * Anota que la transacción ha modificado una tabla de referencia.
+     * @param referencia El decorador de la tabla.
+     */
+    synchronized void addReload(ReferenceCrud<?> referencia) {
+        referencias.add(referencia);
+    }
+
+    /**
+     * Aplica las invalidaciones aplazadas. Debe invocarse una vez acabada la transacción.
+     */
+    public synchronized void apply() {
+        for(Runnable invalidacion: pendientes) invalidacion.run();
+        pendientes.clear();
+    }
+
+    /**
+     * Vuelve a cargar las tablas de referencia que ha modificado la transacción.
+     * Debe invocarse una vez confirmada (si se deshace, no han cambiado).
+     * @throws DataAccessException Cuando no puede cargarse alguna de ellas.
+     */
+    public synchronized void reload() throws DataAccessException {
+        DataAccessException error = null;
+        for(ReferenceCrud<?> referencia: referencias) {
+            try {
+                referencia.reload();
+            }
+            catch(DataAccessException err) {
+                if(error == null) error = err;
+                else error.addSuppressed(err);
+            }
+        }
+        referencias.clear();
+        if(error != null) throw error;
+    }
+}
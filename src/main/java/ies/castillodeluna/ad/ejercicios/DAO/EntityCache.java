@@ -0,0 +1,443 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import ies.castillodeluna.ad.ejercicios.Entity;
+
+/**
+ * Almacén acotado de entidades indexadas por su identificador, pensado para
+ * compartirse entre todos los {@link CachedCrud} de un mismo tipo de entidad.
+ * Permite elegir la política de desalojo, fijar un tiempo de vida para las entradas
+ * y recordar también los identificadores que no existen (caché negativa).
+ * <p>
+ * Los objetos cacheados se entregan tal cual a quien los pide, por lo que
+ * no deben modificarse sin actualizarlos a través del DAO.
+ */
+public class EntityCache<T extends Entity> {
+
+    /**
+     * Número máximo de entradas por defecto.
+     */
+    public final static int MAX_SIZE = 1000;
+
+    /**
+     * Política de desalojo.
+     */
+    public static enum Policy {
+        /** Se desaloja la entrada usada hace más tiempo. */
+        LRU,
+        /**
+         * W-TinyLFU: las entradas nuevas pasan por una pequeña ventana LRU y sólo
+         * entran en la zona principal si se han pedido con más frecuencia que
+         * la entrada a la que desalojarían.
+         */
+        TINYLFU;
+
+        public static Policy getPolicy(String policy) {
+            return valueOf(policy.toUpperCase().replace("-", ""));
+        }
+    }
+
+    /**
+     * Entrada de la caché. Si value es null, representa un identificador que no existe.
+     */
+    private static class Entry<T> {
+        private final T value;
+        private final long expires;
+
+        public Entry(T value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    // Versiones con las que se detecta que una entrada se ha invalidado mientras se consultaba
+    // la base de datos: una por grupo de identificadores y otra para toda la caché.
+    private final static int VERSIONES = 64;
+    private final long[] versiones = new long[VERSIONES];
+    private long generacion;
+
+    private final long ttl;
+    private final boolean cacheMissing;
+    private final Store<Entry<T>> store;
+    private final List<EntityCache<?>> dependents = new ArrayList<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructor de la caché LRU sin caducidad ni caché negativa.
+     * @param maxSize El número máximo de entradas.
+     */
+    public EntityCache(int maxSize) {
+        this(maxSize, Policy.LRU, null, false);
+    }
+
+    /**
+     * Constructor de la caché.
+     * @param maxSize El número máximo de entradas.
+     * @param policy La política de desalojo.
+     * @param ttl El tiempo de vida de las entradas o null, si no caducan.
+     * @param cacheMissing Si se desea recordar los identificadores que no existen.
+     */
+    public EntityCache(int maxSize, Policy policy, Duration ttl, boolean cacheMissing) {
+        if(maxSize < 1) throw new IllegalArgumentException("El tamaño de la caché debe ser positivo");
+        this.ttl = ttl == null ? 0 : ttl.toNanos();
+        this.cacheMissing = cacheMissing;
+        store = policy == Policy.TINYLFU ? new TinyLfuStore<>(maxSize) : new LruStore<>(maxSize);
+    }
+
+    /**
+     * Obtiene una entrada de la caché.
+     * @param id El identificador de la entidad.
+     * @return null, si la entrada no está en la caché; un Optional vacío si
+     *      está cacheado que la entidad no existe; o la entidad.
+     */
+    synchronized Optional<T> get(int id) {
+        Entry<T> entry = store.get(id);
+        if(entry != null && ttl > 0 && System.nanoTime() - entry.expires > 0) {
+            store.remove(id);
+            entry = null;
+        }
+        if(entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return Optional.ofNullable(entry.value);
+    }
+
+    /**
+     * Obtiene la versión actual de la entrada de una entidad, que cambia cada vez que
+     * se invalida. Debe obtenerse antes de consultar la base de datos y pasarse luego a
+     * {@link #put(int, Optional, long)}.
+     * @param id El identificador de la entidad.
+     * @return La versión.
+     */
+    synchronized long stamp(int id) {
+        return generacion + versiones[id & (VERSIONES - 1)];
+    }
+
+    /**
+     * Guarda en la caché el resultado de consultar una entidad, a menos que la entrada
+     * se haya invalidado durante la consulta, en cuyo caso el resultado puede estar obsoleto.
+     * @param id El identificador de la entidad.
+     * @param value El resultado de la consulta.
+     * @param stamp La versión de la entrada antes de la consulta (véase {@link #stamp(int)}).
+     */
+    synchronized void put(int id, Optional<T> value, long stamp) {
+        if(value.isEmpty() && !cacheMissing) return;
+        if(stamp != stamp(id)) return;
+        store.put(id, new Entry<>(value.orElse(null), System.nanoTime() + ttl));
+    }
+
+    /**
+     * Elimina una entidad de la caché y vacía las cachés que dependen de esta.
+     * @param id El identificador de la entidad.
+     */
+    void invalidate(int id) {
+        synchronized(this) {
+            versiones[id & (VERSIONES - 1)]++;
+            store.remove(id);
+        }
+        for(EntityCache<?> dependent: dependents) dependent.clear();
+    }
+
+    /**
+     * Elimina de la caché los identificadores registrados como inexistentes,
+     * lo cual es necesario cada vez que se agregan entidades.
+     */
+    synchronized void invalidateMissing() {
+        if(!cacheMissing) return;
+        generacion++;
+        store.removeIf(e -> e.value == null);
+    }
+
+    /**
+     * Vacía por completo la caché.
+     */
+    public synchronized void clear() {
+        generacion++;
+        store.clear();
+    }
+
+    /**
+     * Declara que las entidades de otra caché hacen referencia a las de esta, de
+     * modo que cualquier modificación en esta vacía la otra (p.e. porque un borrado
+     * o un cambio de identificador se propaga en cascada en la base de datos).
+     * @param dependent La caché dependiente.
+     * @return La propia caché.
+     */
+    public EntityCache<T> cascade(EntityCache<?> dependent) {
+        dependents.add(dependent);
+        return this;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public synchronized long getEvictions() {
+        return store.evictions;
+    }
+
+    public synchronized int size() {
+        return store.size();
+    }
+
+    /**
+     * Devuelve la proporción de consultas que se han resuelto con la caché.
+     * @return Un valor entre 0 y 1.
+     */
+    public double getHitRatio() {
+        long h = getHits(), total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Almacén de entradas con una política de desalojo. No es seguro
+     * para hilos: la sincronización la hace EntityCache.
+     */
+    private static abstract class Store<V> {
+        protected long evictions;
+
+        abstract V get(int key);
+        abstract void put(int key, V value);
+        abstract void remove(int key);
+        abstract void removeIf(Predicate<V> filter);
+        abstract void clear();
+        abstract int size();
+    }
+
+    /**
+     * Mapa LRU de capacidad fija.
+     */
+    private static class LruMap<V> extends LinkedHashMap<Integer, V> {
+        private final static long serialVersionUID = 1L;
+        private final int capacity;
+
+        public LruMap(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        public boolean isFull() {
+            return size() >= capacity;
+        }
+
+        /**
+         * Extrae la entrada usada hace más tiempo.
+         */
+        public Map.Entry<Integer, V> pollEldest() {
+            Iterator<Map.Entry<Integer, V>> it = entrySet().iterator();
+            if(!it.hasNext()) return null;
+            Map.Entry<Integer, V> eldest = it.next();
+            it.remove();
+            return eldest;
+        }
+    }
+
+    private static class LruStore<V> extends Store<V> {
+        private final LruMap<V> map;
+
+        public LruStore(int capacity) {
+            map = new LruMap<>(capacity);
+        }
+
+        @Override
+        V get(int key) {
+            return map.get(key);
+        }
+
+        @Override
+        void put(int key, V value) {
+            if(!map.containsKey(key) && map.isFull()) {
+                map.pollEldest();
+                evictions++;
+            }
+            map.put(key, value);
+        }
+
+        @Override
+        void remove(int key) {
+            map.remove(key);
+        }
+
+        @Override
+        void removeIf(Predicate<V> filter) {
+            map.values().removeIf(filter);
+        }
+
+        @Override
+        void clear() {
+            map.clear();
+        }
+
+        @Override
+        int size() {
+            return map.size();
+        }
+    }
+
+    /**
+     * Implementación de W-TinyLFU: una ventana LRU (1% de la capacidad) por la que
+     * entran las entradas nuevas y una zona principal LRU segmentada (probation y
+     * protected, 20% y 80%). Cuando la ventana se llena, su entrada más antigua sólo
+     * pasa a la zona principal si su frecuencia estimada es mayor que la de la
+     * entrada que habría que desalojar. Las frecuencias se estiman con un
+     * Count-Min Sketch que se reduce a la mitad periódicamente.
+     */
+    private static class TinyLfuStore<V> extends Store<V> {
+        private final LruMap<V> window;
+        private final LruMap<V> probation;
+        private final LruMap<V> protectedMap;
+        private final int mainCapacity;
+        private final FrequencySketch sketch;
+
+        public TinyLfuStore(int capacity) {
+            int windowCapacity = Math.max(1, capacity / 100);
+            mainCapacity = Math.max(1, capacity - windowCapacity);
+            int protectedCapacity = Math.max(1, mainCapacity * 4 / 5);
+            window = new LruMap<>(windowCapacity);
+            probation = new LruMap<>(mainCapacity);
+            protectedMap = new LruMap<>(protectedCapacity);
+            sketch = new FrequencySketch(capacity);
+        }
+
+        @Override
+        V get(int key) {
+            sketch.increment(key);
+            V value = window.get(key);
+            if(value != null) return value;
+
+            value = protectedMap.get(key);
+            if(value != null) return value;
+
+            value = probation.remove(key);
+            if(value != null) {
+                // Una segunda consulta promociona la entrada a la zona protegida.
+                if(protectedMap.isFull()) {
+                    Map.Entry<Integer, V> demoted = protectedMap.pollEldest();
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+                protectedMap.put(key, value);
+            }
+            return value;
+        }
+
+        @Override
+        void put(int key, V value) {
+            sketch.increment(key);
+            if(window.containsKey(key)) { window.put(key, value); return; }
+            if(protectedMap.containsKey(key)) { protectedMap.put(key, value); return; }
+            if(probation.containsKey(key)) { probation.put(key, value); return; }
+
+            if(window.isFull()) admit(window.pollEldest());
+            window.put(key, value);
+        }
+
+        /**
+         * Decide si la entrada que sale de la ventana entra en la zona principal.
+         * @param candidate La entrada que sale de la ventana.
+         */
+        private void admit(Map.Entry<Integer, V> candidate) {
+            if(probation.size() + protectedMap.size() < mainCapacity) {
+                probation.put(candidate.getKey(), candidate.getValue());
+                return;
+            }
+
+            LruMap<V> victims = probation.isEmpty() ? protectedMap : probation;
+            Integer victim = victims.keySet().iterator().next();
+            evictions++;
+            if(sketch.frequency(candidate.getKey()) > sketch.frequency(victim)) {
+                victims.remove(victim);
+                probation.put(candidate.getKey(), candidate.getValue());
+            }
+        }
+
+        @Override
+        void remove(int key) {
+            if(window.remove(key) == null && protectedMap.remove(key) == null) probation.remove(key);
+        }
+
+        @Override
+        void removeIf(Predicate<V> filter) {
+            window.values().removeIf(filter);
+            probation.values().removeIf(filter);
+            protectedMap.values().removeIf(filter);
+        }
+
+        @Override
+        void clear() {
+            window.clear();
+            probation.clear();
+            protectedMap.clear();
+        }
+
+        @Override
+        int size() {
+            return window.size() + probation.size() + protectedMap.size();
+        }
+    }
+
+    /**
+     * Count-Min Sketch de cuatro filas con contadores que saturan en 15. Cuando
+     * el número de incrementos alcanza diez veces la capacidad, todos los contadores
+     * se dividen entre dos para que las frecuencias antiguas pierdan peso.
+     */
+    private static class FrequencySketch {
+        private final static int[] SEEDS = { 0x97cb3127, 0xb3a6b0e5, 0x2c1b3c6d, 0x297a2d39 };
+        private final int[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        public FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            table = new int[SEEDS.length][width];
+            mask = width - 1;
+            sampleSize = 10 * capacity;
+        }
+
+        private int index(int key, int row) {
+            int h = (key ^ SEEDS[row]) * 0x9e3779b9;
+            h ^= h >>> 16;
+            return h & mask;
+        }
+
+        public void increment(int key) {
+            for(int row = 0; row < table.length; row++) {
+                int i = index(key, row);
+                if(table[row][i] < 15) table[row][i]++;
+            }
+            if(++additions >= sampleSize) reset();
+        }
+
+        public int frequency(int key) {
+            int min = Integer.MAX_VALUE;
+            for(int row = 0; row < table.length; row++) {
+                min = Math.min(min, table[row][index(key, row)]);
+            }
+            return min;
+        }
+
+        private void reset() {
+            for(int[] row: table) {
+                for(int i = 0; i < row.length; i++) row[i] >>>= 1;
+            }
+            additions /= 2;
+        }
+    }
+}
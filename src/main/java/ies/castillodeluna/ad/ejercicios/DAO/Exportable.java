@@ -0,0 +1,43 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.export.TableExporter;
+
+/**
+ * DAO cuyos registros pueden exportarse tal como están almacenados, sin
+ * transformarlos antes en objetos.
+ */
+public interface Exportable {
+
+    /**
+     * Exporta todos los registros, ordenados por su identificador. Se leen con una
+     * única consulta, por lo que la exportación es una instantánea coherente de la tabla.
+     * @param exporter El exportador, que fija el formato.
+     * @param out El canal de destino, que no se cierra.
+     * @return El número de registros exportados.
+     * @throws DataAccessException Cuando se produce un error de acceso o de escritura.
+     */
+    public long export(TableExporter exporter, WritableByteChannel out) throws DataAccessException;
+
+    /**
+     * Exporta todos los registros a un fichero, que se sobrescribe si ya existe.
+     * @param exporter El exportador, que fija el formato.
+     * @param destino La ruta del fichero.
+     * @return El número de registros exportados.
+     * @throws DataAccessException Cuando se produce un error de acceso o de escritura.
+     */
+    default long export(TableExporter exporter, Path destino) throws DataAccessException {
+        try(FileChannel out = FileChannel.open(destino, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return export(exporter, out);
+        }
+        catch(IOException err) {
+            throw new DataAccessException(String.format("No puede escribirse en %s", destino), err);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.metrics.Counter;
+import ies.castillodeluna.ad.ejercicios.metrics.MetricsRegistry;
+import ies.castillodeluna.ad.ejercicios.metrics.Timer;
+
+/**
+ * Decorador que mide la duración de las operaciones de un objeto DAO y
+ * la registra en un {@link MetricsRegistry} con el nombre <code>dao.&lt;entidad&gt;.&lt;operación&gt;</code>:
+ * <ul>
+ *  <li>get, getAll, getIn: consultas por identificador, completas y por lista de identificadores.
+ *      En las que devuelven flujos se mide lo que tarda en obtenerse el flujo.
+ *  <li>insert, insertBatch, update, delete: modificaciones.
+ *  <li>rows: contador de los objetos leídos de los flujos.
+ * </ul>
+ * Las métricas se obtienen al crear el decorador, así que medir no crea objetos.
+ */
+public class MetricsCrud<T extends Entity> implements Crud<T> {
+
+    private final Crud<T> dao;
+
+    protected final Timer getTimer;
+    protected final Timer getAllTimer;
+    protected final Timer getInTimer;
+    protected final Timer insertTimer;
+    protected final Timer insertBatchTimer;
+    protected final Timer updateTimer;
+    protected final Timer deleteTimer;
+    protected final Counter rows;
+
+    /**
+     * Constructor del decorador.
+     * @param dao El objeto DAO que realiza las operaciones.
+     * @param registry El registro de métricas.
+     * @param entity El nombre de la entidad con el que se nombran las métricas.
+     */
+    public MetricsCrud(Crud<T> dao, MetricsRegistry registry, String entity) {
+        this.dao = dao;
+        String prefix = "dao." + entity + ".";
+        getTimer = registry.timer(prefix + "get");
+        getAllTimer = registry.timer(prefix + "getAll");
+        getInTimer = registry.timer(prefix + "getIn");
+        insertTimer = registry.timer(prefix + "insert");
+        insertBatchTimer = registry.timer(prefix + "insertBatch");
+        updateTimer = registry.timer(prefix + "update");
+        deleteTimer = registry.timer(prefix + "delete");
+        rows = registry.counter(prefix + "rows");
+    }
+
+    /**
+     * Cuenta los objetos que se leen de un flujo.
+     * @param stream El flujo.
+     * @return El flujo que cuenta los objetos.
+     */
+    protected <R> Stream<R> contar(Stream<R> stream) {
+        return stream.peek(obj -> rows.increment());
+    }
+
+    @Override
+    public Optional<T> get(int id) throws DataAccessException {
+        long inicio = System.nanoTime();
+        try {
+            return dao.get(id);
+        }
+        finally {
+            getTimer.record(System.nanoTime() - inicio);
+        }
+    }
+
+    @Override
+    public Stream<T> get() throws DataAccessException {
+        long inicio = System.nanoTime();
+        try {
+            return contar(dao.get());
+        }
+        finally {
+            getAllTimer.record(System.nanoTime() - inicio);
+        }
+    }
+
+    @Override
+    public Stream<T> get(Collection<Integer> ids) throws DataAccessException {
+        long inicio = System.nanoTime();
+        try {
+            return contar(dao.get(ids));
+        }
+        finally {
+            getInTimer.record(System.nanoTime() - inicio);
+        }
+    }
+
+    @Override
+    public boolean delete(int id) throws DataAccessException {
+        long inicio = System.nanoTime();
+        try {
+            return dao.delete(id);
+        }
+        finally {
+            deleteTimer.record(System.nanoTime() - inicio);
+        }
+    }
+
+    @Override
+    public void insert(T obj) throws DataAccessException {
+        long inicio = System.nanoTime();
+        try {
+            dao.insert(obj);
+        }
+        finally {
+            insertTimer.record(System.nanoTime() - inicio);
+        }
+    }
+
+    @Override
+    public void insert(Iterable<T> objs) throws DataAccessException {
+        long inicio = System.nanoTime();
+        try {
+            dao.insert(objs);
+        }
+        finally {
+            insertBatchTimer.record(System.nanoTime() - inicio);
+        }
+    }
+
+    @Override
+    public boolean update(T obj) throws DataAccessException {
+        long inicio = System.nanoTime();
+        try {
+            return dao.update(obj);
+        }
+        finally {
+            updateTimer.record(System.nanoTime() - inicio);
+        }
+    }
+
+    @Override
+    public boolean update(int oldId, int newId) throws DataAccessException {
+        long inicio = System.nanoTime();
+        try {
+            return dao.update(oldId, newId);
+        }
+        finally {
+            updateTimer.record(System.nanoTime() - inicio);
+        }
+    }
+}
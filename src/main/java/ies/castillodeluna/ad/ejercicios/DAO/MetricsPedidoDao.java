@@ -0,0 +1,77 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.util.stream.Stream;
+
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.metrics.MetricsRegistry;
+import ies.castillodeluna.ad.ejercicios.metrics.Timer;
+import ies.castillodeluna.ad.ejercicios.model.Pedido;
+import ies.castillodeluna.ad.ejercicios.model.ResumenPedidos;
+
+/**
+ * Versión de {@link MetricsCrud} para pedidos, que mide también
+ * las consultas propias de {@link PedidoDao}.
+ */
+public class MetricsPedidoDao extends MetricsCrud<Pedido> implements PedidoDao {
+
+    private final PedidoDao dao;
+
+    private final Timer getByClienteTimer;
+    private final Timer resumenTimer;
+
+    /**
+     * Constructor del decorador.
+     * @param dao El objeto DAO que realiza las operaciones.
+     * @param registry El registro de métricas.
+     */
+    public MetricsPedidoDao(PedidoDao dao, MetricsRegistry registry) {
+        super(dao, registry, "Pedido");
+        this.dao = dao;
+        getByClienteTimer = registry.timer("dao.Pedido.getByCliente");
+        resumenTimer = registry.timer("dao.Pedido.resumen");
+    }
+
+    @Override
+    public Stream<Pedido> getByCliente(int idCliente) throws DataAccessException {
+        long inicio = System.nanoTime();
+        try {
+            return contar(dao.getByCliente(idCliente));
+        }
+        finally {
+            getByClienteTimer.record(System.nanoTime() - inicio);
+        }
+    }
+
+    @Override
+    public ResumenPedidos getResumenCliente(int idCliente) throws DataAccessException {
+        long inicio = System.nanoTime();
+        try {
+            return dao.getResumenCliente(idCliente);
+        }
+        finally {
+            resumenTimer.record(System.nanoTime() - inicio);
+        }
+    }
+
+    @Override
+    public Stream<ResumenPedidos> getResumenPorCliente() throws DataAccessException {
+        long inicio = System.nanoTime();
+        try {
+            return dao.getResumenPorCliente();
+        }
+        finally {
+            resumenTimer.record(System.nanoTime() - inicio);
+        }
+    }
+
+    @Override
+    public Stream<ResumenPedidos> getResumenPorZona() throws DataAccessException {
+        long inicio = System.nanoTime();
+        try {
+            return dao.getResumenPorZona();
+        }
+        finally {
+            resumenTimer.record(System.nanoTime() - inicio);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.util.stream.Stream;
+
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.model.Pedido;
+import ies.castillodeluna.ad.ejercicios.model.ResumenPedidos;
+
+/**
+ * Operaciones de acceso a los pedidos, que añaden a las comunes
+ * las consultas propias de esta entidad.
+ */
+public interface PedidoDao extends Crud<Pedido> {
+
+    /**
+     * Obtiene los pedidos de un cliente. La consulta se resuelve en la base
+     * de datos (y no filtrando todos los pedidos), por lo que sólo se leen
+     * los registros del cliente.
+     * @param idCliente El identificador del cliente.
+     * @return El flujo de pedidos del cliente, que debe cerrarse.
+     * @throws DataAccessException Cuando se produce un error de acceso.
+     */
+    public Stream<Pedido> getByCliente(int idCliente) throws DataAccessException;
+
+    /**
+     * Calcula el número de pedidos de un cliente, su importe total y su importe medio.
+     * @param idCliente El identificador del cliente.
+     * @return El resumen de los pedidos del cliente (con todos los valores a 0, si no tiene ninguno).
+     * @throws DataAccessException Cuando se produce un error de acceso.
+     */
+    public ResumenPedidos getResumenCliente(int idCliente) throws DataAccessException;
+
+    /**
+     * Calcula el resumen de los pedidos de cada cliente. Los clientes
+     * sin pedidos no aparecen.
+     * @return El flujo de resúmenes, que debe cerrarse.
+     * @throws DataAccessException Cuando se produce un error de acceso.
+     */
+    public Stream<ResumenPedidos> getResumenPorCliente() throws DataAccessException;
+
+    /**
+     * Calcula el resumen de los pedidos de los clientes de cada zona de envío.
+     * Las zonas sin pedidos no aparecen.
+     * @return El flujo de resúmenes, que debe cerrarse.
+     * @throws DataAccessException Cuando se produce un error de acceso.
+     */
+    public Stream<ResumenPedidos> getResumenPorZona() throws DataAccessException;
+}
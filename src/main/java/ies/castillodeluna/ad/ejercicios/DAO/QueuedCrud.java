@@ -0,0 +1,100 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.sql.Connection;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.transaction.GroupCommitWriter;
+
+/**
+ * Decorador que envía las modificaciones a un {@link GroupCommitWriter} y espera
+ * a que se confirmen, mientras que las lecturas las hace directamente el DAO
+ * decorado. Para quien lo usa, las operaciones siguen siendo síncronas, pero las
+ * escrituras de todos los hilos se confirman juntas.
+ */
+public class QueuedCrud<T extends Entity> implements Crud<T> {
+
+    private final Crud<T> dao;
+    private final Function<Connection, Crud<T>> writerDao;
+    private final GroupCommitWriter writer;
+
+    /**
+     * Constructor del decorador.
+     * @param dao El objeto DAO que realiza las lecturas.
+     * @param writerDao La función que crea un DAO que usa la conexión del escritor.
+     * @param writer El escritor.
+     */
+    public QueuedCrud(Crud<T> dao, Function<Connection, Crud<T>> writerDao, GroupCommitWriter writer) {
+        this.dao = dao;
+        this.writerDao = writerDao;
+        this.writer = writer;
+    }
+
+    /**
+     * Espera a que se confirme una modificación.
+     * @param future El futuro de la modificación.
+     * @return El resultado de la modificación.
+     * @throws DataAccessException Si la modificación no llegó a confirmarse.
+     */
+    private static <R> R esperar(CompletableFuture<R> future) throws DataAccessException {
+        try {
+            return future.join();
+        }
+        catch(CompletionException err) {
+            if(err.getCause() instanceof DataAccessException dae) throw dae;
+            throw new DataAccessException(err.getCause());
+        }
+    }
+
+    @Override
+    public Optional<T> get(int id) throws DataAccessException {
+        return dao.get(id);
+    }
+
+    @Override
+    public Stream<T> get() throws DataAccessException {
+        return dao.get();
+    }
+
+    @Override
+    public Stream<T> get(Collection<Integer> ids) throws DataAccessException {
+        return dao.get(ids);
+    }
+
+    @Override
+    public boolean delete(int id) throws DataAccessException {
+        return esperar(writer.submit(conn -> writerDao.apply(conn).delete(id)));
+    }
+
+    @Override
+    public void insert(T obj) throws DataAccessException {
+        esperar(writer.submit(conn -> {
+            writerDao.apply(conn).insert(obj);
+            return null;
+        }));
+    }
+
+    @Override
+    public void insert(Iterable<T> objs) throws DataAccessException {
+        esperar(writer.submit(conn -> {
+            writerDao.apply(conn).insert(objs);
+            return null;
+        }));
+    }
+
+    @Override
+    public boolean update(T obj) throws DataAccessException {
+        return esperar(writer.submit(conn -> writerDao.apply(conn).update(obj)));
+    }
+
+    @Override
+    public boolean update(int oldId, int newId) throws DataAccessException {
+        return esperar(writer.submit(conn -> writerDao.apply(conn).update(oldId, newId)));
+    }
+}
@@ -0,0 +1,50 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.sql.Connection;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.model.Pedido;
+import ies.castillodeluna.ad.ejercicios.model.ResumenPedidos;
+import ies.castillodeluna.ad.ejercicios.transaction.GroupCommitWriter;
+
+/**
+ * Versión de {@link QueuedCrud} para pedidos. Las consultas propias
+ * de {@link PedidoDao} las hace directamente el DAO decorado.
+ */
+public class QueuedPedidoDao extends QueuedCrud<Pedido> implements PedidoDao {
+
+    private final PedidoDao dao;
+
+    /**
+     * Constructor del decorador.
+     * @param dao El objeto DAO que realiza las lecturas.
+     * @param writerDao La función que crea un DAO que usa la conexión del escritor.
+     * @param writer El escritor.
+     */
+    public QueuedPedidoDao(PedidoDao dao, Function<Connection, Crud<Pedido>> writerDao, GroupCommitWriter writer) {
+        super(dao, writerDao, writer);
+        this.dao = dao;
+    }
+
+    @Override
+    public Stream<Pedido> getByCliente(int idCliente) throws DataAccessException {
+        return dao.getByCliente(idCliente);
+    }
+
+    @Override
+    public ResumenPedidos getResumenCliente(int idCliente) throws DataAccessException {
+        return dao.getResumenCliente(idCliente);
+    }
+
+    @Override
+    public Stream<ResumenPedidos> getResumenPorCliente() throws DataAccessException {
+        return dao.getResumenPorCliente();
+    }
+
+    @Override
+    public Stream<ResumenPedidos> getResumenPorZona() throws DataAccessException {
+        return dao.getResumenPorZona();
+    }
+}
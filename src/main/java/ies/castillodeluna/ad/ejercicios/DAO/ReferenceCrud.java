@@ -0,0 +1,252 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+
+/**
+ * Decorador para tablas de referencia: tablas pequeñas que casi nunca cambian
+ * (como las zonas de envío) y que se consultan continuamente. La tabla completa
+ * se carga en memoria al crear el objeto con {@link #load(Crud, UnaryOperator)}, indexada
+ * por el identificador, y las lecturas se resuelven sobre esa copia sin consultar la base
+ * de datos y sin bloqueos. Cada modificación hecha a través del decorador vuelve a
+ * cargar la tabla y sustituye atómicamente la copia (copy-on-write), de manera
+ * que los lectores siempre ven una copia completa y coherente.
+ * <p>
+ * Los objetos de la copia en memoria se comparten entre todos los lectores, así que
+ * a cada uno se le entrega un duplicado: si lo modifica, no afecta a los demás
+ * hasta que lo actualiza a través del decorador.
+ */
+public class ReferenceCrud<T extends Entity> implements Crud<T> {
+
+    /**
+     * Copia inmutable de la tabla. Si los identificadores son razonablemente
+     * densos se indexan directamente en un array (desplazado por el menor de ellos,
+     * con null en los huecos); si no, se buscan por bisección en un array ordenado.
+     */
+    private static class Snapshot<T extends Entity> {
+        private final T[] all;
+        private final int offset;
+        private final T[] slots;
+        private final int[] ids;
+
+        @SuppressWarnings("unchecked")
+        public Snapshot(List<T> objs) {
+            objs.sort(Comparator.comparingInt(Entity::getId));
+            all = (T[]) objs.toArray(new Entity[0]);
+
+            int min = all.length == 0 ? 0 : all[0].getId();
+            int max = all.length == 0 ? -1 : all[all.length - 1].getId();
+            long range = (long) max - min + 1;
+
+            if(range <= 4L * all.length + 64) {
+                offset = min;
+                ids = null;
+                slots = (T[]) new Entity[(int) range];
+                for(T obj: all) slots[obj.getId() - offset] = obj;
+            }
+            else {
+                offset = 0;
+                ids = new int[all.length];
+                slots = all;
+                for(int i = 0; i < all.length; i++) ids[i] = all[i].getId();
+            }
+        }
+
+        /**
+         * Busca un objeto por su identificador.
+         * @return El objeto o null, si no existe.
+         */
+        public T get(int id) {
+            if(ids != null) {
+                int i = Arrays.binarySearch(ids, id);
+                return i < 0 ? null : slots[i];
+            }
+            int i = id - offset;
+            return i < 0 || i >= slots.length ? null : slots[i];
+        }
+    }
+
+    /**
+     * Modificación de la tabla, tras la cual se vuelve a cargar.
+     */
+    @FunctionalInterface
+    private static interface Modificacion<R> {
+        R run() throws DataAccessException;
+    }
+
+    private final Crud<T> dao;
+    private final UnaryOperator<T> copia;
+    private volatile Snapshot<T> snapshot;
+
+    private ReferenceCrud(Crud<T> dao, UnaryOperator<T> copia, Snapshot<T> snapshot) {
+        this.dao = dao;
+        this.copia = copia;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Crea el decorador, para lo cual carga la tabla completa.
+     * @param <T> El tipo de las entidades.
+     * @param dao El objeto DAO con el que se consulta y modifica la tabla.
+     * @param copia La función que duplica un objeto, para entregar a cada lector el suyo.
+     * @return El decorador.
+     * @throws DataAccessException Cuando no puede cargarse la tabla.
+     */
+    public static <T extends Entity> ReferenceCrud<T> load(Crud<T> dao, UnaryOperator<T> copia) throws DataAccessException {
+        return new ReferenceCrud<>(dao, copia, read(dao));
+    }
+
+    private static <T extends Entity> Snapshot<T> read(Crud<T> dao) throws DataAccessException {
+        try(Stream<T> stream = dao.get()) {
+            return new Snapshot<>(new ArrayList<>(stream.toList()));
+        }
+    }
+
+    /**
+     * Vuelve a cargar la tabla completa y sustituye la copia en memoria.
+     * Es necesario invocarlo si la tabla se modifica sin usar este decorador
+     * (dentro de una transacción, véase {@link #track(Crud, DeferredInvalidations)}).
+     * @throws DataAccessException Cuando no puede cargarse la tabla.
+     */
+    public synchronized void reload() throws DataAccessException {
+        snapshot = read(dao);
+    }
+
+    /**
+     * Decora un DAO de la misma tabla que se usa dentro de una transacción. Las
+     * modificaciones que se hacen con él no pasan por este decorador, así que
+     * sólo se anotan en las invalidaciones aplazadas de la transacción, para
+     * volver a cargar la tabla si se confirma (véase {@link DeferredInvalidations#reload()}).
+     * @param dao El objeto DAO que usa la conexión de la transacción.
+     * @param diferidas Las invalidaciones aplazadas de la transacción.
+     * @return El objeto DAO decorado.
+     */
+    public Crud<T> track(Crud<T> dao, DeferredInvalidations diferidas) {
+        return new Crud<T>() {
+            @Override
+            public Optional<T> get(int id) throws DataAccessException {
+                return dao.get(id);
+            }
+
+            @Override
+            public Stream<T> get() throws DataAccessException {
+                return dao.get();
+            }
+
+            @Override
+            public Stream<T> get(Collection<Integer> ids) throws DataAccessException {
+                return dao.get(ids);
+            }
+
+            @Override
+            public boolean delete(int id) throws DataAccessException {
+                diferidas.addReload(ReferenceCrud.this);
+                return dao.delete(id);
+            }
+
+            @Override
+            public void insert(T obj) throws DataAccessException {
+                diferidas.addReload(ReferenceCrud.this);
+                dao.insert(obj);
+            }
+
+            @Override
+            public void insert(Iterable<T> objs) throws DataAccessException {
+                diferidas.addReload(ReferenceCrud.this);
+                dao.insert(objs);
+            }
+
+            @Override
+            public boolean update(T obj) throws DataAccessException {
+                diferidas.addReload(ReferenceCrud.this);
+                return dao.update(obj);
+            }
+
+            @Override
+            public boolean update(int oldId, int newId) throws DataAccessException {
+                diferidas.addReload(ReferenceCrud.this);
+                return dao.update(oldId, newId);
+            }
+        };
+    }
+
+    @Override
+    public Optional<T> get(int id) {
+        T obj = snapshot.get(id);
+        return obj == null ? Optional.empty() : Optional.of(copia.apply(obj));
+    }
+
+    @Override
+    public Stream<T> get() {
+        return Arrays.stream(snapshot.all).map(copia);
+    }
+
+    @Override
+    public Stream<T> get(Collection<Integer> ids) {
+        Snapshot<T> s = snapshot;
+        return ids.stream().distinct().filter(id -> id != null).map(s::get).filter(obj -> obj != null).map(copia);
+    }
+
+    /**
+     * Hace una modificación y vuelve a cargar la tabla, aunque la modificación
+     * falle (p.e. porque un lote se inserta sólo en parte). Si falla también la
+     * carga, su error se añade como suprimido al de la modificación.
+     */
+    private <R> R modificar(Modificacion<R> modificacion) throws DataAccessException {
+        R value;
+        try {
+            value = modificacion.run();
+        }
+        catch(Throwable err) {
+            try {
+                reload();
+            }
+            catch(DataAccessException | RuntimeException e) {
+                err.addSuppressed(e);
+            }
+            throw err;
+        }
+        reload();
+        return value;
+    }
+
+    @Override
+    public synchronized boolean delete(int id) throws DataAccessException {
+        return modificar(() -> dao.delete(id));
+    }
+
+    @Override
+    public synchronized void insert(T obj) throws DataAccessException {
+        modificar(() -> {
+            dao.insert(obj);
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized void insert(Iterable<T> objs) throws DataAccessException {
+        modificar(() -> {
+            dao.insert(objs);
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized boolean update(T obj) throws DataAccessException {
+        return modificar(() -> dao.update(obj));
+    }
+
+    @Override
+    public synchronized boolean update(int oldId, int newId) throws DataAccessException {
+        return modificar(() -> dao.update(oldId, newId));
+    }
+}
@@ -0,0 +1,358 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Traza de las sentencias que se ejecutan con las conexiones de un
+ * {@link ConnectionProvider} (véase {@link ConnectionProvider#setTracer(SqlTracer)}):
+ * <ul>
+ *  <li>Mide cada ejecución (executeQuery, executeUpdate, executeBatch...).
+ *  <li>Registra las sentencias que superan un umbral de tiempo, con sus parámetros
+ *      (que pueden ocultarse), el método que las ejecutó y su plan de ejecución
+ *      (EXPLAIN QUERY PLAN), lo que permite ver qué operación recorre una tabla completa.
+ *  <li>Acumula el tiempo de cada forma de sentencia (el texto SQL sin literales)
+ *      para obtener las K más costosas de la última ventana de tiempo. La ventana
+ *      se divide en dos mitades: al acabar cada mitad se desecha la más antigua, así
+ *      que el resultado abarca entre media ventana y una ventana completa.
+ * </ul>
+ * <pre>
+ *     SqlTracer tracer = new SqlTracer(Duration.ofMillis(50));
+ *     dao.setTracer(tracer);
+ *     // ...
+ *     tracer.getTopShapes().forEach(System.out::println);
+ * </pre>
+ */
+public class SqlTracer {
+
+    /**
+     * Número de formas de sentencia que se devuelven por defecto como las más costosas.
+     */
+    public final static int TOP_K = 10;
+
+    /**
+     * Número máximo de formas distintas que se acumulan. Si se supera,
+     * se desechan las que menos tiempo han consumido.
+     */
+    public final static int MAX_SHAPES = 1024;
+
+    /**
+     * Ventana de tiempo por defecto de la que se obtienen las formas más costosas.
+     */
+    public final static Duration WINDOW = Duration.ofMinutes(5);
+
+    private final static Pattern explicable = Pattern.compile("^\\s*(SELECT|INSERT|UPDATE|DELETE|REPLACE|WITH)\\b", Pattern.CASE_INSENSITIVE);
+    private final static Pattern inList = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+
+    /**
+     * Estadísticas acumuladas de una forma de sentencia.
+     * @param shape La sentencia sin literales.
+     * @param count El número de ejecuciones.
+     * @param totalNanos El tiempo total.
+     * @param maxNanos La ejecución más lenta.
+     */
+    public static record ShapeStats(String shape, long count, long totalNanos, long maxNanos) {
+        @Override
+        public String toString() {
+            return String.format("%10.3f ms %8d x %10.3f ms máx  %s", totalNanos / 1e6, count, maxNanos / 1e6, shape);
+        }
+    }
+
+    private static class Shape {
+        private final String text;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        public Shape(String text) {
+            this.text = text;
+        }
+
+        public void record(long nanos) {
+            count.increment();
+            total.add(nanos);
+            long m = max.get();
+            while(nanos > m && !max.compareAndSet(m, nanos)) m = max.get();
+        }
+
+        public ShapeStats stats() {
+            return new ShapeStats(text, count.sum(), total.sum(), max.get());
+        }
+    }
+
+    /**
+     * Formas acumuladas durante media ventana, indexadas por su texto normalizado
+     * y, para no normalizar cada vez, por el texto original de la sentencia.
+     */
+    private static class Generation {
+        private final long start;
+        private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+        private final Map<String, Shape> bySql = new ConcurrentHashMap<>();
+
+        public Generation(long start) {
+            this.start = start;
+        }
+    }
+
+    private final long threshold;
+    private final boolean redact;
+    private final boolean explain;
+    private final Consumer<String> log;
+
+    // Duración de media ventana (0, si se acumula sin límite de tiempo).
+    private final long halfWindow;
+    private volatile Generation current = new Generation(System.nanoTime());
+    private volatile Generation previous = new Generation(System.nanoTime());
+
+    /**
+     * Constructor de la clase. Muestra los parámetros y el plan de ejecución
+     * de las sentencias lentas en la salida de errores.
+     * @param threshold El tiempo a partir del cual una sentencia se considera lenta.
+     */
+    public SqlTracer(Duration threshold) {
+        this(threshold, false, true, System.err::println);
+    }
+
+    /**
+     * Constructor de la clase.
+     * @param threshold El tiempo a partir del cual una sentencia se considera lenta.
+     * @param redact Si se ocultan los valores de los parámetros.
+     * @param explain Si se obtiene el plan de ejecución de las sentencias lentas.
+     * @param log La función que recibe el registro de cada sentencia lenta.
+     */
+    public SqlTracer(Duration threshold, boolean redact, boolean explain, Consumer<String> log) {
+        this(threshold, redact, explain, log, WINDOW);
+    }
+
+    /**
+     * Constructor de la clase.
+     * @param threshold El tiempo a partir del cual una sentencia se considera lenta.
+     * @param redact Si se ocultan los valores de los parámetros.
+     * @param explain Si se obtiene el plan de ejecución de las sentencias lentas.
+     * @param log La función que recibe el registro de cada sentencia lenta.
+     * @param window La ventana de tiempo de la que se obtienen las formas más costosas
+     *      o null, para acumularlas hasta que se invoque {@link #reset()}.
+     */
+    public SqlTracer(Duration threshold, boolean redact, boolean explain, Consumer<String> log, Duration window) {
+        this.threshold = threshold.toNanos();
+        this.redact = redact;
+        this.explain = explain;
+        this.log = log;
+        this.halfWindow = window == null ? 0 : Math.max(1, window.toNanos() / 2);
+    }
+
+    /**
+     * Registra la ejecución de una sentencia.
+     * @param conn La conexión (física) en que se ejecutó.
+     * @param sql El texto de la sentencia.
+     * @param params Los parámetros asignados, indexados desde 1 (o null, si no se conocen).
+     * @param batch El número de ejecuciones agrupadas (1, si no fue un lote).
+     * @param nanos Lo que tardó en ejecutarse.
+     */
+    void record(Connection conn, String sql, Object[] params, int batch, long nanos) {
+        shape(generation(), sql).record(nanos);
+        if(nanos >= threshold) log.accept(describe(conn, sql, params, batch, nanos));
+    }
+
+    /**
+     * Obtiene la generación en curso. Si ha acabado, empieza otra y la que
+     * acaba pasa a ser la anterior (o se desecha también, si ha pasado una ventana entera).
+     */
+    private Generation generation() {
+        Generation g = current;
+        if(halfWindow == 0 || System.nanoTime() - g.start < halfWindow) return g;
+
+        synchronized(this) {
+            g = current;
+            long now = System.nanoTime();
+            if(now - g.start >= halfWindow) {
+                previous = now - g.start < 2 * halfWindow ? g : new Generation(now);
+                current = g = new Generation(now);
+            }
+            return g;
+        }
+    }
+
+    /**
+     * Obtiene la forma de una sentencia, creándola si aún no existe.
+     */
+    private Shape shape(Generation g, String sql) {
+        Shape shape = g.bySql.get(sql);
+        if(shape != null) return shape;
+
+        if(g.bySql.size() >= MAX_SHAPES) g.bySql.clear();
+        if(g.shapes.size() >= MAX_SHAPES) prune(g);
+        shape = g.shapes.computeIfAbsent(normalize(sql), Shape::new);
+        g.bySql.put(sql, shape);
+        return shape;
+    }
+
+    /**
+     * Desecha la mitad de las formas: las que menos tiempo han consumido.
+     */
+    private synchronized void prune(Generation g) {
+        if(g.shapes.size() < MAX_SHAPES) return;
+        g.shapes.values().stream()
+            .sorted(Comparator.comparingLong(s -> s.total.sum()))
+            .limit(g.shapes.size() / 2)
+            .forEach(s -> g.shapes.remove(s.text));
+        g.bySql.clear();
+    }
+
+    /**
+     * Obtiene la forma de una sentencia: sustituye los literales por ?, las listas
+     * de parámetros (p.e. las de un IN) por una sola y normaliza los espacios.
+     * @param sql El texto de la sentencia.
+     * @return La forma de la sentencia.
+     */
+    static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int n = sql.length();
+        for(int i = 0; i < n; i++) {
+            char c = sql.charAt(i);
+            if(Character.isWhitespace(c)) {
+                while(i + 1 < n && Character.isWhitespace(sql.charAt(i + 1))) i++;
+                if(sb.length() > 0) sb.append(' ');
+            }
+            else if(c == '\'') {
+                // Las comillas duplicadas ('') son una comilla dentro de la cadena.
+                i++;
+                while(i < n) {
+                    if(sql.charAt(i) != '\'') i++;
+                    else if(i + 1 < n && sql.charAt(i + 1) == '\'') i += 2;
+                    else break;
+                }
+                sb.append('?');
+            }
+            else if(Character.isDigit(c) && (sb.length() == 0 || !Character.isLetterOrDigit(sb.charAt(sb.length() - 1)) && sb.charAt(sb.length() - 1) != '_')) {
+                while(i + 1 < n && (Character.isLetterOrDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) i++;
+                sb.append('?');
+            }
+            else sb.append(c);
+        }
+        return inList.matcher(sb.toString().trim()).replaceAll("(?, ...)");
+    }
+
+    /**
+     * Compone el registro de una sentencia lenta.
+     */
+    private String describe(Connection conn, String sql, Object[] params, int batch, long nanos) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Sentencia lenta (%.3f ms", nanos / 1e6));
+        if(batch > 1) sb.append(String.format(", lote de %d", batch));
+        sb.append(')');
+        caller().ifPresent(c -> sb.append(" en ").append(c));
+        sb.append("\n    ").append(sql.strip());
+        if(params != null && params.length > 1) {
+            sb.append("\n    Parámetros: ").append(formatParams(params));
+        }
+        if(explain && conn != null && explicable.matcher(sql).find()) {
+            for(String linea: explain(conn, sql)) sb.append("\n    Plan: ").append(linea);
+        }
+        return sb.toString();
+    }
+
+    private String formatParams(Object[] params) {
+        Object[] values = Arrays.copyOfRange(params, 1, params.length);
+        if(redact) Arrays.fill(values, "***");
+        else {
+            for(int i = 0; i < values.length; i++) {
+                if(values[i] instanceof String) values[i] = "'" + values[i] + "'";
+            }
+        }
+        return Arrays.toString(values);
+    }
+
+    /**
+     * Obtiene el plan de ejecución de una sentencia. Los parámetros quedan sin
+     * asignar (valen NULL), lo cual no altera la elección de índices en SQLite.
+     * @param conn La conexión en que se ejecutó la sentencia.
+     * @param sql La sentencia.
+     * @return Las líneas del plan de ejecución. Las que empiezan por SCAN
+     *      (sin índice) indican que se recorre la tabla completa.
+     */
+    static List<String> explain(Connection conn, String sql) {
+        List<String> plan = new ArrayList<>();
+        try(
+            PreparedStatement pstmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+            ResultSet rs = pstmt.executeQuery();
+        ) {
+            int detail = rs.findColumn("detail");
+            while(rs.next()) plan.add(rs.getString(detail));
+        }
+        catch(SQLException err) {
+            plan.add("no disponible: " + err.getMessage());
+        }
+        return plan;
+    }
+
+    /**
+     * Busca en la pila el primer método ajeno a la capa de conexiones, a las clases
+     * auxiliares (SqlUtils y las clases abstractas de las que derivan los DAO) y a la
+     * biblioteca estándar, que es la operación DAO que ejecutó la sentencia.
+     */
+    private static Optional<String> caller() {
+        String pkg = SqlTracer.class.getPackageName() + ".";
+        return StackWalker.getInstance().walk(frames -> frames
+            .filter(f -> {
+                String cn = f.getClassName();
+                String name = cn.substring(cn.lastIndexOf('.') + 1);
+                return !(cn.startsWith(pkg) || cn.startsWith("java.") || cn.startsWith("jdk.") || cn.startsWith("com.sun.")
+                         || name.startsWith("$Proxy") || name.startsWith("Abstract") || name.startsWith("SqlUtils"));
+            })
+            .findFirst()
+            .map(f -> String.format("%s.%s:%d", f.getClassName().substring(f.getClassName().lastIndexOf('.') + 1), f.getMethodName(), f.getLineNumber())));
+    }
+
+    /**
+     * Devuelve las formas de sentencia que más tiempo han consumido en la última ventana.
+     * @return Las formas ordenadas de mayor a menor tiempo total.
+     */
+    public List<ShapeStats> getTopShapes() {
+        return getTopShapes(TOP_K);
+    }
+
+    /**
+     * Devuelve las formas de sentencia que más tiempo han consumido en la última ventana.
+     * @param k El número de formas que se quieren obtener.
+     * @return Las formas ordenadas de mayor a menor tiempo total.
+     */
+    public List<ShapeStats> getTopShapes(int k) {
+        Generation g = generation();
+        Map<String, ShapeStats> stats = new HashMap<>();
+        for(Generation gen: new Generation[] { previous, g }) {
+            for(Shape shape: gen.shapes.values()) {
+                stats.merge(shape.text, shape.stats(), (a, b) -> new ShapeStats(a.shape(),
+                    a.count() + b.count(), a.totalNanos() + b.totalNanos(), Math.max(a.maxNanos(), b.maxNanos())));
+            }
+        }
+        return stats.values().stream()
+            .sorted(Comparator.comparingLong(ShapeStats::totalNanos).reversed())
+            .limit(k)
+            .toList();
+    }
+
+    /**
+     * Desecha las estadísticas acumuladas, p.e. para empezar un nuevo periodo de observación.
+     */
+    public synchronized void reset() {
+        long now = System.nanoTime();
+        previous = new Generation(now);
+        current = new Generation(now);
+    }
+}
@@ -0,0 +1,355 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import ies.castillodeluna.ad.ejercicios.jfr.SqlExecutionEvent;
+
+/**
+ * Caché de sentencias preparadas asociada a una conexión física. Las sentencias
+ * se identifican por su texto SQL y, cuando se supera la capacidad, se cierra
+ * la que lleva más tiempo sin usarse (LRU).
+ * <p>
+ * Las sentencias se preparan sobre la conexión física (no sobre el envoltorio
+ * del pool), de manera que sobreviven a la devolución de la conexión al pool.
+ * Al código que las usa se le entrega un envoltorio cuyo método .close() no cierra
+ * la sentencia, sino que la devuelve a la caché:
+ * <pre>
+ *      try(
+ *          Connection conn = cp.getConnection();
+ *          PreparedStatement pstmt = conn.prepareStatement(sqlString);  // Puede salir de la caché.
+ *      ) {
+ *          // Operamos con la sentencia.
+ *      }
+ *      // Al acabar el bloque, la sentencia vuelve a la caché sin cerrarse.
+ * </pre>
+ * Cuando el pool expulsa una conexión física, la caché asociada se detecta
+ * como obsoleta (al crearse la caché de otra conexión o con {@link #purge()})
+ * y se cierran todas sus sentencias.
+ * <p>
+ * Como el pool no ve estas sentencias, no sabe si con ellas se ha dejado trabajo
+ * sin confirmar ni puede cerrarlas si no se cierran: de ambas cosas se encarga
+ * el envoltorio de la conexión ({@link ConnectionProxy}) al devolverla.
+ */
+public class StatementCache {
+
+    /**
+     * Número de sentencias que se guardan por defecto para cada conexión.
+     */
+    public final static int CAPACITY = 64;
+
+    // Las conexiones no redefinen equals, así que se comparan por identidad.
+    private final static Map<Connection, StatementCache> caches = new ConcurrentHashMap<>();
+
+    private final Connection conn;
+    private final Map<String, CachedStatement> statements;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Sentencia almacenada en la caché.
+     */
+    private static class CachedStatement {
+        private final String sql;
+        private final PreparedStatement stmt;
+        private boolean inUse;
+        private boolean evicted;
+
+        public CachedStatement(String sql, PreparedStatement stmt) {
+            this.sql = sql;
+            this.stmt = stmt;
+        }
+    }
+
+    /**
+     * Envoltorio de una sentencia cacheada que intercepta su cierre para
+     * devolverla a la caché en vez de cerrarla.
+     */
+    static class CachedPreparedStatement extends DelegatingPreparedStatement {
+
+        private final StatementCache cache;
+        private final CachedStatement cached;
+        private ResultSet rs;
+        private boolean closed;
+
+        public CachedPreparedStatement(StatementCache cache, CachedStatement cached) {
+            this.cache = cache;
+            this.cached = cached;
+        }
+
+        @Override
+        protected PreparedStatement delegate() throws SQLException {
+            if(closed) throw new SQLException("La sentencia está cerrada");
+            return cached.stmt;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if(!closed) release();
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return closed || cached.stmt.isClosed();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return iface.isInstance(this) ? iface.cast(this) : delegate().unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return iface.isInstance(this) || delegate().isWrapperFor(iface);
+        }
+
+        @Override
+        public boolean execute() throws SQLException {
+            SqlExecutionEvent event = begin();
+            boolean value = delegate().execute();
+            if(value) rs = cached.stmt.getResultSet();
+            if(event.shouldCommit()) commit(event, value ? -1 : cached.stmt.getUpdateCount());
+            return value;
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            SqlExecutionEvent event = begin();
+            rs = delegate().executeQuery();
+            if(event.shouldCommit()) commit(event, -1);
+            return rs;
+        }
+
+        @Override
+        public int executeUpdate() throws SQLException {
+            SqlExecutionEvent event = begin();
+            int rows = delegate().executeUpdate();
+            if(event.shouldCommit()) commit(event, rows);
+            return rows;
+        }
+
+        @Override
+        public long executeLargeUpdate() throws SQLException {
+            SqlExecutionEvent event = begin();
+            long rows = delegate().executeLargeUpdate();
+            if(event.shouldCommit()) commit(event, rows);
+            return rows;
+        }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            SqlExecutionEvent event = begin();
+            int[] rows = delegate().executeBatch();
+            if(event.shouldCommit()) commit(event, Arrays.stream(rows).asLongStream().sum());
+            return rows;
+        }
+
+        @Override
+        public long[] executeLargeBatch() throws SQLException {
+            SqlExecutionEvent event = begin();
+            long[] rows = delegate().executeLargeBatch();
+            if(event.shouldCommit()) commit(event, Arrays.stream(rows).sum());
+            return rows;
+        }
+
+        /**
+         * Inicia el registro en JFR de una ejecución.
+         */
+        private static SqlExecutionEvent begin() {
+            SqlExecutionEvent event = new SqlExecutionEvent();
+            event.begin();
+            return event;
+        }
+
+        private void commit(SqlExecutionEvent event, long rows) {
+            event.sql = cached.sql;
+            event.rows = rows;
+            event.commit();
+        }
+
+        /**
+         * Deja la sentencia lista para volver a usarse y la devuelve a la caché.
+         * Hasta que no está reiniciada no se marca como libre, para que nadie
+         * la obtenga de la caché mientras tanto.
+         * @throws SQLException Cuando se produce un error al manipular la sentencia.
+         */
+        private void release() throws SQLException {
+            closed = true;
+            boolean reset = false;
+            try {
+                // Cerrar el ResultSet pendiente reinicia la sentencia en SQLite
+                // y libera la transacción de lectura que mantiene abierta.
+                if(rs != null) rs.close();
+                cached.stmt.clearParameters();
+                reset = true;
+            }
+            finally {
+                cache.release(cached, reset);
+            }
+        }
+    }
+
+    /**
+     * Constructor de la caché.
+     * @param conn La conexión física sobre la que se preparan las sentencias.
+     * @param capacity El número máximo de sentencias que se guardan.
+     */
+    private StatementCache(Connection conn, int capacity) {
+        this.conn = conn;
+        statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if(size() <= capacity) return false;
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Obtiene la caché asociada a una conexión, creándola si aún no existe.
+     * @param conn La conexión (que puede ser un envoltorio de la conexión física).
+     * @param capacity El número máximo de sentencias que se guardan.
+     * @return La caché de la conexión física.
+     * @throws SQLException Cuando se produce un error al manipular la conexión.
+     */
+    static StatementCache forConnection(Connection conn, int capacity) throws SQLException {
+        Connection physical = conn.isWrapperFor(Connection.class) ? conn.unwrap(Connection.class) : conn;
+        StatementCache cache = caches.get(physical);
+        if(cache != null) return cache;
+
+        synchronized(caches) {
+            cache = caches.get(physical);
+            if(cache != null) return cache;
+            // Una conexión física nueva suele sustituir a otra que el pool ha
+            // cerrado, así que es el momento de desechar las cachés obsoletas.
+            purge();
+            cache = new StatementCache(physical, capacity);
+            caches.put(physical, cache);
+            return cache;
+        }
+    }
+
+    /**
+     * Cierra y elimina las cachés cuya conexión física está cerrada. Conviene
+     * invocarlo tras cerrar un pool, porque ya no se crearán más cachés que lo hagan.
+     */
+    public static void purge() {
+        synchronized(caches) {
+            Iterator<StatementCache> it = caches.values().iterator();
+            while(it.hasNext()) {
+                StatementCache cache = it.next();
+                try {
+                    if(!cache.conn.isClosed()) continue;
+                }
+                catch(SQLException err) {
+                    // Si no puede consultarse su estado, la conexión es inservible.
+                }
+                cache.close();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Obtiene una sentencia preparada, reaprovechándola si ya se preparó antes.
+     * Si la sentencia cacheada la está usando otro código (p.e. un flujo aún
+     * abierto), se prepara una nueva que no se cachea.
+     * @param sql El texto de la sentencia.
+     * @param origin La conexión que se entregó al código (la del pool), con la
+     *      que se preparan las sentencias que no se cachean, para que el pool las
+     *      cierre si no se cierran.
+     * @return La sentencia preparada.
+     * @throws SQLException Cuando se produce un error al preparar la sentencia.
+     */
+    synchronized PreparedStatement prepare(String sql, Connection origin) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+        if(cached == null || cached.stmt.isClosed()) {
+            misses.increment();
+            cached = new CachedStatement(sql, conn.prepareStatement(sql));
+            statements.put(sql, cached);
+        }
+        else if(cached.inUse) {
+            misses.increment();
+            return origin.prepareStatement(sql);
+        }
+        else hits.increment();
+
+        cached.inUse = true;
+        return new CachedPreparedStatement(this, cached);
+    }
+
+    /**
+     * Marca como libre una sentencia ya reiniciada. Si mientras se usaba se desalojó
+     * de la caché, o si no ha podido reiniciarse, se cierra.
+     * @param cached La sentencia.
+     * @param reset Si se ha reiniciado correctamente.
+     * @throws SQLException Cuando se produce un error al cerrar la sentencia.
+     */
+    private synchronized void release(CachedStatement cached, boolean reset) throws SQLException {
+        cached.inUse = false;
+        if(!reset && !cached.evicted) {
+            statements.remove(cached.sql, cached);
+            cached.evicted = true;
+        }
+        if(cached.evicted) cached.stmt.close();
+    }
+
+    /**
+     * Cierra una sentencia desalojada de la caché o, si está en uso,
+     * la marca para que se cierre al liberarse. Se invoca con el
+     * monitor de la caché adquirido.
+     * @param cached La sentencia desalojada.
+     */
+    private static void evict(CachedStatement cached) {
+        cached.evicted = true;
+        if(cached.inUse) return;
+        try {
+            cached.stmt.close();
+        }
+        catch(SQLException err) {
+            // La sentencia ya no se usará, así que el error es irrelevante.
+        }
+    }
+
+    /**
+     * Cierra todas las sentencias de la caché.
+     */
+    private synchronized void close() {
+        statements.values().forEach(StatementCache::evict);
+        statements.clear();
+    }
+
+    /**
+     * Devuelve el número de veces que se ha reaprovechado una sentencia de esta caché.
+     * @return El número de aciertos.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Devuelve el número de veces que ha sido necesario preparar una sentencia en esta caché.
+     * @return El número de fallos.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Devuelve la proporción de sentencias que se han obtenido de esta caché.
+     * @return Un valor entre 0 y 1.
+     */
+    public double getHitRatio() {
+        long h = getHits(), total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+}
@@ -0,0 +1,533 @@
+package ies.castillodeluna.ad.ejercicios.DAO;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * Envoltorio de una sentencia preparada que mide sus ejecuciones y se las comunica
+ * a un {@link SqlTracer}. Guarda, además, los parámetros que se le asignan
+ * (setInt, setString...) para poder mostrarlos; los que se asignan con flujos
+ * (setBinaryStream, setCharacterStream...) no se muestran. Las sentencias no
+ * preparadas se envuelven con {@link TracingStatement.Plain}.
+ * <p>
+ * Como {@link ConnectionProxy}, delega sin reflexión: sólo se sobrescriben los
+ * métodos que ejecutan la sentencia o le asignan parámetros.
+ */
+class TracingStatement extends DelegatingPreparedStatement {
+
+    private final PreparedStatement pstmt;
+    private final Connection conn;
+    private final SqlTracer tracer;
+    private final String sql;
+    private Object[] params = new Object[1];
+    private int batch;
+
+    private TracingStatement(PreparedStatement pstmt, Connection conn, SqlTracer tracer, String sql) {
+        this.pstmt = pstmt;
+        this.conn = conn;
+        this.tracer = tracer;
+        this.sql = sql;
+    }
+
+    /**
+     * Envuelve una sentencia preparada.
+     * @param pstmt La sentencia.
+     * @param conn La conexión física, con la que se obtiene el plan de ejecución.
+     * @param tracer El objeto que registra las ejecuciones.
+     * @param sql El texto de la sentencia.
+     * @return La sentencia envuelta.
+     */
+    static PreparedStatement wrap(PreparedStatement pstmt, Connection conn, SqlTracer tracer, String sql) {
+        return new TracingStatement(pstmt, conn, tracer, sql);
+    }
+
+    /**
+     * Envuelve una sentencia no preparada.
+     * @param stmt La sentencia.
+     * @param conn La conexión física, con la que se obtiene el plan de ejecución.
+     * @param tracer El objeto que registra las ejecuciones.
+     * @return La sentencia envuelta.
+     */
+    static Statement wrap(Statement stmt, Connection conn, SqlTracer tracer) {
+        return new Plain(stmt, conn, tracer);
+    }
+
+    @Override
+    protected PreparedStatement delegate() {
+        return pstmt;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : pstmt.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || pstmt.isWrapperFor(iface);
+    }
+
+    private void record(long inicio, int n) {
+        tracer.record(conn, sql, params, n, System.nanoTime() - inicio);
+    }
+
+    // Ejecuciones.
+
+    @Override
+    public boolean execute() throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            return pstmt.execute();
+        }
+        finally {
+            record(inicio, 1);
+        }
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            return pstmt.executeQuery();
+        }
+        finally {
+            record(inicio, 1);
+        }
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            return pstmt.executeUpdate();
+        }
+        finally {
+            record(inicio, 1);
+        }
+    }
+
+    @Override
+    public long executeLargeUpdate() throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            return pstmt.executeLargeUpdate();
+        }
+        finally {
+            record(inicio, 1);
+        }
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            return pstmt.executeBatch();
+        }
+        finally {
+            record(inicio, batch);
+            batch = 0;
+        }
+    }
+
+    @Override
+    public long[] executeLargeBatch() throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            return pstmt.executeLargeBatch();
+        }
+        finally {
+            record(inicio, batch);
+            batch = 0;
+        }
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        pstmt.addBatch();
+        batch++;
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        pstmt.clearBatch();
+        batch = 0;
+    }
+
+    // Parámetros.
+
+    private void param(int index, Object value) {
+        if(index < 1) return;
+        if(index >= params.length) params = Arrays.copyOf(params, index + 1);
+        params[index] = value;
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        pstmt.clearParameters();
+        Arrays.fill(params, null);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        pstmt.setNull(parameterIndex, sqlType);
+        param(parameterIndex, null);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        pstmt.setNull(parameterIndex, sqlType, typeName);
+        param(parameterIndex, null);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        pstmt.setBoolean(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        pstmt.setByte(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        pstmt.setShort(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        pstmt.setInt(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        pstmt.setLong(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        pstmt.setFloat(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        pstmt.setDouble(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        pstmt.setBigDecimal(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        pstmt.setString(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String x) throws SQLException {
+        pstmt.setNString(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        pstmt.setBytes(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        pstmt.setDate(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        pstmt.setDate(parameterIndex, x, cal);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        pstmt.setTime(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        pstmt.setTime(parameterIndex, x, cal);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        pstmt.setTimestamp(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        pstmt.setTimestamp(parameterIndex, x, cal);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        pstmt.setObject(parameterIndex, x);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        pstmt.setObject(parameterIndex, x, targetSqlType);
+        param(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        pstmt.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+        param(parameterIndex, x);
+    }
+
+    /**
+     * Envoltorio de una sentencia no preparada, que recibe el texto SQL
+     * en cada ejecución. De los lotes se muestra la primera sentencia.
+     */
+    static class Plain extends DelegatingStatement<Statement> {
+
+        private final Statement stmt;
+        private final Connection conn;
+        private final SqlTracer tracer;
+        private int batch;
+        private String batchSql;
+
+        private Plain(Statement stmt, Connection conn, SqlTracer tracer) {
+            this.stmt = stmt;
+            this.conn = conn;
+            this.tracer = tracer;
+        }
+
+        @Override
+        protected Statement delegate() {
+            return stmt;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return iface.isInstance(this) ? iface.cast(this) : stmt.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return iface.isInstance(this) || stmt.isWrapperFor(iface);
+        }
+
+        private void record(String sql, long inicio, int n) {
+            long nanos = System.nanoTime() - inicio;
+            // Un lote vacío no tiene texto que registrar.
+            if(sql != null) tracer.record(conn, sql, null, n, nanos);
+        }
+
+        @Override
+        public boolean execute(String sql) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.execute(sql);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.execute(sql, autoGeneratedKeys);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.execute(sql, columnIndexes);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public boolean execute(String sql, String[] columnNames) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.execute(sql, columnNames);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public ResultSet executeQuery(String sql) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.executeQuery(sql);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public int executeUpdate(String sql) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.executeUpdate(sql);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.executeUpdate(sql, autoGeneratedKeys);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.executeUpdate(sql, columnIndexes);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.executeUpdate(sql, columnNames);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.executeLargeUpdate(sql);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.executeLargeUpdate(sql, autoGeneratedKeys);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.executeLargeUpdate(sql, columnIndexes);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.executeLargeUpdate(sql, columnNames);
+            }
+            finally {
+                record(sql, inicio, 1);
+            }
+        }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.executeBatch();
+            }
+            finally {
+                record(batchSql, inicio, batch);
+                batch = 0;
+                batchSql = null;
+            }
+        }
+
+        @Override
+        public long[] executeLargeBatch() throws SQLException {
+            long inicio = System.nanoTime();
+            try {
+                return stmt.executeLargeBatch();
+            }
+            finally {
+                record(batchSql, inicio, batch);
+                batch = 0;
+                batchSql = null;
+            }
+        }
+
+        @Override
+        public void addBatch(String sql) throws SQLException {
+            stmt.addBatch(sql);
+            batch++;
+            if(batchSql == null) batchSql = sql;
+        }
+
+        @Override
+        public void clearBatch() throws SQLException {
+            stmt.clearBatch();
+            batch = 0;
+            batchSql = null;
+        }
+    }
+}
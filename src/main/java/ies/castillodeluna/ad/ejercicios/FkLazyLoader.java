@@ -2,16 +2,20 @@ package ies.castillodeluna.ad.ejercicios;
 import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.util.Arrays;
+import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ies.castillodeluna.ad.ejercicios.DAO.Crud;
 import ies.castillodeluna.ad.ejercicios.annotations.Fk;
 import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.jfr.FkLazyLoadEvent;
 import javassist.util.proxy.MethodHandler;
 import javassist.util.proxy.Proxy;
 import javassist.util.proxy.ProxyFactory;
@@ -34,60 +38,114 @@ import javassist.util.proxy.ProxyFactory;
  *     // Una vez creado el envoltorio para el estudiante, se le pueden cargar los datos.
  *     estudiante.cargaDatos(id, nombre, centro);
  * </pre>
+ * Si el procesador de anotaciones ha generado la subclase {@code <Entidad>Lazy}
+ * (véase {@link LazyEntity}) y todas las claves definidas están anotadas con
+ * {@code @Fk}, el envoltorio es un objeto de esa subclase, que no usa reflexión.
+ * Si no, la clase del envoltorio se genera con javassist una única vez por cada
+ * clase de entidad y se guarda junto a la relación entre getters y atributos, de
+ * manera que envolver un objeto sólo supone instanciar la clase ya generada.
  */
-public class FkLazyLoader<T extends Entity> {
-
-    private static final Map<Class<?>, Map<String, PropertyDescriptor>> cache = new HashMap<>();
-
-    private final Map<String, PropertyDescriptor> descriptors;
-    private final Map<String, Map<String, Object>> fks;
-    private T object;
+public class FkLazyLoader<T extends Entity> implements MethodHandler {
 
     /**
-     * Constructor de la clase.
-     * @param object El objeto que posee las claves foráneas.
+     * Información precalculada de una clase de entidad.
      */
-    public FkLazyLoader(T object) {
-        this.object = object;
-        fks = new HashMap<>();
-        descriptors = getPropertyDescriptors();
+    private static class Metadata {
+        /** Descriptores con getter, indexados por el nombre del atributo. */
+        private final Map<String, PropertyDescriptor> descriptors = new HashMap<>();
+        /** Descriptores con getter, indexados por el nombre del getter. */
+        private final Map<String, PropertyDescriptor> getters = new HashMap<>();
+        /** Nombres de los atributos anotados como clave foránea. */
+        private final Set<String> fks = new HashSet<>();
+        /** Fábrica de la subclase generada (null, si no existe). */
+        private final LazyEntity.Factory factory;
+        /** Constructor de la clase envoltorio de javassist (se genera sólo si llega a necesitarse). */
+        private volatile Constructor<?> proxyConstructor;
+
+        public Metadata(Class<?> clazz) {
+            try {
+                for(PropertyDescriptor d: Introspector.getBeanInfo(clazz).getPropertyDescriptors()) {
+                    if(d.getReadMethod() == null) continue;
+                    descriptors.put(d.getName(), d);
+                    getters.put(d.getReadMethod().getName(), d);
+                }
+            }
+            catch(IntrospectionException err) {
+                throw new RuntimeException(err);
+            }
+
+            for(Field field: clazz.getDeclaredFields()) {
+                if(field.isAnnotationPresent(Fk.class)) fks.add(field.getName());
+            }
 
-        // Definimos un mapa con todos las claves foráneas declaradas.
-        for(Field field: object.getClass().getDeclaredFields()) {
-            if(!field.isAnnotationPresent(Fk.class)) continue;
-            fks.put(field.getName(), null);
+            factory = findFactory(clazz);
+        }
+
+        /**
+         * Busca la fábrica de la subclase generada por el procesador de anotaciones.
+         * Sólo se usa reflexión aquí, una vez por cada clase de entidad.
+         */
+        private static LazyEntity.Factory findFactory(Class<?> clazz) {
+            try {
+                Class<?> fclazz = Class.forName(clazz.getName() + "Lazy$Factory", true, clazz.getClassLoader());
+                return (LazyEntity.Factory) fclazz.getDeclaredConstructor().newInstance();
+            }
+            catch(ReflectiveOperationException | ClassCastException err) {
+                return null;
+            }
+        }
+
+        /**
+         * Obtiene el constructor de la clase envoltorio de javassist, que se genera la primera vez.
+         */
+        public Constructor<?> getProxyConstructor(Class<?> clazz) {
+            Constructor<?> ctor = proxyConstructor;
+            if(ctor != null) return ctor;
+
+            synchronized(this) {
+                if(proxyConstructor != null) return proxyConstructor;
+                // Sólo se interceptan los getters: el resto de métodos
+                // se ejecutan directamente sin pasar por el manejador.
+                ProxyFactory factory = new ProxyFactory();
+                factory.setSuperclass(clazz);
+                factory.setFilter(m -> m.getParameterCount() == 0 && getters.containsKey(m.getName()));
+                try {
+                    return proxyConstructor = factory.createClass().getDeclaredConstructor();
+                }
+                catch(NoSuchMethodException | SecurityException e) {
+                    throw new IllegalStateException(String.format("'%s' requiere un constructor sin parámetros", clazz.getSimpleName()), e);
+                }
+            }
         }
     }
 
     /**
-     * Obtiene todos los descriptores asociados al objeto.
-     * @return Un mapa donde las claves son los nombres de los descriptores y los valores los descriptores.
+     * Referencia a una clave foránea: su identificador y el DAO con el que consultarla.
      */
-    private Map<String, PropertyDescriptor> getPropertyDescriptors() {
-        Class<?> clazz = object.getClass();
+    private static class FkRef {
+        private final Integer id;
+        private final Crud<? extends Entity> dao;
 
-        // Si no se han cacheado los descriptores de esta clase de objeto.
-        if(!cache.containsKey(clazz)) {
-            try {
-                PropertyDescriptor[] descriptors = Introspector.getBeanInfo(clazz).getPropertyDescriptors();
-                cache.put(clazz, Arrays.stream(descriptors).filter(d -> d.getReadMethod() != null).collect(Collectors.toMap(d -> d.getName(), d -> d)));
-            }
-            catch(IntrospectionException err) {
-                throw new RuntimeException(err);
-            }
+        public FkRef(Integer id, Crud<? extends Entity> dao) {
+            this.id = id;
+            this.dao = dao;
         }
-        return cache.get(clazz);
     }
 
+    private static final Map<Class<?>, Metadata> cache = new ConcurrentHashMap<>();
+
+    private final Metadata metadata;
+    private final Map<String, FkRef> fks;
+    private T object;
+
     /**
-     * Obtiene un descriptor a partir del nombre de su getter.
-     * @param getter El nombre del getter.
-     * @return El descriptor asociado al getter.
+     * Constructor de la clase.
+     * @param object El objeto que posee las claves foráneas.
      */
-    private PropertyDescriptor getPropertyDescriptor(String getter) {
-        return descriptors.values().stream()
-            .filter(d -> d.getReadMethod().getName() == getter).findFirst()
-            .orElse(null);
+    public FkLazyLoader(T object) {
+        this.object = object;
+        fks = new HashMap<>();
+        metadata = cache.computeIfAbsent(object.getClass(), Metadata::new);
     }
 
     /**
@@ -98,23 +156,53 @@ public class FkLazyLoader<T extends Entity> {
      * @return El propio objeto cargador.
      */
     public FkLazyLoader<T> setFk(String name, Integer fkid, Crud<? extends Entity> sqlDao) {
-        if(!descriptors.containsKey(name)) {
+        if(!metadata.descriptors.containsKey(name)) {
             throw new IllegalStateException(String.format("%s: no es un atributo o no tiene definido un getter", name));
         }
 
-        if(!fks.containsKey(name)) {
+        if(!metadata.fks.contains(name)) {
             // Podríamos advertir con un logger de que el atributo no esta anotado como clave foránea.
         }
 
         // Almacenamos para cada clave foránea el identificador y un objeto apropiado para hacer la consulta.
-        Map<String, Object> value = Map.of(
-            "id", fkid,
-            "dao", sqlDao
-        );
-        fks.put(name, value);
+        fks.put(name, new FkRef(fkid, sqlDao));
         return this;
     }
 
+    /**
+     * Captura las llamadas a los getters del envoltorio y, si el getter corresponde
+     * a una clave foránea aún no obtenida, la consulta y la establece.
+     */
+    @Override
+    public Object invoke(Object self, Method method, Method proceed, Object[] args) throws Throwable {
+        Object value = proceed.invoke(self, args);
+        if(value != null || fks.isEmpty()) return value;
+
+        PropertyDescriptor pd = metadata.getters.get(method.getName());
+        if(pd == null) return value;
+
+        FkRef ofk = fks.get(pd.getName());
+        // Si la clave foránea no es nula, pero el atributo al que hace referencia es nulo
+        // es necesario realizar la consulta a la base de datos y establecer el valor.
+        if(ofk != null) {
+            Integer fk = ofk.id;
+            String ent = object.getClass().getSimpleName();
+            String ref = method.getReturnType().getSimpleName();
+            FkLazyLoadEvent event = new FkLazyLoadEvent();
+            event.begin();
+            value = ofk.dao.get(fk).orElseThrow(() -> new DataAccessException(String.format("Violación de integridad referencial: %s('%d') referido en %s no existe", ref, fk, ent)));
+            if(event.shouldCommit()) {
+                event.entity = ent;
+                event.field = pd.getName();
+                event.fkId = fk;
+                event.commit();
+            }
+            pd.getWriteMethod().invoke(self, value);
+        }
+
+        return value;
+    }
+
     /**
      * Crea el envoltorio que captura las llamadas a los getters de las claves foráneas y
      * obtiene su valor a partir del identificador en caso de que aún no se hayan obtenido
@@ -122,36 +210,19 @@ public class FkLazyLoader<T extends Entity> {
      */
     @SuppressWarnings("unchecked")
     public T createProxy() {
-        ProxyFactory factory = new ProxyFactory();
-        factory.setSuperclass(object.getClass());
-
-        MethodHandler handler = (self, method, proceed, args) -> {
-            Object value = proceed.invoke(self, args);
-
-            PropertyDescriptor pd = getPropertyDescriptor(method.getName());
-            if(pd != null) {  // El método es un getter.
-                Map<String, Object> ofk = fks.get(pd.getName());
-                // Si la clave foránea no es nula, pero el atributo al que hace referencia es nulo
-                // es necesario realizar la consulta a la base de datos y establecer el valor.
-                if(ofk != null && value == null) {
-                    Integer fk =  (Integer) ofk.get("id"); 
-                    Crud<? extends Entity> sqlDao = (Crud<? extends Entity>) ofk.get("dao");
-                    String ent = object.getClass().getSimpleName();
-                    String ref = method.getReturnType().getSimpleName();
-                    value = sqlDao.get(fk).orElseThrow(() -> new DataAccessException(String.format("Violación de integridad referencial: %s('%d') referido en %s no existe", ref, fk, ent)));
-                    pd.getWriteMethod().invoke(self, value);
-                }
+        if(metadata.factory != null && metadata.fks.containsAll(fks.keySet())) {
+            Entity lazy = metadata.factory.create();
+            for(Map.Entry<String, FkRef> fk: fks.entrySet()) {
+                ((LazyEntity) lazy).setFk(fk.getKey(), fk.getValue().id, fk.getValue().dao);
             }
-
-            return value;
-        };
+            return (T) lazy;
+        }
 
         try {
-            Object proxy = factory.createClass().getDeclaredConstructor().newInstance();
-            ((Proxy) proxy).setHandler(handler);
+            Object proxy = metadata.getProxyConstructor(object.getClass()).newInstance();
+            ((Proxy) proxy).setHandler(this);
             return (T) proxy;
-        } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException
-                | NoSuchMethodException | SecurityException e) {
+        } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
             throw new IllegalStateException(String.format("'%s' requiere un constructor sin parámetros", object.getClass().getSimpleName()), e);
         }
     }
@@ -0,0 +1,153 @@
+package ies.castillodeluna.ad.ejercicios;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import ies.castillodeluna.ad.ejercicios.DAO.Crud;
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessRuntimeException;
+
+/**
+ * Resuelve por lotes las claves foráneas de un flujo de entidades. Conforme se consume
+ * el flujo, se acumulan ventanas de N objetos, se consultan todas sus claves foráneas
+ * con una única consulta ({@link Crud#get(java.util.Collection)}) y se establecen las
+ * referencias, de manera que nunca se hace una consulta por cada objeto:
+ * <pre>
+ *     try(Stream&lt;Cliente&gt; clientes = new FkPrefetcher&lt;&gt;(clienteDao.get(), 100)
+ *                                        .setFk(Cliente::getIdZonaEnvio, Cliente::setZona, zonaDao)
+ *                                        .stream()) {
+ *         // getZona() ya no consulta la base de datos.
+ *         clientes.forEach(c -&gt; System.out.println(c.getZona().getNombre()));
+ *     }
+ * </pre>
+ * Si los objetos son envoltorios de carga perezosa (véase {@link FkLazyLoader}),
+ * al quedar establecida la referencia ya no se lanza su consulta individual.
+ */
+public class FkPrefetcher<T extends Entity> {
+
+    /**
+     * Número de objetos que se acumulan por defecto antes de resolver sus claves.
+     */
+    public final static int WINDOW = 100;
+
+    /**
+     * Definición de una clave foránea: cómo obtener su identificador,
+     * cómo establecer la referencia y con qué DAO consultarla.
+     */
+    private static class FkDef<T extends Entity, R extends Entity> {
+        private final Function<T, Integer> fkid;
+        private final BiConsumer<T, R> setter;
+        private final Crud<R> dao;
+
+        public FkDef(Function<T, Integer> fkid, BiConsumer<T, R> setter, Crud<R> dao) {
+            this.fkid = fkid;
+            this.setter = setter;
+            this.dao = dao;
+        }
+
+        /**
+         * Consulta de una vez las claves foráneas de los objetos y establece las referencias.
+         * @param objs Los objetos de la ventana.
+         */
+        public void resolve(List<T> objs) {
+            Set<Integer> ids = new HashSet<>();
+            for(T obj: objs) ids.add(fkid.apply(obj));
+            ids.remove(null);
+            if(ids.isEmpty()) return;
+
+            Map<Integer, R> refs;
+            try(Stream<R> stream = dao.get(ids)) {
+                refs = stream.collect(Collectors.toMap(Entity::getId, r -> r, (a, b) -> a));
+            }
+            catch(DataAccessException err) {
+                throw new DataAccessRuntimeException(err);
+            }
+
+            for(T obj: objs) {
+                Integer id = fkid.apply(obj);
+                if(id == null) continue;
+                R ref = refs.get(id);
+                if(ref == null) {
+                    throw new DataAccessRuntimeException(String.format("Violación de integridad referencial: '%d' referido en %s no existe", id, obj.getClass().getSimpleName()));
+                }
+                setter.accept(obj, ref);
+            }
+        }
+    }
+
+    private final Stream<T> stream;
+    private final int window;
+    private final List<FkDef<T, ?>> fks;
+
+    /**
+     * Constructor de la clase.
+     * @param stream El flujo de objetos cuyas claves foráneas se quieren resolver.
+     */
+    public FkPrefetcher(Stream<T> stream) {
+        this(stream, WINDOW);
+    }
+
+    /**
+     * Constructor de la clase.
+     * @param stream El flujo de objetos cuyas claves foráneas se quieren resolver.
+     * @param window El número de objetos cuyas claves se resuelven en cada consulta.
+     */
+    public FkPrefetcher(Stream<T> stream, int window) {
+        if(window < 1) throw new IllegalArgumentException("El tamaño de la ventana debe ser positivo");
+        this.stream = stream;
+        this.window = window;
+        fks = new ArrayList<>();
+    }
+
+    /**
+     * Define una clave foránea.
+     * @param <R> El tipo del objeto referido.
+     * @param fkid La función que obtiene de cada objeto el identificador de la clave (o null, si no tiene).
+     * @param setter La función que establece en cada objeto la referencia.
+     * @param dao El objeto DAO que permite consultar los objetos referidos.
+     * @return El propio objeto.
+     */
+    public <R extends Entity> FkPrefetcher<T> setFk(Function<T, Integer> fkid, BiConsumer<T, R> setter, Crud<R> dao) {
+        fks.add(new FkDef<>(fkid, setter, dao));
+        return this;
+    }
+
+    /**
+     * Genera el flujo de objetos con las claves foráneas resueltas. Al cerrarlo
+     * se cierra el flujo original.
+     * @return El flujo resultante.
+     */
+    public Stream<T> stream() {
+        Spliterator<T> source = stream.spliterator();
+
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, source.characteristics() & Spliterator.ORDERED) {
+            private final List<T> buffer = new ArrayList<>(window);
+            private int pos;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if(pos == buffer.size()) {
+                    buffer.clear();
+                    pos = 0;
+                    while(buffer.size() < window && source.tryAdvance(buffer::add));
+                    if(buffer.isEmpty()) return false;
+                    for(FkDef<T, ?> fk: fks) fk.resolve(buffer);
+                }
+                action.accept(buffer.get(pos++));
+                return true;
+            }
+        };
+
+        return StreamSupport.stream(spliterator, false).onClose(stream::close);
+    }
+}
@@ -0,0 +1,29 @@
+package ies.castillodeluna.ad.ejercicios;
+
+import ies.castillodeluna.ad.ejercicios.DAO.Crud;
+
+/**
+ * Entidad que obtiene sus claves foráneas la primera vez que se consultan.
+ * La implementan las subclases {@code <Entidad>Lazy} que genera el procesador
+ * de anotaciones para las entidades con atributos {@code @Fk}, y {@link FkLazyLoader}
+ * las usa en lugar de generar un envoltorio en tiempo de ejecución.
+ */
+public interface LazyEntity {
+
+    /**
+     * Define una clave foránea.
+     * @param name El nombre del atributo anotado con {@code @Fk}.
+     * @param fkid El valor del identificador que es clave foránea.
+     * @param dao El objeto DAO que permite consultar el objeto con ese identificador.
+     * @return false, si el atributo no es una clave foránea de la entidad.
+     */
+    public boolean setFk(String name, Integer fkid, Crud<? extends Entity> dao);
+
+    /**
+     * Crea objetos de una subclase generada. Cada subclase {@code <Entidad>Lazy}
+     * incluye la suya como clase anidada {@code Factory}.
+     */
+    public static interface Factory {
+        public Entity create();
+    }
+}
@@ -20,6 +20,20 @@ public class Main {
         } catch (Exception e) {
             System.err.println("Error fatal: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            cerrarConexion();
+        }
+    }
+
+    /*
+     * Cerrar la conexión al salir
+     */
+    private static void cerrarConexion() {
+        if (conexion == null) return;
+        try {
+            conexion.close();
+        } catch (Exception e) {
+            System.err.println("Error al cerrar la conexión: " + e.getMessage());
         }
     }
 
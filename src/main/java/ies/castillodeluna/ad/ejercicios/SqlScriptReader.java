@@ -0,0 +1,197 @@
+package ies.castillodeluna.ad.ejercicios;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lector que descompone un guión SQL en sentencias conforme lo lee, de manera que
+ * nunca tiene en memoria más que la sentencia en curso:
+ * <pre>
+ *     try(Reader r = Files.newBufferedReader(guion)) {
+ *         SqlScriptReader sr = new SqlScriptReader(r);
+ *         String sentencia;
+ *         while((sentencia = sr.next()) != null) {
+ *             // ...
+ *         }
+ *     }
+ * </pre>
+ * Las sentencias acaban en punto y coma, salvo que este se encuentre dentro de una
+ * cadena ('...'), de un identificador entrecomillado ("...", `...` o [...]), de un
+ * comentario (que se eliminan) o de un bloque BEGIN ... END (el cuerpo de un disparador)
+ * o CASE ... END. Un BEGIN o un END que empiezan la sentencia son de control de
+ * transacciones y no abren ni cierran bloques.
+ * <p>
+ * Las sentencias se devuelven sin el punto y coma final.
+ */
+public class SqlScriptReader {
+
+    private final static int BUFFER = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER];
+    private int pos;
+    private int len;
+    private final StringBuilder sb = new StringBuilder();
+
+    /**
+     * Constructor de la clase. El lector no se cierra al acabar.
+     * @param reader El lector del que se obtiene el guión.
+     */
+    public SqlScriptReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    private int read() throws IOException {
+        if(pos == len) {
+            len = reader.read(buffer, 0, BUFFER);
+            pos = 0;
+            if(len <= 0) {
+                len = 0;
+                return -1;
+            }
+        }
+        return buffer[pos++];
+    }
+
+    /**
+     * Consulta el siguiente carácter sin consumirlo.
+     */
+    private int peek() throws IOException {
+        int c = read();
+        if(c >= 0) pos--;
+        return c;
+    }
+
+    /**
+     * Obtiene la siguiente sentencia.
+     * @return La sentencia o null, si se ha acabado el guión.
+     * @throws IOException Cuando no puede leerse el guión.
+     */
+    public String next() throws IOException {
+        sb.setLength(0);
+        int depth = 0;
+        int words = 0;
+
+        int c;
+        while((c = read()) >= 0) {
+            switch(c) {
+                case '\'':
+                case '"':
+                case '`':
+                    quoted(c, c);
+                    break;
+                case '[':
+                    quoted('[', ']');
+                    break;
+                case '-':
+                    if(peek() == '-') {
+                        while((c = read()) >= 0 && c != '\n');
+                        sb.append('\n');
+                    }
+                    else sb.append('-');
+                    break;
+                case '/':
+                    if(peek() == '*') {
+                        read();
+                        int prev = 0;
+                        while((c = read()) >= 0 && !(prev == '*' && c == '/')) prev = c;
+                        sb.append(' ');
+                    }
+                    else sb.append('/');
+                    break;
+                case ';':
+                    if(depth > 0) {
+                        sb.append(';');
+                        break;
+                    }
+                    String sentencia = sb.toString().strip();
+                    if(!sentencia.isEmpty()) return sentencia;
+                    sb.setLength(0);
+                    words = 0;
+                    break;
+                default:
+                    if(!Character.isLetter(c) && c != '_') {
+                        sb.append((char) c);
+                        break;
+                    }
+                    int start = sb.length();
+                    sb.append((char) c);
+                    while((c = peek()) >= 0 && (Character.isLetterOrDigit(c) || c == '_' || c == '$')) sb.append((char) read());
+
+                    if(isWord(start, "CASE")) depth++;
+                    else if(words > 0 && isWord(start, "BEGIN")) depth++;
+                    else if(words > 0 && depth > 0 && isWord(start, "END")) depth--;
+                    words++;
+            }
+        }
+
+        String sentencia = sb.toString().strip();
+        sb.setLength(0);
+        return sentencia.isEmpty() ? null : sentencia;
+    }
+
+    /**
+     * Copia una cadena o un identificador entrecomillado. El delimitador
+     * de cierre duplicado representa al propio carácter.
+     */
+    private void quoted(int open, int close) throws IOException {
+        sb.append((char) open);
+        int c;
+        while((c = read()) >= 0) {
+            sb.append((char) c);
+            if(c == close) {
+                if(peek() != close) return;
+                sb.append((char) read());
+            }
+        }
+    }
+
+    /**
+     * Comprueba si la palabra que empieza en una posición del búfer es una palabra clave.
+     */
+    private boolean isWord(int start, String keyword) {
+        if(sb.length() - start != keyword.length()) return false;
+        for(int i = 0; i < keyword.length(); i++) {
+            if(Character.toUpperCase(sb.charAt(start + i)) != keyword.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Genera un flujo perezoso con las sentencias que quedan por leer.
+     * Los errores de lectura se propagan como UncheckedIOException.
+     * @return El flujo de sentencias.
+     */
+    public Stream<String> stream() {
+        Iterator<String> it = new Iterator<>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    if(next == null) next = SqlScriptReader.this.next();
+                    return next != null;
+                }
+                catch(IOException err) {
+                    throw new UncheckedIOException(err);
+                }
+            }
+
+            @Override
+            public String next() {
+                if(!hasNext()) throw new NoSuchElementException();
+                String s = next;
+                next = null;
+                return s;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
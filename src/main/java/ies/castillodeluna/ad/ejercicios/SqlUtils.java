@@ -1,9 +1,9 @@
 package ies.castillodeluna.ad.ejercicios;
 import java.sql.Statement;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -14,12 +14,12 @@ import java.util.List;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.function.Function;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import ies.castillodeluna.ad.ejercicios.errors.DataAccessRuntimeException;
+import ies.castillodeluna.ad.ejercicios.jfr.SqlStreamEvent;
 import ies.castillodeluna.ad.ejercicios.transaction.TransactionManager;
 
 /**
@@ -35,6 +35,7 @@ public class SqlUtils {
         private final ResultSet rs;
         private boolean avanzar;
         private boolean hasNextElement;
+        private long rows;
 
         public ResultSetIterator(ResultSet rs) {
             this.rs = rs;
@@ -64,6 +65,7 @@ public class SqlUtils {
         @Override
         public ResultSet next() {
             avanzar = true;
+            rows++;
             return rs;
         }
     }
@@ -76,6 +78,39 @@ public class SqlUtils {
         R apply(T t) throws SQLException;
     }
 
+    /**
+     * Transformación de las filas de un ResultSet en objetos que resuelve las etiquetas
+     * de las columnas una sola vez por ResultSet, en vez de una vez por fila:
+     * <pre>
+     *     RowMapper&lt;ZonaEnvio&gt; mapper = rs -&gt; {
+     *         int id = rs.findColumn("id_zona");
+     *         int nombre = rs.findColumn("nombre_zona");
+     *         int tarifa = rs.findColumn("tarifa_envio");
+     *         return r -&gt; new ZonaEnvio(r.getInt(id), r.getString(nombre), r.getDouble(tarifa));
+     *     };
+     * </pre>
+     */
+    @FunctionalInterface
+    public static interface RowMapper<T> {
+        /**
+         * Prepara la transformación de las filas de un ResultSet.
+         * @param rs El ResultSet cuyas filas se van a transformar.
+         * @return La función que transforma cada fila de ese ResultSet.
+         * @throws SQLException Cuando alguna columna no existe.
+         */
+        CheckedFunction<ResultSet, T> bind(ResultSet rs) throws SQLException;
+
+        /**
+         * Transforma la fila actual de un ResultSet, cuando sólo se quiere obtener una.
+         * @param rs El ResultSet.
+         * @return El objeto.
+         * @throws SQLException Cuando se produce un error al leer la fila.
+         */
+        default T map(ResultSet rs) throws SQLException {
+            return bind(rs).apply(rs);
+        }
+    }
+
     /**
      * Transforma el SQLException que propaga una CheckedFUnction en un DataAccessException, que es una excepción
      * que no necesita ser declarada.
@@ -105,7 +140,11 @@ public class SqlUtils {
      * @throws SQLException Cuando se produce un error al realizar la consulta.
      */
     public static Stream<ResultSet> resultSetToStream(AutoCloseable ac, ResultSet rs) {
-        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new ResultSetIterator(rs), Spliterator.ORDERED), false)
+        ResultSetIterator it = new ResultSetIterator(rs);
+        SqlStreamEvent event = new SqlStreamEvent();
+        event.begin();
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED), false)
             .onClose(() -> {
                 try {
                     rs.close();
@@ -114,6 +153,12 @@ public class SqlUtils {
                 catch(Exception err) {
                     throw new DataAccessRuntimeException(err);
                 }
+                finally {
+                    if(event.shouldCommit()) {
+                        event.rows = it.rows;
+                        event.commit();
+                    }
+                }
             });
     }
 
@@ -133,41 +178,43 @@ public class SqlUtils {
         return resultSetToStream(ac, rs).map(checkedToUnchecked(mapper));
     }
 
+    /**
+     * Genera un flujo de objetos derivados del resultado de una consulta,
+     * resolviendo las columnas una única vez antes de recorrer las filas.
+     * Tiene nombre propio para no confundirse con
+     * {@link #resultSetToStream(AutoCloseable, ResultSet, CheckedFunction)},
+     * ya que ambas interfaces admiten las mismas expresiones lambda.
+     * @param <T> La clase del objeto.
+     * @param ac  La sentencia que generó rs o la conexión sobre la que se ejecutó la sentencia.
+     * @param rs  El objeto que representa los resultado de la consulta.
+     * @param mapper El objeto que permite transformar las filas en objetos.
+     * @return El flujo de objetos.
+     * @throws SQLException Cuando no pueden resolverse las columnas.
+     */
+    public static <T> Stream<T> mapResultSet(AutoCloseable ac, ResultSet rs, RowMapper<T> mapper) throws SQLException {
+        return resultSetToStream(ac, rs, mapper.bind(rs));
+    }
+
+    /**
+     * Número de sentencias de un guión que se envían juntas a la base de datos.
+     */
+    public final static int SCRIPT_BATCH = 500;
+
+    private final static Pattern transactionControl = Pattern.compile("^(BEGIN|COMMIT|END)\\b", Pattern.CASE_INSENSITIVE);
+
     /**
      * Descompone un guión SQL en las sentencias de que se compone.
+     * Para guiones grandes es preferible recorrerlos con {@link SqlScriptReader}.
      * @param st Entrada de la que se lee el guión
      * @return  Una lista con las sentencias separadadas.
      * @throws IOException
      */
     public static List<String> splitSQL(InputStream st) throws IOException {
-        Pattern beginPattern = Pattern.compile("\\b(BEGIN|CASE)\\b", Pattern.CASE_INSENSITIVE);
-        Pattern endPattern = Pattern.compile("\\bEND\\b", Pattern.CASE_INSENSITIVE);
-
-        try (
-            InputStreamReader sr = new InputStreamReader(st, StandardCharsets.UTF_8);
-            BufferedReader br = new BufferedReader(sr);
-        ) {
+        try (Reader reader = new InputStreamReader(st, StandardCharsets.UTF_8)) {
+            SqlScriptReader sr = new SqlScriptReader(reader);
             List<String> sentencias = new ArrayList<>();
-            String linea;
-            String sentencia = "";
-            int contador = 0;
-            while((linea = br.readLine()) != null) {
-                linea = linea.trim();
-                if(linea.isEmpty()) continue;
-
-                Matcher beginMatcher = beginPattern.matcher(linea);
-                Matcher endMatcher = endPattern.matcher(linea);
-
-                while(beginMatcher.find()) contador++;
-                while(endMatcher.find()) contador--;
-
-                sentencia += "\n" + linea;
-
-                if(contador == 0 && linea.endsWith(";")) {
-                    sentencias.add(sentencia);
-                    sentencia = "";
-                }
-            }
+            String sentencia;
+            while((sentencia = sr.next()) != null) sentencias.add(sentencia);
             return sentencias;
         }
     }
@@ -180,16 +227,55 @@ public class SqlUtils {
      * @throws IOException Cuando no puede accederse al flujo de entrada.
      */
     public static void executeSQL(Connection conn, InputStream st) throws SQLException, IOException {
-       try (
-           TransactionManager tm = new TransactionManager(conn);
-           Statement stmt = conn.createStatement();
-       ) {
-           List<String> sentencias = splitSQL(st);
-           for(String sentencia: sentencias) {
-               stmt.addBatch(sentencia);
-           }
-           stmt.executeBatch();
-           if (!tm.isNested()) tm.commit();
-       }
+        try (Reader reader = new InputStreamReader(st, StandardCharsets.UTF_8)) {
+            executeSQL(conn, reader, SCRIPT_BATCH, 0);
+        }
+    }
+
+    /**
+     * Ejecuta las sentencias de un guión SQL conforme se leen, enviándolas por lotes, de
+     * modo que la memoria consumida no depende del tamaño del guión (p.e. para volcar
+     * en una base de datos nueva la copia de seguridad de otra). Las sentencias de control
+     * de transacciones del guión (BEGIN, COMMIT, END) se ignoran, porque la transacción
+     * la gestiona este método. Si la conexión ya estaba en una transacción, las sentencias
+     * forman parte de ella y no se hacen confirmaciones intermedias.
+     * @param conn La conexión para ejecutar las sentencias.
+     * @param reader El lector del que se obtiene el guión (no se cierra).
+     * @param batchSize El número de sentencias de cada lote.
+     * @param commitEvery Cada cuántas sentencias se confirma la transacción
+     *      (0, para confirmar sólo al final y que el guión se ejecute por completo o no se ejecute).
+     * @return El número de sentencias ejecutadas.
+     * @throws SQLException Cuando alguna sentencia es inválida y no puede ejecutarse.
+     * @throws IOException Cuando no puede leerse el guión.
+     */
+    public static long executeSQL(Connection conn, Reader reader, int batchSize, int commitEvery) throws SQLException, IOException {
+        if(batchSize < 1) throw new IllegalArgumentException("El tamaño del lote debe ser positivo");
+        try (
+            TransactionManager tm = new TransactionManager(conn);
+            Statement stmt = conn.createStatement();
+        ) {
+            SqlScriptReader sr = new SqlScriptReader(reader);
+            long ejecutadas = 0;
+            int pendientes = 0;
+            String sentencia;
+            while((sentencia = sr.next()) != null) {
+                if(transactionControl.matcher(sentencia).find()) continue;
+
+                stmt.addBatch(sentencia);
+                ejecutadas++;
+                if(++pendientes == batchSize) {
+                    stmt.executeBatch();
+                    pendientes = 0;
+                }
+                if(commitEvery > 0 && ejecutadas % commitEvery == 0 && !tm.isNested()) {
+                    if(pendientes > 0) stmt.executeBatch();
+                    pendientes = 0;
+                    conn.commit();
+                }
+            }
+            if(pendientes > 0) stmt.executeBatch();
+            if(!tm.isNested()) tm.commit();
+            return ejecutadas;
+        }
     }
 }
@@ -8,6 +8,8 @@ import javax.sql.DataSource;
 public abstract class AbstractDsCache {
     
     private static Map<String, DataSource> cache = new HashMap<>();
+    // Número de conexiones que usan cada DataSource de la caché.
+    private static Map<DataSource, Integer> usos = new HashMap<>();
 
     /**
      * Genera una clave para identificar el DataSource y distinguirlo de otros.
@@ -24,11 +26,29 @@ public abstract class AbstractDsCache {
 
     protected DataSource getDataSource(Map<String, Object> opciones) {
         String key = generateKey(opciones);
-        if(cache.containsKey(key)) return cache.get(key);
+        synchronized(cache) {
+            DataSource ds = cache.get(key);
+            if(ds == null) {
+                ds = createDataSource(opciones);
+                cache.put(key, ds);
+            }
+            usos.merge(ds, 1, Integer::sum);
+            return ds;
+        }
+    }
 
-        DataSource ds = createDataSource(opciones);
-        cache.put(key, ds);
-        return ds;
+    /**
+     * Deja de usar un DataSource obtenido con {@link #getDataSource(Map)}. Cuando
+     * ya no lo usa nadie, se saca de la caché y quien lo libera debe cerrarlo.
+     * @param ds El DataSource.
+     * @return true, si era el último uso y, por tanto, debe cerrarse.
+     */
+    protected boolean releaseDataSource(DataSource ds) {
+        synchronized(cache) {
+            Integer restantes = usos.computeIfPresent(ds, (d, n) -> n > 1 ? n - 1 : null);
+            if(restantes != null) return false;
+            return cache.values().remove(ds);
+        }
     }
 
 }
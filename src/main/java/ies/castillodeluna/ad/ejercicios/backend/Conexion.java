@@ -1,23 +1,41 @@
 package ies.castillodeluna.ad.ejercicios.backend;
 
+import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.DAO.AsyncCrud;
 import ies.castillodeluna.ad.ejercicios.DAO.Crud;
+import ies.castillodeluna.ad.ejercicios.DAO.PedidoDao;
 import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
 import ies.castillodeluna.ad.ejercicios.model.Cliente;
-import ies.castillodeluna.ad.ejercicios.model.Pedido;
 import ies.castillodeluna.ad.ejercicios.model.ZonaEnvio;
 
 
-public interface Conexion {
+public interface Conexion extends AutoCloseable {
 
     @FunctionalInterface
     public interface Transaccionable {
-        void run(Crud<Cliente> clienteDao, Crud<Pedido> pedidoDao, Crud<ZonaEnvio> zonaEnvioDao) throws DataAccessException;
+        void run(Crud<Cliente> clienteDao, PedidoDao pedidoDao, Crud<ZonaEnvio> zonaEnvioDao) throws DataAccessException;
     }
 
     Crud<Cliente> getClienteDao();
-    Crud<Pedido> getPedidoDao();
+    PedidoDao getPedidoDao();
     Crud<ZonaEnvio> getZonaEnvioDao(); 
 
+    /**
+     * Genera una versión asíncrona de un DAO obtenido con esta conexión,
+     * cuyas operaciones simultáneas se limitan a las que admite la conexión.
+     * @param <T> El tipo de las entidades.
+     * @param dao El objeto DAO.
+     * @return El objeto DAO asíncrono.
+     */
+    <T extends Entity> AsyncCrud<T> async(Crud<T> dao);
+
     void transaccion(Transaccionable operaciones) throws DataAccessException;
+
+    /**
+     * Cierra la conexión y libera sus recursos. Los DAO obtenidos con ella dejan de poder usarse.
+     * @throws DataAccessException Si no pueden liberarse los recursos.
+     */
+    @Override
+    void close() throws DataAccessException;
 }
 
@@ -0,0 +1,487 @@
+package ies.castillodeluna.ad.ejercicios.backend.sqlite;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
+
+import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.SqlUtils;
+import ies.castillodeluna.ad.ejercicios.SqlUtils.CheckedFunction;
+import ies.castillodeluna.ad.ejercicios.SqlUtils.RowMapper;
+import ies.castillodeluna.ad.ejercicios.DAO.AbstractDao;
+import ies.castillodeluna.ad.ejercicios.DAO.ConnectionProvider;
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessRuntimeException;
+import ies.castillodeluna.ad.ejercicios.export.TableExporter;
+import ies.castillodeluna.ad.ejercicios.jfr.SqlExecutionEvent;
+import ies.castillodeluna.ad.ejercicios.transaction.TransactionManager;
+
+/**
+ * Clase base de los DAO de SQLite. Reúne las operaciones que son comunes
+ * a todas las tablas y que dependen de particularidades de SQLite, como
+ * la inserción masiva por lotes.
+ */
+public abstract class AbstractSqliteDao extends AbstractDao {
+
+    /**
+     * Número de registros que se envían por defecto en cada lote.
+     */
+    public final static int BATCH_SIZE = 500;
+
+    /**
+     * Número máximo de identificadores que se incluyen en una cláusula IN.
+     * Es inferior al límite de parámetros de las versiones antiguas de SQLite (999).
+     */
+    public final static int IN_SIZE = 512;
+
+    /**
+     * Fija los parámetros de una sentencia preparada a partir de un objeto.
+     */
+    @FunctionalInterface
+    protected static interface ParamSetter<T> {
+        void set(T obj, PreparedStatement stmt) throws SQLException;
+    }
+
+    /**
+     * Fija los parámetros de una consulta.
+     */
+    @FunctionalInterface
+    protected static interface QuerySetter {
+        void set(PreparedStatement stmt) throws SQLException;
+    }
+
+    private int batchSize = BATCH_SIZE;
+    private int pageSize = 0;
+    private int fetchSize = 0;
+
+    protected AbstractSqliteDao(DataSource ds) {
+        super(ds);
+    }
+
+    protected AbstractSqliteDao(DataSource ds, DataSource readDs) {
+        super(ds, readDs);
+    }
+
+    protected AbstractSqliteDao(Connection conn) {
+        super(conn);
+    }
+
+    protected AbstractSqliteDao(ConnectionProvider cp) {
+        super(cp);
+    }
+
+    /**
+     * Devuelve el número de registros que se envían en cada lote al hacer inserciones masivas.
+     * @return El tamaño del lote.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Fija el número de registros que se envían en cada lote al hacer inserciones masivas.
+     * @param batchSize El tamaño del lote.
+     */
+    public void setBatchSize(int batchSize) {
+        if(batchSize < 1) throw new IllegalArgumentException("El tamaño del lote debe ser positivo");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Devuelve el número de registros de cada página al obtener todos los registros.
+     * @return El tamaño de página (0, si no se pagina).
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Fija el número de registros de cada página al obtener todos los registros
+     * (véase {@link #getAll(String, String, RowMapper)}).
+     * @param pageSize El tamaño de página o 0, si no se quiere paginar.
+     */
+    public void setPageSize(int pageSize) {
+        if(pageSize < 0) throw new IllegalArgumentException("El tamaño de página no puede ser negativo");
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Devuelve el número de registros que se sugiere al driver leer de una vez en las consultas.
+     * @return El tamaño de lectura (0, si se deja decidir al driver).
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Fija el número de registros que se sugiere al driver leer de una vez en las consultas.
+     * @param fetchSize El tamaño de lectura o 0, si se deja decidir al driver.
+     */
+    public void setFetchSize(int fetchSize) {
+        if(fetchSize < 0) throw new IllegalArgumentException("El tamaño de lectura no puede ser negativo");
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Obtiene todos los registros de una tabla. Si no se ha fijado un tamaño de página,
+     * se hace una única consulta y la conexión permanece ocupada hasta que se cierra
+     * el flujo. Si se ha fijado, los registros se leen por páginas ordenadas por
+     * el identificador ({@code WHERE id > ? ORDER BY id LIMIT n}) y la conexión se
+     * libera tras leer cada una, de manera que un consumidor lento no retiene
+     * una conexión del pool ni mantiene abierta una transacción de lectura.
+     * <p>
+     * Además, el flujo paginado puede procesarse en paralelo ({@code get().parallel()}):
+     * el rango de identificadores se divide en tramos y cada tramo se lee con sus
+     * propias conexiones y se transforma en objetos en el hilo que lo procesa.
+     * <p>
+     * Al paginar, cada página refleja el estado de la tabla en el momento de leerla,
+     * por lo que el flujo no es una instantánea coherente de toda la tabla: en particular,
+     * no incluye los registros agregados con un identificador mayor que el máximo
+     * existente al empezar.
+     * @param <T> El tipo de los objetos.
+     * @param tabla El nombre de la tabla.
+     * @param idColumna El nombre de la columna con el identificador.
+     * @param mapper La transformación de los registros en objetos.
+     * @return El flujo de objetos, que debe cerrarse.
+     * @throws DataAccessException Cuando se produce un error de acceso.
+     */
+    protected <T extends Entity> Stream<T> getAll(String tabla, String idColumna, RowMapper<T> mapper) throws DataAccessException {
+        if(pageSize > 0) return getPaged(tabla, idColumna, mapper);
+
+        String sqlString = String.format("SELECT * FROM %s", tabla);
+        Connection conn = null;
+        Statement stmt = null;
+        try {
+            conn = readCp.getConnection();
+            stmt = conn.createStatement();
+            stmt.setFetchSize(fetchSize);
+            // Las sentencias no preparadas no pasan por la caché, que es la que registra su ejecución.
+            SqlExecutionEvent event = new SqlExecutionEvent();
+            event.begin();
+            ResultSet rs = stmt.executeQuery(sqlString);
+            if(event.shouldCommit()) {
+                event.sql = sqlString;
+                event.rows = -1;
+                event.commit();
+            }
+            return SqlUtils.mapResultSet(readCp.isCloseable() ? conn : stmt, rs, mapper);
+        } catch (SQLException err) {
+            // Si no llega a crearse el flujo, nadie más cerrará la sentencia ni la conexión.
+            try {
+                if(stmt != null) stmt.close();
+                if(conn != null) conn.close();
+            }
+            catch(SQLException e) {
+                err.addSuppressed(e);
+            }
+            throw new DataAccessException(err);
+        }
+    }
+
+    /**
+     * Exporta todos los registros de una tabla, ordenados por el identificador.
+     * Se usa una única consulta (no se pagina) para que la exportación sea
+     * una instantánea coherente y los registros pasan directamente del ResultSet
+     * al destino, sin transformarse en objetos.
+     * @param tabla El nombre de la tabla.
+     * @param idColumna El nombre de la columna con el identificador.
+     * @param exporter El exportador.
+     * @param out El canal de destino, que no se cierra.
+     * @return El número de registros exportados.
+     * @throws DataAccessException Cuando se produce un error de acceso o de escritura.
+     */
+    protected long export(String tabla, String idColumna, TableExporter exporter, WritableByteChannel out) throws DataAccessException {
+        String sqlString = String.format("SELECT * FROM %s ORDER BY %s", tabla, idColumna);
+        try(
+            Connection conn = readCp.getConnection();
+            Statement stmt = conn.createStatement();
+        ) {
+            stmt.setFetchSize(fetchSize);
+            try(ResultSet rs = stmt.executeQuery(sqlString)) {
+                return exporter.export(rs, out);
+            }
+        }
+        catch(SQLException err) {
+            throw new DataAccessException(err);
+        }
+        catch(IOException err) {
+            throw new DataAccessException(String.format("No puede exportarse la tabla %s", tabla), err);
+        }
+    }
+
+    /**
+     * Genera el flujo paginado de todos los registros de una tabla.
+     * @param tabla El nombre de la tabla.
+     * @param idColumna El nombre de la columna con el identificador.
+     * @param mapper La transformación de los registros en objetos.
+     * @return El flujo de objetos.
+     * @throws DataAccessException Cuando se produce un error de acceso.
+     */
+    private <T extends Entity> Stream<T> getPaged(String tabla, String idColumna, RowMapper<T> mapper) throws DataAccessException {
+        final String rangoSql = String.format("SELECT MIN(%s), MAX(%s) FROM %s", idColumna, idColumna, tabla);
+        final String pageSql = String.format("SELECT * FROM %s WHERE %s > ? AND %s <= ? ORDER BY %s LIMIT ?", tabla, idColumna, idColumna, idColumna);
+
+        long min, max;
+        try(
+            Connection conn = readCp.getConnection();
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery(rangoSql);
+        ) {
+            rs.next();
+            min = rs.getLong(1);
+            if(rs.wasNull()) return Stream.empty();
+            max = rs.getLong(2);
+        }
+        catch(SQLException err) {
+            throw new DataAccessException(err);
+        }
+
+        return StreamSupport.stream(new RangeSpliterator<>(pageSql, mapper, pageSize, min - 1, max), false);
+    }
+
+    /**
+     * Recorre por páginas los registros cuyo identificador está en el rango (lastId, hi].
+     * Puede dividirse mientras no esté a mitad de una página: el tramo inferior del rango
+     * pendiente pasa al nuevo objeto y este se queda con el superior.
+     */
+    private class RangeSpliterator<T extends Entity> implements Spliterator<T> {
+        private final String sqlString;
+        private final RowMapper<T> mapper;
+        private final int size;
+        private final long hi;
+        private long lastId;
+        private List<T> page = List.of();
+        private int pos;
+        private boolean done;
+
+        public RangeSpliterator(String sqlString, RowMapper<T> mapper, int size, long lastId, long hi) {
+            this.sqlString = sqlString;
+            this.mapper = mapper;
+            this.size = size;
+            this.lastId = lastId;
+            this.hi = hi;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if(pos == page.size()) {
+                if(done || lastId >= hi) return false;
+                try {
+                    page = readPage(sqlString, lastId, hi, size, mapper);
+                }
+                catch(DataAccessException err) {
+                    throw new DataAccessRuntimeException(err);
+                }
+                pos = 0;
+                // Una página incompleta es la última del rango.
+                done = page.size() < size;
+                if(page.isEmpty()) return false;
+                lastId = page.get(page.size() - 1).getId();
+            }
+            action.accept(page.get(pos++));
+            return true;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if(done || pos < page.size()) return null;
+            long mid = lastId + (hi - lastId) / 2;
+            if(mid - lastId < size) return null;
+
+            Spliterator<T> prefix = new RangeSpliterator<>(sqlString, mapper, size, lastId, mid);
+            lastId = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return done ? page.size() - pos : hi - lastId + page.size() - pos;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL;
+        }
+    }
+
+    /**
+     * Lee una página de registros con una conexión que se libera al terminar.
+     * @param sqlString La consulta de la página, cuyos parámetros son los límites
+     *      del rango de identificadores y el tamaño de la página.
+     * @param lastId El último identificador leído.
+     * @param hi El máximo identificador del rango.
+     * @param size El tamaño de la página.
+     * @param mapper La transformación de los registros en objetos.
+     * @return Los objetos de la página.
+     * @throws DataAccessException Cuando se produce un error de acceso.
+     */
+    private <T> List<T> readPage(String sqlString, long lastId, long hi, int size, RowMapper<T> mapper) throws DataAccessException {
+        List<T> objs = new ArrayList<>(size);
+        try(
+            Connection conn = readCp.getConnection();
+            PreparedStatement pstmt = conn.prepareStatement(sqlString);
+        ) {
+            pstmt.setFetchSize(fetchSize);
+            pstmt.setLong(1, lastId);
+            pstmt.setLong(2, hi);
+            pstmt.setInt(3, size);
+            ResultSet rs = pstmt.executeQuery();
+            CheckedFunction<ResultSet, T> fila = mapper.bind(rs);
+            while(rs.next()) objs.add(fila.apply(rs));
+        }
+        catch(SQLException err) {
+            throw new DataAccessException(err);
+        }
+        return objs;
+    }
+
+    /**
+     * Inserta varios objetos usando una única conexión, una única sentencia preparada
+     * y una única transacción. Los registros se envían en lotes de {@link #getBatchSize()}
+     * y, tras cada lote, se asignan a los objetos los identificadores generados.
+     * <p>
+     * SQLite asigna a las claves INTEGER PRIMARY KEY el valor máximo más uno y,
+     * como la transacción mantiene el bloqueo de escritura, los identificadores de
+     * un lote son consecutivos y terminan en {@code last_insert_rowid()}.
+     * @param <T> El tipo de los objetos.
+     * @param sqlString La sentencia de inserción.
+     * @param objs Los objetos a insertar.
+     * @param setter La función que fija los parámetros de la sentencia para cada objeto.
+     * @throws DataAccessException Cuando se produce un error de acceso.
+     */
+    protected <T extends Entity> void insertBatch(String sqlString, Iterable<T> objs, ParamSetter<T> setter) throws DataAccessException {
+        try(
+            Connection conn = cp.getConnection();
+            TransactionManager tm = new TransactionManager(conn);
+            PreparedStatement pstmt = conn.prepareStatement(sqlString);
+            Statement stmt = conn.createStatement();
+        ) {
+            List<T> lote = new ArrayList<>(batchSize);
+            for(T obj: objs) {
+                setter.set(obj, pstmt);
+                pstmt.addBatch();
+                lote.add(obj);
+                if(lote.size() == batchSize) executeBatch(pstmt, stmt, lote);
+            }
+            if(!lote.isEmpty()) executeBatch(pstmt, stmt, lote);
+            if(!tm.isNested()) tm.commit();
+        }
+        catch(SQLException err) {
+            throw new DataAccessException(err);
+        }
+    }
+
+    /**
+     * Ejecuta el lote pendiente y asigna a sus objetos los identificadores generados.
+     * @param pstmt La sentencia con el lote pendiente.
+     * @param stmt Una sentencia con la que consultar el último identificador generado.
+     * @param lote Los objetos que componen el lote, en el orden en que se añadieron.
+     * @throws SQLException Cuando se produce un error al ejecutar el lote.
+     */
+    private static <T extends Entity> void executeBatch(PreparedStatement pstmt, Statement stmt, List<T> lote) throws SQLException {
+        pstmt.executeBatch();
+        try(ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            rs.next();
+            int id = rs.getInt(1) - lote.size();
+            for(T obj: lote) obj.setId(++id);
+        }
+        lote.clear();
+    }
+
+    /**
+     * Obtiene los registros cuyos identificadores se indican usando consultas
+     * con una cláusula IN de, como mucho, {@link #IN_SIZE} identificadores.
+     * Para que las sentencias puedan reaprovecharse desde la caché, el número de
+     * parámetros se redondea a la siguiente potencia de dos repitiendo el último
+     * identificador.
+     * @param <T> El tipo de los objetos.
+     * @param sqlString La consulta, con un {@code %s} en el lugar de la lista de parámetros
+     *      (p.e. {@code SELECT * FROM Tabla WHERE id IN (%s)}).
+     * @param ids Los identificadores.
+     * @param mapper La transformación de los registros en objetos.
+     * @return El flujo con los objetos encontrados.
+     * @throws DataAccessException Cuando se produce un error de acceso.
+     */
+    protected <T> Stream<T> getIn(String sqlString, Collection<Integer> ids, RowMapper<T> mapper) throws DataAccessException {
+        List<Integer> distintos = new ArrayList<>(new LinkedHashSet<>(ids));
+        distintos.remove(null);
+        if(distintos.isEmpty()) return Stream.empty();
+
+        List<T> objs = new ArrayList<>(distintos.size());
+        try(Connection conn = readCp.getConnection()) {
+            for(int i = 0; i < distintos.size(); i += IN_SIZE) {
+                List<Integer> lote = distintos.subList(i, Math.min(i + IN_SIZE, distintos.size()));
+                int params = Integer.highestOneBit(lote.size() - 1) << 1;
+                if(params == 0) params = 1;
+
+                String sql = String.format(sqlString, String.join(",", Collections.nCopies(params, "?")));
+                try(PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for(int p = 0; p < params; p++) {
+                        pstmt.setInt(p + 1, lote.get(Math.min(p, lote.size() - 1)));
+                    }
+                    ResultSet rs = pstmt.executeQuery();
+                    CheckedFunction<ResultSet, T> fila = mapper.bind(rs);
+                    while(rs.next()) objs.add(fila.apply(rs));
+                }
+            }
+        }
+        catch(SQLException err) {
+            throw new DataAccessException(err);
+        }
+        return objs.stream();
+    }
+
+    /**
+     * Ejecuta una consulta parametrizada y devuelve sus registros como un flujo
+     * perezoso. Al cerrar el flujo se cierran la sentencia y la conexión (si el
+     * proveedor permite cerrarla).
+     * @param <T> El tipo de los objetos.
+     * @param sqlString La consulta.
+     * @param setter La función que fija los parámetros de la consulta.
+     * @param mapper La transformación de los registros en objetos.
+     * @return El flujo de objetos, que debe cerrarse.
+     * @throws DataAccessException Cuando se produce un error de acceso.
+     */
+    protected <T> Stream<T> query(String sqlString, QuerySetter setter, RowMapper<T> mapper) throws DataAccessException {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        try {
+            conn = readCp.getConnection();
+            pstmt = conn.prepareStatement(sqlString);
+            pstmt.setFetchSize(fetchSize);
+            setter.set(pstmt);
+            ResultSet rs = pstmt.executeQuery();
+            final Connection c = conn;
+            final PreparedStatement s = pstmt;
+            return SqlUtils.mapResultSet(() -> {
+                try { s.close(); }
+                finally { c.close(); }
+            }, rs, mapper);
+        }
+        catch(SQLException err) {
+            try {
+                if(pstmt != null) pstmt.close();
+                if(conn != null) conn.close();
+            }
+            catch(SQLException e) {
+                err.addSuppressed(e);
+            }
+            throw new DataAccessException(err);
+        }
+    }
+}
@@ -1,23 +1,26 @@
 package ies.castillodeluna.ad.ejercicios.backend.sqlite;
 
+import java.nio.channels.WritableByteChannel;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
-import ies.castillodeluna.ad.ejercicios.SqlUtils;
-import ies.castillodeluna.ad.ejercicios.DAO.AbstractDao;
+import ies.castillodeluna.ad.ejercicios.SqlUtils.RowMapper;
 import ies.castillodeluna.ad.ejercicios.DAO.ConnectionProvider;
+import ies.castillodeluna.ad.ejercicios.DAO.Exportable;
 import ies.castillodeluna.ad.ejercicios.DAO.Crud;
 import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.export.TableExporter;
 import ies.castillodeluna.ad.ejercicios.model.Cliente;
+import ies.castillodeluna.ad.ejercicios.model.ClienteMapper;
 
-public class ClienteSqlite extends AbstractDao implements Crud<Cliente>{
+public class ClienteSqlite extends AbstractSqliteDao implements Crud<Cliente>, Exportable{
 
     /**
      * Constructor del cliente
@@ -27,6 +30,15 @@ public class ClienteSqlite extends AbstractDao implements Crud<Cliente>{
         super(ds);
     }
 
+    /**
+     * Constructor de la clase
+     * @param ds Fuente de datos con la que se modifica la base de datos
+     * @param readDs Fuente de datos con la que se consulta la base de datos
+     */
+    public ClienteSqlite(DataSource ds, DataSource readDs) {
+        super(ds, readDs);
+    }
+
     /**
      * Constructor del cliente
      * @param conn Conexión a la base de datos
@@ -45,20 +57,11 @@ public class ClienteSqlite extends AbstractDao implements Crud<Cliente>{
 
 
     /**
-     * Recupera datos de un registro para convertirlos en un nuevo Cliente.
-     * @param rs ResultSet con el registro
-     * @return Objeto cliente que modela los datos del registro
-     * @throws SQLException
+     * Transforma los registros en objetos Cliente. Lo genera el procesador de
+     * anotaciones y lee las columnas por posición, por lo que las consultas
+     * deben ser {@code SELECT *} de la tabla.
      */
-    private static Cliente resultToCliente(ResultSet rs) throws SQLException{
-        int id = rs.getInt("id_cliente");
-        String nombre = rs.getString("nombre");
-        String email = rs.getString("email");
-        String telefono = rs.getString("telefono");
-        int idZonaEnvio = rs.getInt("id_zona");
-
-        return new Cliente(id,nombre,email,telefono,idZonaEnvio);
-    }
+    private final static RowMapper<Cliente> clienteMapper = ClienteMapper.INSTANCE;
 
     /**
      * Recogemos como último dato el id del elemento, luego veremos porque
@@ -77,16 +80,16 @@ public class ClienteSqlite extends AbstractDao implements Crud<Cliente>{
     // Recibir cliente mediante un ID
     @Override
     public Optional<Cliente> get(int id) throws DataAccessException {
-        final String sqlString = "SELECT + FROM Clientes WHERE id_centro = ?";
+        final String sqlString = "SELECT * FROM Clientes WHERE id_cliente = ?";
 
         try(
-            Connection conn = cp.getConnection();
+            Connection conn = readCp.getConnection();
             PreparedStatement pstmt = conn.prepareStatement(sqlString);
         ) {
             
             pstmt.setInt(1,id);
             ResultSet rs = pstmt.executeQuery();
-            return rs.next()?Optional.of(resultToCliente(rs)):Optional.empty();
+            return rs.next()?Optional.of(clienteMapper.map(rs)):Optional.empty();
 
         } catch (SQLException e) {
             throw new DataAccessException(e);
@@ -96,21 +99,18 @@ public class ClienteSqlite extends AbstractDao implements Crud<Cliente>{
 
     @Override
     public Stream<Cliente> get() throws DataAccessException {
-        
-        final String sqlString = "SELECT * FROM Clientes";
-
-        try {
-            
-            Connection conn = cp.getConnection();
-            Statement stmt = conn.createStatement();
-            ResultSet rs = stmt.executeQuery(sqlString);
-
-            return SqlUtils.resultSetToStream(cp.isCloseable()?conn:stmt, rs, ClienteSqlite::resultToCliente);
+        return getAll("Clientes", "id_cliente", clienteMapper);
+    }
 
-        } catch (SQLException err) {
-            throw new DataAccessException(err);
-        }
+    @Override
+    public long export(TableExporter exporter, WritableByteChannel out) throws DataAccessException {
+        return export("Clientes", "id_cliente", exporter, out);
+    }
 
+    @Override
+    public Stream<Cliente> get(Collection<Integer> ids) throws DataAccessException {
+        final String sqlString = "SELECT * FROM Clientes WHERE id_cliente IN (%s)";
+        return getIn(sqlString, ids, clienteMapper);
     }
 
     @Override
@@ -151,9 +151,15 @@ public class ClienteSqlite extends AbstractDao implements Crud<Cliente>{
 
     }
 
+    @Override
+    public void insert(Iterable<Cliente> clientes) throws DataAccessException {
+        final String sqlString = "INSERT INTO Clientes (nombre, email, telefono, id_zona) VALUES (?,?,?,?)";
+        insertBatch(sqlString, clientes, ClienteSqlite::setClienteParams);
+    }
+
     @Override
     public boolean update(Cliente cliente) throws DataAccessException {
-        final String sqlString = "UPDATE Clientes SET nombre = ?, correo = ?, telefono = ?, idZonaEnvio = ?, id_cliente = ?";
+        final String sqlString = "UPDATE Clientes SET nombre = ?, email = ?, telefono = ?, id_zona = ? WHERE id_cliente = ?";
 
         try(
             Connection conn = cp.getConnection();
@@ -161,6 +167,7 @@ public class ClienteSqlite extends AbstractDao implements Crud<Cliente>{
         ) {
             
             setClienteParams(cliente, pstmt);
+            pstmt.setInt(5, cliente.getId());
             return pstmt.executeUpdate() > 0;
 
 
@@ -180,7 +187,7 @@ public class ClienteSqlite extends AbstractDao implements Crud<Cliente>{
         ) {
             
             pstmt.setInt(1, newId);
-            pstmt.setString(2, sqlString);
+            pstmt.setInt(2, oldId);
             return pstmt.executeUpdate() > 0;
 
 
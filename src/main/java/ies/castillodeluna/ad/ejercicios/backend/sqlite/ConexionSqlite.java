@@ -1,27 +1,54 @@
 package ies.castillodeluna.ad.ejercicios.backend.sqlite;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 
 import javax.sql.DataSource;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
-import ies.castillodeluna.ad.ejercicios.SqlUtils;
+import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.DAO.AsyncCrud;
+import ies.castillodeluna.ad.ejercicios.DAO.CachedCrud;
+import ies.castillodeluna.ad.ejercicios.DAO.CachedPedidoDao;
 import ies.castillodeluna.ad.ejercicios.DAO.Crud;
+import ies.castillodeluna.ad.ejercicios.DAO.DeferredInvalidations;
+import ies.castillodeluna.ad.ejercicios.DAO.EntityCache;
+import ies.castillodeluna.ad.ejercicios.DAO.Exportable;
+import ies.castillodeluna.ad.ejercicios.DAO.MetricsCrud;
+import ies.castillodeluna.ad.ejercicios.DAO.MetricsPedidoDao;
+import ies.castillodeluna.ad.ejercicios.DAO.PedidoDao;
+import ies.castillodeluna.ad.ejercicios.DAO.QueuedCrud;
+import ies.castillodeluna.ad.ejercicios.DAO.QueuedPedidoDao;
+import ies.castillodeluna.ad.ejercicios.DAO.ReferenceCrud;
+import ies.castillodeluna.ad.ejercicios.DAO.SqlTracer;
+import ies.castillodeluna.ad.ejercicios.DAO.StatementCache;
 import ies.castillodeluna.ad.ejercicios.backend.AbstractDsCache;
 import ies.castillodeluna.ad.ejercicios.backend.Conexion;
 import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.importer.BulkImporter;
+import ies.castillodeluna.ad.ejercicios.importer.ImportFormat;
+import ies.castillodeluna.ad.ejercicios.importer.ImportReport;
+import ies.castillodeluna.ad.ejercicios.importer.ImportTarget;
+import ies.castillodeluna.ad.ejercicios.metrics.Counter;
+import ies.castillodeluna.ad.ejercicios.metrics.MetricsRegistry;
+import ies.castillodeluna.ad.ejercicios.metrics.PoolMetrics;
+import ies.castillodeluna.ad.ejercicios.metrics.Timer;
 import ies.castillodeluna.ad.ejercicios.model.Cliente;
 import ies.castillodeluna.ad.ejercicios.model.Pedido;
 import ies.castillodeluna.ad.ejercicios.model.ZonaEnvio;
+import ies.castillodeluna.ad.ejercicios.snapshot.PedidoSnapshot;
+import ies.castillodeluna.ad.ejercicios.transaction.GroupCommitWriter;
 import ies.castillodeluna.ad.ejercicios.transaction.TransactionManager;
 
 public class ConexionSqlite extends AbstractDsCache implements Conexion{
@@ -29,51 +56,393 @@ public class ConexionSqlite extends AbstractDsCache implements Conexion{
     /*
      * Crear la conexión con la base de datos.
      */
-    final static Path esquema = Path.of(System.getProperty("user.dir"), "src", "main", "resources", "pedidos.sql");
     final static String protocol = "jdbc:sqlite";
     final static short maxConn = 10;
     final static short minConn = 1;
 
     private final HikariDataSource ds;
+    // Pool de sólo lectura para las consultas (el propio ds, si no se ha habilitado la opción "readpool").
+    private final HikariDataSource readDs;
+    private final SqliteProfile profile;
+    private final SchemaMigrator migrator;
 
+    // Ejecución de las operaciones asíncronas: un hilo virtual por operación y, como mucho,
+    // tantas consultas (o modificaciones) simultáneas como conexiones tiene el pool que usan.
+    private final ExecutorService asyncExecutor;
+    private final Semaphore asyncLecturas;
+    private final Semaphore asyncEscrituras;
+
+    // Escritor único de cada base de datos (véase la opción "singlewriter").
+    private final static Map<DataSource, GroupCommitWriter> writers = new ConcurrentHashMap<>();
+    private final GroupCommitWriter writer;
+
+    private final int batchSize;
+    private final int pageSize;
+    private final int fetchSize;
+
+    // Cachés de entidades (null, si no se ha habilitado la opción "cache").
+    private final EntityCache<Cliente> clienteCache;
+    private final EntityCache<Pedido> pedidoCache;
+    private final EntityCache<ZonaEnvio> zonaEnvioCache;
+
+    // Copia en memoria de las zonas de envío (null, si no se ha habilitado la opción "refdata").
+    private final ReferenceCrud<ZonaEnvio> zonaEnvioRef;
+
+    // Registro de métricas (null, si no se ha fijado la opción "metrics").
+    private final MetricsRegistry metrics;
+    private final Timer transaccionTimer;
+    private final Counter commits;
+    private final Counter rollbacks;
+
+    // Traza de las sentencias de los DAO de esta conexión (null, si no se trazan).
+    private final SqlTracer tracer;
+
+    private boolean closed;
 
     // Constructor
     public ConexionSqlite(Map<String, Object> opciones)throws DataAccessException {
         ds = (HikariDataSource) getDataSource(opciones);
-        initDB();
+        // Si algo falla a partir de aquí, se libera lo ya obtenido, como al cerrar la conexión.
+        try {
+            profile = getProfile(opciones);
+            // Con migrations, las migraciones del esquema se buscan en otro directorio del classpath.
+            migrator = new SchemaMigrator((String) opciones.getOrDefault("migrations", SchemaMigrator.LOCATION));
+            // Con metrics, se miden las operaciones de los DAO, las transacciones y el pool.
+            metrics = (MetricsRegistry) opciones.get("metrics");
+            MetricsRegistry registry = metrics == null ? MetricsRegistry.NOOP : metrics;
+            transaccionTimer = registry.timer("transaccion");
+            commits = registry.counter("transaccion.commit");
+            rollbacks = registry.counter("transaccion.rollback");
+            // Con tracer (o slowquery, el umbral de una traza por defecto), se registran las sentencias lentas.
+            SqlTracer tracer = (SqlTracer) opciones.get("tracer");
+            if(tracer == null && opciones.containsKey("slowquery")) tracer = new SqlTracer((Duration) opciones.get("slowquery"));
+            this.tracer = tracer;
+            // Con readpool, las consultas usan su propio pool de sólo lectura y
+            // el pool principal, con el que se modifica, tiene una única conexión.
+            if((Boolean) opciones.getOrDefault("readpool", false)) {
+                Map<String, Object> lectura = new HashMap<>(opciones);
+                lectura.put("reader", true);
+                readDs = (HikariDataSource) getDataSource(lectura);
+            }
+            else readDs = ds;
+            asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+            asyncLecturas = new Semaphore(readDs.getMaximumPoolSize(), true);
+            batchSize = (Integer) opciones.getOrDefault("batchsize", AbstractSqliteDao.BATCH_SIZE);
+            // Con pagesize, los flujos completos se leen por páginas y no retienen la conexión.
+            pageSize = (Integer) opciones.getOrDefault("pagesize", 0);
+            fetchSize = (Integer) opciones.getOrDefault("fetchsize", 0);
+            // Con singlewriter, las modificaciones las hace un único hilo que las confirma por grupos.
+            writer = (Boolean) opciones.getOrDefault("singlewriter", false)
+                ? writers.computeIfAbsent(ds, d -> new GroupCommitWriter(d,
+                    (Duration) opciones.getOrDefault("writedelay", Duration.ZERO),
+                    (Integer) opciones.getOrDefault("writegroup", GroupCommitWriter.MAX_GROUP)))
+                : null;
+            // Con el escritor único, las modificaciones no toman conexiones del pool, sino que se
+            // encolan: conviene que quepan en un grupo. Sin pool de lectura, comparten el de las consultas.
+            if(writer != null) asyncEscrituras = new Semaphore((Integer) opciones.getOrDefault("writegroup", GroupCommitWriter.MAX_GROUP), true);
+            else asyncEscrituras = readDs == ds ? asyncLecturas : new Semaphore(ds.getMaximumPoolSize(), true);
+
+            clienteCache = crearCache(opciones);
+            pedidoCache = crearCache(opciones);
+            zonaEnvioCache = crearCache(opciones);
+            if(zonaEnvioCache != null) {
+                // Los cambios en zonas y clientes se propagan en cascada a clientes y pedidos.
+                zonaEnvioCache.cascade(clienteCache);
+                clienteCache.cascade(pedidoCache);
+            }
+
+            initDB();
+
+            // Las zonas de envío son datos de referencia: pocas y casi inmutables.
+            zonaEnvioRef = (Boolean) opciones.getOrDefault("refdata", false)
+                ? ReferenceCrud.load(cachear(encolar(configurar(new ZonaEnvioSqlite(ds, readDs)), c -> configurar(new ZonaEnvioSqlite(c))), zonaEnvioCache, false),
+                                     z -> new ZonaEnvio(z.getId(), z.getNombre(), z.getTarifa()))
+                : null;
+        }
+        catch(DataAccessException | RuntimeException err) {
+            try {
+                liberar();
+            }
+            catch(RuntimeException e) {
+                err.addSuppressed(e);
+            }
+            throw err;
+        }
+    }
+
+    /**
+     * Crea una caché de entidades a partir de las opciones de conexión:
+     * <ul>
+     *  <li>cache (Boolean): si se cachean las entidades obtenidas por su identificador.
+     *  <li>cachesize (Integer): número máximo de entidades de cada tipo.
+     *  <li>cachepolicy (String): política de desalojo ("lru" o "tinylfu").
+     *  <li>cachettl (Duration): tiempo de vida de las entradas.
+     *  <li>cachenegative (Boolean): si se recuerdan también los identificadores inexistentes.
+     * </ul>
+     * @param opciones Las opciones de conexión.
+     * @return La caché o null, si no se quiere cachear.
+     */
+    private static <T extends Entity> EntityCache<T> crearCache(Map<String, Object> opciones) {
+        if(!((Boolean) opciones.getOrDefault("cache", false))) return null;
+
+        return new EntityCache<>(
+            (Integer) opciones.getOrDefault("cachesize", EntityCache.MAX_SIZE),
+            EntityCache.Policy.getPolicy((String) opciones.getOrDefault("cachepolicy", "tinylfu")),
+            (Duration) opciones.get("cachettl"),
+            (Boolean) opciones.getOrDefault("cachenegative", false)
+        );
+    }
+
+    /**
+     * Decora un DAO con la caché de su entidad, si es que se ha habilitado.
+     * @param dao El objeto DAO.
+     * @param cache La caché de la entidad.
+     * @param readThrough Si las lecturas usan la caché o sólo se invalidan las entradas modificadas.
+     * @return El objeto DAO decorado.
+     */
+    private static <T extends Entity> Crud<T> cachear(Crud<T> dao, EntityCache<T> cache, boolean readThrough) {
+        return cache == null ? dao : new CachedCrud<>(dao, cache, readThrough);
+    }
+
+    private static PedidoDao cachear(PedidoDao dao, EntityCache<Pedido> cache, boolean readThrough) {
+        return cache == null ? dao : new CachedPedidoDao(dao, cache, readThrough);
+    }
+
+    /**
+     * Decora un DAO que se usa dentro de una transacción con la caché de su entidad,
+     * si es que se ha habilitado: no se usa para leer y las invalidaciones se aplazan.
+     * @param dao El objeto DAO.
+     * @param cache La caché de la entidad.
+     * @param diferidas Dónde se aplazan las invalidaciones hasta que acabe la transacción.
+     * @return El objeto DAO decorado.
+     */
+    private static <T extends Entity> Crud<T> cachear(Crud<T> dao, EntityCache<T> cache, DeferredInvalidations diferidas) {
+        return cache == null ? dao : new CachedCrud<>(dao, cache, false, diferidas);
+    }
+
+    private static PedidoDao cachear(PedidoDao dao, EntityCache<Pedido> cache, DeferredInvalidations diferidas) {
+        return cache == null ? dao : new CachedPedidoDao(dao, cache, false, diferidas);
+    }
+
+    /**
+     * Hace que las modificaciones de un DAO las ejecute el escritor único, si es que se ha habilitado.
+     * @param dao El objeto DAO.
+     * @param writerDao La función que crea el DAO equivalente sobre la conexión del escritor.
+     * @return El objeto DAO decorado.
+     */
+    private <T extends Entity> Crud<T> encolar(Crud<T> dao, Function<Connection, Crud<T>> writerDao) {
+        return writer == null ? dao : new QueuedCrud<>(dao, writerDao, writer);
+    }
+
+    private PedidoDao encolar(PedidoDao dao, Function<Connection, Crud<Pedido>> writerDao) {
+        return writer == null ? dao : new QueuedPedidoDao(dao, writerDao, writer);
+    }
+
+    /**
+     * Mide las operaciones de un DAO, si es que se ha fijado un registro de métricas.
+     * @param dao El objeto DAO.
+     * @param entity El nombre de la entidad.
+     * @return El objeto DAO decorado.
+     */
+    private <T extends Entity> Crud<T> medir(Crud<T> dao, String entity) {
+        return metrics == null ? dao : new MetricsCrud<>(dao, metrics, entity);
+    }
+
+    private PedidoDao medir(PedidoDao dao) {
+        return metrics == null ? dao : new MetricsPedidoDao(dao, metrics);
+    }
+
+    /**
+     * Aplica a un DAO las opciones de la conexión.
+     * @param dao El objeto DAO recién creado.
+     * @return El propio objeto DAO.
+     */
+    private <D extends AbstractSqliteDao> D configurar(D dao) {
+        dao.setBatchSize(batchSize);
+        dao.setPageSize(pageSize);
+        dao.setFetchSize(fetchSize);
+        if(tracer != null) dao.setTracer(tracer);
+        return dao;
     }
 
 
     @Override
     public Crud<Cliente> getClienteDao() {
-        return new ClienteSqlite(ds);
+        return medir(cachear(encolar(configurar(new ClienteSqlite(ds, readDs)), c -> configurar(new ClienteSqlite(c))), clienteCache, true), "Cliente");
     }
 
     @Override
-    public Crud<Pedido> getPedidoDao() {
-        return new PedidoSqlite(ds);
+    public PedidoDao getPedidoDao() {
+        return medir(cachear(encolar(configurar(new PedidoSqlite(ds, readDs)), c -> configurar(new PedidoSqlite(c))), pedidoCache, true));
     }
 
     @Override
     public Crud<ZonaEnvio> getZonaEnvioDao() {
-        return new ZonaEnvioSqlite(ds);
+        if(zonaEnvioRef != null) return medir(zonaEnvioRef, "ZonaEnvio");
+        return medir(cachear(encolar(configurar(new ZonaEnvioSqlite(ds, readDs)), c -> configurar(new ZonaEnvioSqlite(c))), zonaEnvioCache, true), "ZonaEnvio");
+    }
+
+    /**
+     * Obtiene el objeto con el que se exportan los registros de una entidad. Al exportar
+     * se lee directamente la tabla, sin pasar por las cachés ni por el escritor único.
+     * @param entidad La clase de la entidad.
+     * @return El DAO de la entidad, que permite exportar.
+     */
+    public Exportable getExportable(Class<? extends Entity> entidad) {
+        if(entidad == Cliente.class) return configurar(new ClienteSqlite(ds, readDs));
+        if(entidad == Pedido.class) return configurar(new PedidoSqlite(ds, readDs));
+        if(entidad == ZonaEnvio.class) return configurar(new ZonaEnvioSqlite(ds, readDs));
+        throw new IllegalArgumentException(String.format("%s: no es una entidad de la base de datos", entidad.getSimpleName()));
+    }
+
+    /**
+     * Importa masivamente un fichero CSV o JSON Lines (véase {@link BulkImporter}).
+     * Durante la importación, el escritor ocupa una conexión del pool con el perfil
+     * de carga masiva y al terminar se vacía la caché de la entidad importada.
+     * @param target La tabla de destino.
+     * @param format El formato del fichero.
+     * @param fichero La ruta del fichero.
+     * @param progress El receptor del progreso (o null).
+     * @return El resultado de la importación, con los registros rechazados.
+     * @throws DataAccessException Cuando la base de datos es de sólo lectura, no puede
+     *      leerse el fichero o se produce un error de acceso.
+     */
+    public ImportReport importar(ImportTarget<?> target, ImportFormat format, Path fichero, BulkImporter.Progress progress) throws DataAccessException {
+        if(profile.isReadOnly()) throw new DataAccessException("No puede importarse en una base de datos de sólo lectura");
+        try {
+            return new BulkImporter(ds, profile, BulkImporter.PARALLELISM, progress)
+                .importar(target, format, fichero);
+        }
+        finally {
+            EntityCache<?> cache = target == ImportTarget.PEDIDOS ? pedidoCache : target == ImportTarget.CLIENTES ? clienteCache : null;
+            if(cache != null) cache.clear();
+        }
+    }
+
+    /**
+     * Genera o actualiza la instantánea columnar de los pedidos (véase {@link PedidoSnapshot}).
+     * Se lee directamente la tabla con una conexión de lectura.
+     * @param fichero La ruta de la instantánea.
+     * @param completa Si se regenera entera o sólo se le añaden los pedidos nuevos.
+     * @return El número de pedidos escritos.
+     * @throws DataAccessException Cuando no puede escribirse el fichero o se produce un error de acceso.
+     */
+    public long snapshotPedidos(Path fichero, boolean completa) throws DataAccessException {
+        try(Connection conn = readDs.getConnection()) {
+            return completa ? PedidoSnapshot.write(conn, fichero) : PedidoSnapshot.refresh(conn, fichero);
+        }
+        catch(SQLException err) {
+            throw new DataAccessException(err);
+        }
+    }
+
+    @Override
+    public <T extends Entity> AsyncCrud<T> async(Crud<T> dao) {
+        return new AsyncCrud<>(dao, asyncExecutor, asyncLecturas, asyncEscrituras);
+    }
+
+    /**
+     * Cierra la conexión. Los pools (y el escritor único de cada uno) se comparten entre
+     * las conexiones con las mismas opciones, así que sólo se cierran cuando se cierra la
+     * última que los usa; el escritor, antes que su pool, para que acabe lo pendiente.
+     * Antes se espera a que terminen las operaciones asíncronas ya lanzadas.
+     */
+    @Override
+    public void close() throws DataAccessException {
+        synchronized(this) {
+            if(closed) return;
+            closed = true;
+        }
+        liberar();
+        // Las cachés de sentencias se purgan al crear otras: las de las conexiones
+        // recién cerradas se descartan ya, porque puede que no se creen más.
+        StatementCache.purge();
+    }
+
+    /**
+     * Libera el ejecutor de las operaciones asíncronas y los pools (con el escritor único)
+     * que ya no use ninguna otra conexión. Como también se usa si falla el constructor,
+     * tolera que el ejecutor o el pool de lectura no hayan llegado a crearse.
+     */
+    private void liberar() {
+        if(asyncExecutor != null) asyncExecutor.close();
+        if(readDs != null && readDs != ds && releaseDataSource(readDs)) readDs.close();
+        if(releaseDataSource(ds)) {
+            GroupCommitWriter w = writers.remove(ds);
+            if(w != null) w.close();
+            ds.close();
+        }
     }
 
     @Override
     public void transaccion(Transaccionable operaciones) throws DataAccessException {
+        long inicio = System.nanoTime();
+        boolean confirmada = false;
+        DeferredInvalidations diferidas = new DeferredInvalidations();
         try(Connection conn = ds.getConnection()) {
             TransactionManager.transactionSQL(conn, c -> {
-                operaciones.run(new ClienteSqlite(c), new PedidoSqlite(c), new ZonaEnvioSqlite(c)); // PONER ZONA ENVIO ?????
+                // Dentro de la transacción no se leen ni se guardan datos en las cachés
+                // (podrían no llegar a confirmarse), y las entradas modificadas se
+                // invalidan al acabar, para que nadie vuelva a cachear la versión anterior.
+                operaciones.run(
+                    medir(cachear(configurar(new ClienteSqlite(c)), clienteCache, diferidas), "Cliente"),
+                    medir(cachear(configurar(new PedidoSqlite(c)), pedidoCache, diferidas)),
+                    medir(referenciar(cachear(configurar(new ZonaEnvioSqlite(c)), zonaEnvioCache, diferidas), diferidas), "ZonaEnvio")
+                );
             });
+            confirmada = true;
         }
         catch(SQLException err) {
             throw new DataAccessException(err);
         }
+        finally {
+            transaccionTimer.record(System.nanoTime() - inicio);
+            (confirmada ? commits : rollbacks).increment();
+            diferidas.apply();
+        }
+        // Sólo se llega aquí si se ha confirmado: si la transacción ha modificado
+        // las zonas, la copia en memoria se vuelve a cargar.
+        diferidas.reload();
+    }
+
+    /**
+     * Anota las modificaciones que hace una transacción en las zonas de envío,
+     * si es que se sirven desde una copia en memoria.
+     * @param dao El objeto DAO de la transacción.
+     * @param diferidas Las invalidaciones aplazadas de la transacción.
+     * @return El objeto DAO decorado.
+     */
+    private Crud<ZonaEnvio> referenciar(Crud<ZonaEnvio> dao, DeferredInvalidations diferidas) {
+        return zonaEnvioRef == null ? dao : zonaEnvioRef.track(dao, diferidas);
     }
 
+    /**
+     * La clave incluye, además de la url, todas las opciones con las que se configura
+     * el pool, de modo que dos conexiones con opciones distintas no compartan pool.
+     */
     @Override
     protected String generateKey(Map<String, Object> opciones) {
-        return (String) opciones.get("url");
+        boolean reader = (Boolean) opciones.getOrDefault("reader", false);
+        boolean readPool = (Boolean) opciones.getOrDefault("readpool", false);
+        MetricsRegistry metrics = (MetricsRegistry) opciones.get("metrics");
+
+        StringBuilder key = new StringBuilder((String) opciones.get("url"));
+        key.append('#').append(getProfile(opciones));
+        if(reader) key.append("#reader");
+        else if(readPool) key.append("#writer");
+        key.append("#max=").append(opciones.getOrDefault("maxconn", ConexionSqlite.maxConn));
+        key.append("#min=").append(opciones.getOrDefault("minconn", ConexionSqlite.minConn));
+        if(metrics != null) key.append("#metrics@").append(Integer.toHexString(System.identityHashCode(metrics)));
+        return key.toString();
+    }
+
+    /**
+     * Obtiene el perfil de ajuste de SQLite (opción "profile": "oltp", "bulk-load" o "read-only").
+     * @param opciones Las opciones de conexión.
+     * @return El perfil, que por defecto es OLTP.
+     */
+    private static SqliteProfile getProfile(Map<String, Object> opciones) {
+        return SqliteProfile.getProfile((String) opciones.getOrDefault("profile", "oltp"));
     }
     
     /**
@@ -90,38 +459,36 @@ public class ConexionSqlite extends AbstractDsCache implements Conexion{
         Short minConn = (Short) opciones.getOrDefault("minconn", ConexionSqlite.minConn);
 
 
+        SqliteProfile profile = getProfile(opciones);
+        boolean reader = (Boolean) opciones.getOrDefault("reader", false);
+        boolean readPool = (Boolean) opciones.getOrDefault("readpool", false);
+
         HikariConfig hconfig = new HikariConfig();
         hconfig.setJdbcUrl(dbUrl);
-        hconfig.setMaximumPoolSize(maxConn);
-        hconfig.setMinimumIdle(minConn);
+        // SQLite admite un único escritor: si hay pool de lectura, al de escritura le basta una conexión.
+        hconfig.setMaximumPoolSize(readPool && !reader ? 1 : maxConn);
+        hconfig.setMinimumIdle(readPool && !reader ? 1 : minConn);
+        hconfig.setDataSourceProperties(profile.getProperties(reader));
+        if(reader || profile.isReadOnly()) hconfig.setConnectionInitSql("PRAGMA query_only = 1");
+        MetricsRegistry metrics = (MetricsRegistry) opciones.get("metrics");
+        if(metrics != null) hconfig.setMetricsTrackerFactory(new PoolMetrics(metrics));
 
         return new HikariDataSource(hconfig);
     }
 
     /**
      * InitDB
-     * Comprobar acceso a base de datos
-     * Crear la conexión si es posible
+     * Aplica las migraciones pendientes del esquema. Con el perfil de sólo lectura
+     * no se modifica la base de datos: sólo se comprueba que tiene esquema y que no han
+     * cambiado las migraciones aplicadas (de las pendientes sólo se avisa).
      */
     public void initDB() throws DataAccessException{
-        try(Stream<Cliente> clientes = getClienteDao().get()){
-            clientes.close();
+        try(Connection conn = ds.getConnection()){
+            if(profile.isReadOnly()) migrator.validate(conn);
+            else migrator.migrate(conn);
         }
-        catch(DataAccessException err){
-            
-            try(
-                Connection conn = ds.getConnection();
-                InputStream st = Files.newInputStream(esquema);
-            ){
-                SqlUtils.executeSQL(conn, st);
-            }
-            catch(SQLException e){
-                throw new DataAccessException("No puede crearse el esquema de la base de datos",e);
-            }
-            catch(IOException e){
-                throw new DataAccessException(String.format("No puede acceder al esquema : %s", esquema));
-            }
-
+        catch(SQLException e){
+            throw new DataAccessException("No puede accederse a la base de datos",e);
         }
     }
     
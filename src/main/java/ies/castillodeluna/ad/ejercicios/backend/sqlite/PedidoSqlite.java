@@ -1,24 +1,27 @@
 package ies.castillodeluna.ad.ejercicios.backend.sqlite;
 
+import java.nio.channels.WritableByteChannel;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.Date;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
-import ies.castillodeluna.ad.ejercicios.SqlUtils;
-import ies.castillodeluna.ad.ejercicios.DAO.AbstractDao;
+import ies.castillodeluna.ad.ejercicios.SqlUtils.RowMapper;
 import ies.castillodeluna.ad.ejercicios.DAO.ConnectionProvider;
-import ies.castillodeluna.ad.ejercicios.DAO.Crud;
+import ies.castillodeluna.ad.ejercicios.DAO.Exportable;
+import ies.castillodeluna.ad.ejercicios.DAO.PedidoDao;
 import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.export.TableExporter;
 import ies.castillodeluna.ad.ejercicios.model.Pedido;
+import ies.castillodeluna.ad.ejercicios.model.PedidoMapper;
+import ies.castillodeluna.ad.ejercicios.model.ResumenPedidos;
 
-public class PedidoSqlite extends AbstractDao implements Crud<Pedido>{
+public class PedidoSqlite extends AbstractSqliteDao implements PedidoDao, Exportable {
 
     /**
      * Constructor del pedido
@@ -28,6 +31,15 @@ public class PedidoSqlite extends AbstractDao implements Crud<Pedido>{
         super(ds);
     }
 
+    /**
+     * Constructor de la clase
+     * @param ds Fuente de datos con la que se modifica la base de datos
+     * @param readDs Fuente de datos con la que se consulta la base de datos
+     */
+    public PedidoSqlite(DataSource ds, DataSource readDs) {
+        super(ds, readDs);
+    }
+
     /**
      * Constructor del pedido
      * @param conn Conexión a la base de datos
@@ -44,18 +56,18 @@ public class PedidoSqlite extends AbstractDao implements Crud<Pedido>{
     }
 
     /**
-     * Recupera datos de un registro para convertirlos en un nuevo Pedido.
-     * @param rs ResultSet con el registro
-     * @return Objeto Pedido que modela los datos del registro
-     * @throws SQLException
+     * Transforma los registros en objetos Pedido. Lo genera el procesador de
+     * anotaciones y lee las columnas por posición, por lo que las consultas
+     * deben ser {@code SELECT *} de la tabla.
      */
-    private static Pedido resultToPedido(ResultSet rs) throws SQLException {
-        int id = rs.getInt("id_pedido");
-        Date fecha = rs.getDate("fecha");
-        double importe = rs.getDouble("importe");
-        int idCliente = rs.getInt("id_cliente");
-        return new Pedido(id, fecha, importe, idCliente);
-    }
+    private final static RowMapper<Pedido> pedidoMapper = PedidoMapper.INSTANCE;
+
+    /**
+     * Transforma en resúmenes de pedidos los registros con las columnas
+     * identificador, número de pedidos, importe total e importe medio.
+     */
+    private final static RowMapper<ResumenPedidos> resumenMapper = rs ->
+        r -> new ResumenPedidos(r.getInt(1), r.getLong(2), r.getDouble(3), r.getDouble(4));
 
     /**
      * Establece los parámetros de un Pedido en un PreparedStatement.
@@ -80,12 +92,12 @@ public class PedidoSqlite extends AbstractDao implements Crud<Pedido>{
     public Optional<Pedido> get(int id) throws DataAccessException {
         final String sqlString = "SELECT * FROM Pedidos WHERE id_pedido = ?";
         try (
-            Connection conn = cp.getConnection();
+            Connection conn = readCp.getConnection();
             PreparedStatement pstmt = conn.prepareStatement(sqlString);
         ) {
             pstmt.setInt(1, id);
             ResultSet rs = pstmt.executeQuery();
-            return rs.next() ? Optional.of(resultToPedido(rs)) : Optional.empty();
+            return rs.next() ? Optional.of(pedidoMapper.map(rs)) : Optional.empty();
         } catch (SQLException e) {
             throw new DataAccessException(e);
         }
@@ -93,17 +105,57 @@ public class PedidoSqlite extends AbstractDao implements Crud<Pedido>{
 
     @Override
     public Stream<Pedido> get() throws DataAccessException {
-        final String sqlString = "SELECT * FROM Pedidos";
-        try {
-            Connection conn = cp.getConnection();
-            Statement stmt = conn.createStatement();
-            ResultSet rs = stmt.executeQuery(sqlString);
-            return SqlUtils.resultSetToStream(cp.isCloseable() ? conn : stmt, rs, PedidoSqlite::resultToPedido);
-        } catch (SQLException err) {
-            throw new DataAccessException(err);
+        return getAll("Pedidos", "id_pedido", pedidoMapper);
+    }
+
+    @Override
+    public long export(TableExporter exporter, WritableByteChannel out) throws DataAccessException {
+        return export("Pedidos", "id_pedido", exporter, out);
+    }
+
+    @Override
+    public Stream<Pedido> get(Collection<Integer> ids) throws DataAccessException {
+        final String sqlString = "SELECT * FROM Pedidos WHERE id_pedido IN (%s)";
+        return getIn(sqlString, ids, pedidoMapper);
+    }
+
+    @Override
+    public Stream<Pedido> getByCliente(int idCliente) throws DataAccessException {
+        final String sqlString = "SELECT * FROM Pedidos WHERE id_cliente = ?";
+        return query(sqlString, pstmt -> pstmt.setInt(1, idCliente), pedidoMapper);
+    }
+
+    // TOTAL() es la versión de SUM() de SQLite que devuelve 0.0 en vez de NULL.
+
+    @Override
+    public ResumenPedidos getResumenCliente(int idCliente) throws DataAccessException {
+        final String sqlString = "SELECT id_cliente, COUNT(*), TOTAL(importe_total), AVG(importe_total) FROM Pedidos WHERE id_cliente = ?";
+        try (
+            Connection conn = readCp.getConnection();
+            PreparedStatement pstmt = conn.prepareStatement(sqlString);
+        ) {
+            pstmt.setInt(1, idCliente);
+            ResultSet rs = pstmt.executeQuery();
+            rs.next();
+            return new ResumenPedidos(idCliente, rs.getLong(2), rs.getDouble(3), rs.getDouble(4));
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
         }
     }
 
+    @Override
+    public Stream<ResumenPedidos> getResumenPorCliente() throws DataAccessException {
+        final String sqlString = "SELECT id_cliente, COUNT(*), TOTAL(importe_total), AVG(importe_total) FROM Pedidos GROUP BY id_cliente";
+        return query(sqlString, pstmt -> {}, resumenMapper);
+    }
+
+    @Override
+    public Stream<ResumenPedidos> getResumenPorZona() throws DataAccessException {
+        final String sqlString = "SELECT c.id_zona, COUNT(*), TOTAL(p.importe_total), AVG(p.importe_total) "
+                               + "FROM Pedidos p JOIN Clientes c ON c.id_cliente = p.id_cliente GROUP BY c.id_zona";
+        return query(sqlString, pstmt -> {}, resumenMapper);
+    }
+
     @Override
     public boolean delete(int id) throws DataAccessException {
         final String sqlString = "DELETE FROM Pedidos WHERE id_pedido = ?";
@@ -120,7 +172,7 @@ public class PedidoSqlite extends AbstractDao implements Crud<Pedido>{
 
     @Override
     public void insert(Pedido pedido) throws DataAccessException {
-        final String sqlString = "INSERT INTO Pedidos (fecha, importe, id_cliente) VALUES (?, ?, ?)";
+        final String sqlString = "INSERT INTO Pedidos (fecha, importe_total, id_cliente) VALUES (?, ?, ?)";
         try (
             Connection conn = cp.getConnection();
             PreparedStatement pstmt = conn.prepareStatement(sqlString);
@@ -134,9 +186,19 @@ public class PedidoSqlite extends AbstractDao implements Crud<Pedido>{
         }
     }
 
+    @Override
+    public void insert(Iterable<Pedido> pedidos) throws DataAccessException {
+        final String sqlString = "INSERT INTO Pedidos (fecha, importe_total, id_cliente) VALUES (?, ?, ?)";
+        insertBatch(sqlString, pedidos, (pedido, pstmt) -> {
+            pstmt.setDate(1, new java.sql.Date(pedido.getFecha().getTime()));
+            pstmt.setDouble(2, pedido.getImporte());
+            pstmt.setInt(3, pedido.getIdCliente());
+        });
+    }
+
     @Override
     public boolean update(Pedido pedido) throws DataAccessException {
-        final String sqlString = "UPDATE Pedidos SET fecha = ?, importe = ?, id_cliente = ? WHERE id_pedido = ?";
+        final String sqlString = "UPDATE Pedidos SET fecha = ?, importe_total = ?, id_cliente = ? WHERE id_pedido = ?";
         try (
             Connection conn = cp.getConnection();
             PreparedStatement pstmt = conn.prepareStatement(sqlString);
@@ -0,0 +1,329 @@
+package ies.castillodeluna.ad.ejercicios.backend.sqlite;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ies.castillodeluna.ad.ejercicios.SqlUtils;
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.transaction.TransactionManager;
+
+/**
+ * Aplica a una base de datos SQLite las migraciones de su esquema. Las migraciones son
+ * guiones SQL del classpath, llamados V&lt;versión&gt;__&lt;descripción&gt;.sql, que se
+ * enumeran en orden en el fichero index.txt de su directorio.
+ * <p>
+ * La versión del esquema se guarda en PRAGMA user_version, que está en la cabecera
+ * del fichero, de modo que averiguar si hay migraciones pendientes no requiere consultar
+ * ninguna tabla. Además, cada migración aplicada se anota en la tabla schema_history con
+ * la suma de comprobación (SHA-256) de su guión, lo que permite detectar que un guión ya
+ * aplicado se ha modificado. Cada migración se aplica en su propia transacción junto con
+ * su anotación y el cambio de versión: o se aplica entera o no se aplica.
+ * <p>
+ * Las bases de datos creadas antes de existir las migraciones (versión 0, pero con
+ * tablas) se consideran en la versión 1, que es la que crea el esquema inicial.
+ */
+public class SchemaMigrator {
+
+    /**
+     * Directorio del classpath en que se encuentran por defecto las migraciones.
+     */
+    public final static String LOCATION = "migrations/";
+
+    private final static Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    private final static Pattern nombre = Pattern.compile("V(\\d+)__(.+)\\.sql");
+
+    /**
+     * Migración del esquema.
+     * @param version La versión a la que lleva el esquema.
+     * @param description La descripción, obtenida del nombre del guión.
+     * @param resource El recurso del classpath con el guión.
+     */
+    public static record Migration(int version, String description, String resource) {}
+
+    private final String location;
+    private final List<Migration> migrations;
+
+    /**
+     * Constructor que usa las migraciones del directorio por defecto.
+     * @throws DataAccessException Cuando no puede leerse el índice de migraciones.
+     */
+    public SchemaMigrator() throws DataAccessException {
+        this(LOCATION);
+    }
+
+    /**
+     * Constructor de la clase.
+     * @param location El directorio del classpath en que están las migraciones.
+     * @throws DataAccessException Cuando no puede leerse el índice de migraciones
+     *      o este no es correcto.
+     */
+    public SchemaMigrator(String location) throws DataAccessException {
+        this.location = location.endsWith("/") ? location : location + "/";
+        migrations = loadIndex();
+    }
+
+    private List<Migration> loadIndex() throws DataAccessException {
+        String index = location + "index.txt";
+        try(InputStream st = open(index)) {
+            BufferedReader br = new BufferedReader(new InputStreamReader(st, StandardCharsets.UTF_8));
+            List<Migration> lista = new ArrayList<>();
+            String linea;
+            while((linea = br.readLine()) != null) {
+                linea = linea.strip();
+                if(linea.isEmpty() || linea.startsWith("#")) continue;
+
+                Matcher m = nombre.matcher(linea);
+                if(!m.matches()) throw new DataAccessException(String.format("%s: nombre de migración inválido", linea));
+                int version = Integer.parseInt(m.group(1));
+                if(version != lista.size() + 1) {
+                    throw new DataAccessException(String.format("%s: se esperaba la versión %d", linea, lista.size() + 1));
+                }
+                lista.add(new Migration(version, m.group(2).replace('_', ' '), location + linea));
+            }
+            return List.copyOf(lista);
+        }
+        catch(IOException err) {
+            throw new DataAccessException(String.format("No puede leerse el índice de migraciones: %s", index), err);
+        }
+    }
+
+    private InputStream open(String resource) throws IOException {
+        InputStream st = SchemaMigrator.class.getClassLoader().getResourceAsStream(resource);
+        if(st == null) throw new IOException(String.format("%s: no existe en el classpath", resource));
+        return st;
+    }
+
+    /**
+     * Devuelve las migraciones disponibles.
+     * @return Las migraciones ordenadas por versión.
+     */
+    public List<Migration> getMigrations() {
+        return migrations;
+    }
+
+    /**
+     * Devuelve la versión más reciente del esquema.
+     * @return La versión de la última migración.
+     */
+    public int getLatestVersion() {
+        return migrations.size();
+    }
+
+    /**
+     * Obtiene la versión del esquema de una base de datos.
+     * @param conn La conexión con la base de datos.
+     * @return La versión (0, si no tiene esquema).
+     * @throws SQLException Cuando no puede consultarse.
+     */
+    public static int getVersion(Connection conn) throws SQLException {
+        try(
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("PRAGMA user_version");
+        ) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Aplica las migraciones pendientes y comprueba que no han cambiado las ya aplicadas.
+     * @param conn La conexión con la base de datos, que debe permitir modificarla.
+     * @return El número de migraciones aplicadas.
+     * @throws DataAccessException Cuando una migración ya aplicada ha cambiado, la base de
+     *      datos tiene una versión más moderna que las migraciones o falla alguna migración.
+     */
+    public int migrate(Connection conn) throws DataAccessException {
+        try {
+            int version = getVersion(conn);
+            if(version == 0 && hasTables(conn)) version = baseline(conn);
+            validate(conn, version);
+
+            int aplicadas = 0;
+            for(Migration m: migrations.subList(version, migrations.size())) {
+                apply(conn, m);
+                aplicadas++;
+            }
+            return aplicadas;
+        }
+        catch(SQLException err) {
+            throw new DataAccessException(err);
+        }
+    }
+
+    /**
+     * Comprueba, sin modificar nada, que la base de datos tiene esquema y que no han
+     * cambiado las migraciones que se le aplicaron. Que tenga migraciones pendientes no
+     * es un error, sólo se avisa de ello: puede consultarse igualmente (las migraciones
+     * posteriores a la inicial añaden, por ejemplo, índices) y se pondrá al día la próxima
+     * vez que se abra con permiso de escritura.
+     * @param conn La conexión con la base de datos.
+     * @return El número de migraciones pendientes.
+     * @throws DataAccessException Cuando no tiene esquema o no coincide con las migraciones.
+     */
+    public int validate(Connection conn) throws DataAccessException {
+        try {
+            int version = getVersion(conn);
+            if(version == 0) {
+                if(!hasTables(conn)) throw new DataAccessException("La base de datos no tiene esquema");
+                // Creada antes de existir las migraciones.
+                version = 1;
+            }
+            validate(conn, version);
+            int pendientes = getLatestVersion() - version;
+            if(pendientes > 0) {
+                logger.warn("El esquema está en la versión {} y la última es la {}: las migraciones pendientes se aplicarán al abrir la base de datos con permiso de escritura",
+                    version, getLatestVersion());
+            }
+            return pendientes;
+        }
+        catch(SQLException err) {
+            throw new DataAccessException(err);
+        }
+    }
+
+    private void validate(Connection conn, int version) throws SQLException, DataAccessException {
+        if(version > getLatestVersion()) {
+            throw new DataAccessException(String.format("El esquema está en la versión %d, pero sólo se conocen %d migraciones", version, getLatestVersion()));
+        }
+        if(!hasHistory(conn)) return;
+
+        try(
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_history ORDER BY version");
+        ) {
+            while(rs.next()) {
+                int v = rs.getInt(1);
+                String checksum = rs.getString(2);
+                if(v > version || checksum == null) continue;
+                Migration m = migrations.get(v - 1);
+                if(!checksum.equals(checksum(m))) {
+                    throw new DataAccessException(String.format("La migración %s se ha modificado después de aplicarse", m.resource()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Aplica una migración en una transacción junto con su anotación en el historial.
+     */
+    private void apply(Connection conn, Migration m) throws SQLException, DataAccessException {
+        try(TransactionManager tm = new TransactionManager(conn)) {
+            createHistory(conn);
+            MessageDigest md = digest();
+            try(
+                InputStream st = new DigestInputStream(open(m.resource()), md);
+                Reader reader = new InputStreamReader(st, StandardCharsets.UTF_8);
+            ) {
+                SqlUtils.executeSQL(conn, reader, SqlUtils.SCRIPT_BATCH, 0);
+                // Se consume el resto (p.e. un comentario final) para completar la suma.
+                while(reader.read() >= 0);
+            }
+            catch(IOException err) {
+                throw new DataAccessException(String.format("No puede leerse la migración %s", m.resource()), err);
+            }
+            catch(SQLException err) {
+                throw new DataAccessException(String.format("Falla la migración %s", m.resource()), err);
+            }
+            record(conn, m, HexFormat.of().formatHex(md.digest()));
+            tm.commit();
+        }
+    }
+
+    /**
+     * Anota como aplicada la versión 1 en una base de datos creada antes de existir las migraciones.
+     * @return La versión resultante.
+     */
+    private int baseline(Connection conn) throws SQLException, DataAccessException {
+        try(TransactionManager tm = new TransactionManager(conn)) {
+            createHistory(conn);
+            // Sin suma de comprobación: el esquema no se creó con este guión.
+            record(conn, migrations.get(0), null);
+            tm.commit();
+        }
+        return 1;
+    }
+
+    private void record(Connection conn, Migration m, String checksum) throws SQLException {
+        try(PreparedStatement pstmt = conn.prepareStatement("INSERT INTO schema_history (version, descripcion, checksum) VALUES (?, ?, ?)")) {
+            pstmt.setInt(1, m.version());
+            pstmt.setString(2, m.description());
+            pstmt.setString(3, checksum);
+            pstmt.executeUpdate();
+        }
+        try(Statement stmt = conn.createStatement()) {
+            // PRAGMA no admite parámetros; version es un entero.
+            stmt.execute("PRAGMA user_version = " + m.version());
+        }
+    }
+
+    private static void createHistory(Connection conn) throws SQLException {
+        try(Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_history ("
+                       + "version INTEGER PRIMARY KEY, descripcion TEXT NOT NULL, checksum TEXT, "
+                       + "aplicada TEXT NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+
+    private static boolean hasTables(Connection conn) throws SQLException {
+        try(
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite_%' LIMIT 1");
+        ) {
+            return rs.next();
+        }
+    }
+
+    private static boolean hasHistory(Connection conn) throws SQLException {
+        try(
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'schema_history'");
+        ) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Calcula la suma de comprobación del guión de una migración.
+     */
+    private String checksum(Migration m) throws DataAccessException {
+        MessageDigest md = digest();
+        try(InputStream st = new DigestInputStream(open(m.resource()), md)) {
+            st.transferTo(OutputStream.nullOutputStream());
+        }
+        catch(IOException err) {
+            throw new DataAccessException(String.format("No puede leerse la migración %s", m.resource()), err);
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException err) {
+            // Todas las implementaciones de Java deben incluir SHA-256.
+            throw new IllegalStateException(err);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ies.castillodeluna.ad.ejercicios.backend.sqlite;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Perfiles de ajuste de SQLite. Cada uno es un conjunto de PRAGMA que el driver
+ * aplica al abrir cada conexión del pool.
+ */
+public enum SqliteProfile {
+    /**
+     * Muchas transacciones pequeñas y concurrentes. Con WAL los lectores no esperan al
+     * escritor y, en ese modo, synchronous=NORMAL no pone en riesgo la integridad.
+     */
+    OLTP(false,
+        "journal_mode", "WAL",
+        "synchronous", "NORMAL",
+        "cache_size", "-16384",
+        "mmap_size", "268435456",
+        "temp_store", "MEMORY",
+        "busy_timeout", "5000"),
+    /**
+     * Cargas masivas: no se espera a que los datos lleguen al disco en cada
+     * confirmación, por lo que un corte de corriente puede perder las últimas.
+     */
+    BULK_LOAD(false,
+        "journal_mode", "WAL",
+        "synchronous", "OFF",
+        "cache_size", "-131072",
+        "mmap_size", "268435456",
+        "temp_store", "MEMORY",
+        "busy_timeout", "30000"),
+    /**
+     * Consultas sobre una base de datos que no se modifica.
+     */
+    READ_ONLY(true,
+        "cache_size", "-16384",
+        "mmap_size", "268435456",
+        "temp_store", "MEMORY",
+        "busy_timeout", "5000");
+
+    private final boolean readOnly;
+    private final Map<String, String> pragmas;
+
+    private SqliteProfile(boolean readOnly, String... pragmas) {
+        this.readOnly = readOnly;
+        this.pragmas = new LinkedHashMap<>();
+        for(int i = 0; i < pragmas.length; i += 2) this.pragmas.put(pragmas[i], pragmas[i + 1]);
+    }
+
+    public static SqliteProfile getProfile(String profile) {
+        return valueOf(profile.toUpperCase().replace("-", "_"));
+    }
+
+    /**
+     * Indica si las conexiones no pueden modificar la base de datos.
+     * @return true, si así es.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Genera las propiedades que reconoce el driver de SQLite para aplicar el perfil.
+     * @param reader Si las conexiones sólo se usarán para consultar, en cuyo caso no
+     *      se intenta cambiar el modo del diario (que es persistente y lo fija el escritor).
+     * @return Las propiedades.
+     */
+    public Properties getProperties(boolean reader) {
+        Properties props = new Properties();
+        pragmas.forEach((pragma, value) -> {
+            if(!reader || !pragma.equals("journal_mode")) props.setProperty(pragma, value);
+        });
+        return props;
+    }
+
+    /**
+     * Aplica el perfil a una conexión ya abierta, p.e. para cambiar temporalmente
+     * el de una conexión del pool. El modo del diario no se cambia. No puede
+     * aplicarse dentro de una transacción.
+     * @param conn La conexión.
+     * @throws SQLException Cuando no puede aplicarse algún PRAGMA.
+     */
+    public void apply(Connection conn) throws SQLException {
+        try(Statement stmt = conn.createStatement()) {
+            for(Map.Entry<String, String> pragma: pragmas.entrySet()) {
+                if(pragma.getKey().equals("journal_mode")) continue;
+                stmt.execute(String.format("PRAGMA %s = %s", pragma.getKey(), pragma.getValue()));
+            }
+        }
+    }
+}
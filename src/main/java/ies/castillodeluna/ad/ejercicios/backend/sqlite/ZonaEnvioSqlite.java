@@ -1,23 +1,26 @@
 package ies.castillodeluna.ad.ejercicios.backend.sqlite;
 
+import java.nio.channels.WritableByteChannel;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
-import ies.castillodeluna.ad.ejercicios.SqlUtils;
-import ies.castillodeluna.ad.ejercicios.DAO.AbstractDao;
+import ies.castillodeluna.ad.ejercicios.SqlUtils.RowMapper;
 import ies.castillodeluna.ad.ejercicios.DAO.ConnectionProvider;
+import ies.castillodeluna.ad.ejercicios.DAO.Exportable;
 import ies.castillodeluna.ad.ejercicios.DAO.Crud;
 import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.export.TableExporter;
 import ies.castillodeluna.ad.ejercicios.model.ZonaEnvio;
+import ies.castillodeluna.ad.ejercicios.model.ZonaEnvioMapper;
 
-public class ZonaEnvioSqlite  extends AbstractDao implements Crud<ZonaEnvio>{
+public class ZonaEnvioSqlite extends AbstractSqliteDao implements Crud<ZonaEnvio>, Exportable{
     /**
      * Constructor de la zona de envío
      * @param ds Fuente de datos
@@ -25,6 +28,15 @@ public class ZonaEnvioSqlite  extends AbstractDao implements Crud<ZonaEnvio>{
     public ZonaEnvioSqlite(DataSource ds) {
         super(ds);
     }
+
+    /**
+     * Constructor de la clase
+     * @param ds Fuente de datos con la que se modifica la base de datos
+     * @param readDs Fuente de datos con la que se consulta la base de datos
+     */
+    public ZonaEnvioSqlite(DataSource ds, DataSource readDs) {
+        super(ds, readDs);
+    }
     /**
      * Constructor de la clase
      * @param conn Conexión a la base de datos
@@ -41,17 +53,11 @@ public class ZonaEnvioSqlite  extends AbstractDao implements Crud<ZonaEnvio>{
     }
 
     /**
-     * 
-     * @param rs
-     * @return
-     * @throws SQLException
+     * Transforma los registros en objetos ZonaEnvio. Lo genera el procesador de
+     * anotaciones y lee las columnas por posición, por lo que las consultas
+     * deben ser {@code SELECT *} de la tabla.
      */
-    private static ZonaEnvio resultToZonaEnvio(ResultSet rs) throws SQLException {
-        int id = rs.getInt("id_zona");
-        String nombre = rs.getString("nombre_zona");
-        double tarifa = rs.getDouble("tarifa_envio");
-        return new ZonaEnvio(id, nombre, tarifa);
-    }
+    private final static RowMapper<ZonaEnvio> zonaEnvioMapper = ZonaEnvioMapper.INSTANCE;
     /**
      * 
      * @param zonaEnvio
@@ -69,12 +75,12 @@ public class ZonaEnvioSqlite  extends AbstractDao implements Crud<ZonaEnvio>{
     public Optional<ZonaEnvio> get(int id) throws DataAccessException {
         final String sqlString = "SELECT * FROM Zonas_Envio WHERE id_zona = ?";
         try (
-            Connection conn = cp.getConnection();
+            Connection conn = readCp.getConnection();
             PreparedStatement pstmt = conn.prepareStatement(sqlString);
         ) {
             pstmt.setInt(1, id);
             ResultSet rs = pstmt.executeQuery();
-            return rs.next() ? Optional.of(resultToZonaEnvio(rs)) : Optional.empty();
+            return rs.next() ? Optional.of(zonaEnvioMapper.map(rs)) : Optional.empty();
         } catch (SQLException e) {
             throw new DataAccessException(e);
         }
@@ -82,15 +88,18 @@ public class ZonaEnvioSqlite  extends AbstractDao implements Crud<ZonaEnvio>{
 
     @Override
     public Stream<ZonaEnvio> get() throws DataAccessException {
-        final String sqlString = "SELECT * FROM Zonas_Envio";
-        try {
-            Connection conn = cp.getConnection();
-            Statement stmt = conn.createStatement();
-            ResultSet rs = stmt.executeQuery(sqlString);
-            return SqlUtils.resultSetToStream(cp.isCloseable() ? conn : stmt, rs, ZonaEnvioSqlite::resultToZonaEnvio);
-        } catch (SQLException err) {
-            throw new DataAccessException(err);
-        }
+        return getAll("Zonas_Envio", "id_zona", zonaEnvioMapper);
+    }
+
+    @Override
+    public long export(TableExporter exporter, WritableByteChannel out) throws DataAccessException {
+        return export("Zonas_Envio", "id_zona", exporter, out);
+    }
+
+    @Override
+    public Stream<ZonaEnvio> get(Collection<Integer> ids) throws DataAccessException {
+        final String sqlString = "SELECT * FROM Zonas_Envio WHERE id_zona IN (%s)";
+        return getIn(sqlString, ids, zonaEnvioMapper);
     }
 
     @Override
@@ -122,6 +131,15 @@ public class ZonaEnvioSqlite  extends AbstractDao implements Crud<ZonaEnvio>{
         }
     }
 
+    @Override
+    public void insert(Iterable<ZonaEnvio> zonas) throws DataAccessException {
+        final String sqlString = "INSERT INTO Zonas_Envio (nombre_zona, tarifa_envio) VALUES (?, ?)";
+        insertBatch(sqlString, zonas, (zonaEnvio, pstmt) -> {
+            pstmt.setString(1, zonaEnvio.getNombre());
+            pstmt.setDouble(2, zonaEnvio.getTarifa());
+        });
+    }
+
     @Override
     public boolean update(ZonaEnvio zonaEnvio) throws DataAccessException {
         final String sqlString = "UPDATE Zonas_Envio SET nombre_zona = ?, tarifa_envio = ? WHERE id_zona = ?";
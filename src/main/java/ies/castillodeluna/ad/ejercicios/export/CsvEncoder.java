@@ -0,0 +1,59 @@
+package ies.castillodeluna.ad.ejercicios.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Codificador CSV (RFC 4180): una cabecera con los nombres de las columnas y un registro
+ * por línea. Los valores con comas, comillas o saltos de línea se entrecomillan y
+ * las comillas se duplican. Los nulos se escriben como un campo vacío y las
+ * cadenas vacías como "", para poder distinguirlos.
+ */
+final class CsvEncoder extends RowEncoder {
+
+    public CsvEncoder(WritableByteChannel channel, OutputStream stream, int size) {
+        super(channel, stream, size);
+    }
+
+    @Override
+    protected void header() throws IOException {
+        for(int i = 0; i < columns; i++) {
+            if(i > 0) put(',');
+            field(names[i]);
+        }
+        put('\n');
+    }
+
+    @Override
+    public void row(ResultSet rs) throws SQLException, IOException {
+        for(int i = 1; i <= columns; i++) {
+            if(i > 1) put(',');
+            byte[] value = rs.getBytes(i);
+            if(value != null) field(value);
+        }
+        put('\n');
+    }
+
+    private void field(byte[] value) throws IOException {
+        if(value.length > 0 && !needsQuotes(value)) {
+            put(value);
+            return;
+        }
+        put('"');
+        for(byte b: value) {
+            if(b == '"') put('"');
+            put(b);
+        }
+        put('"');
+    }
+
+    private static boolean needsQuotes(byte[] value) {
+        for(byte b: value) {
+            if(b == ',' || b == '"' || b == '\n' || b == '\r') return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,55 @@
+package ies.castillodeluna.ad.ejercicios.export;
+
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Formatos en que pueden exportarse los registros de una tabla.
+ */
+public enum ExportFormat {
+    /**
+     * Valores separados por comas, con una cabecera con los nombres de las columnas.
+     */
+    CSV("csv") {
+        @Override
+        RowEncoder encoder(WritableByteChannel channel, OutputStream stream, int size) {
+            return new CsvEncoder(channel, stream, size);
+        }
+    },
+    /**
+     * Un objeto JSON por línea.
+     */
+    JSONL("jsonl") {
+        @Override
+        RowEncoder encoder(WritableByteChannel channel, OutputStream stream, int size) {
+            return new JsonlEncoder(channel, stream, size);
+        }
+    };
+
+    private final String extension;
+
+    private ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public static ExportFormat getFormat(String format) {
+        return valueOf(format.toUpperCase());
+    }
+
+    /**
+     * Devuelve la extensión habitual de los ficheros con este formato.
+     * @return La extensión, sin punto.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Crea el codificador del formato.
+     * @param channel El canal de destino (null, si se escribe en un flujo).
+     * @param stream El flujo de destino (null, si se escribe en un canal).
+     * @param size El tamaño del búfer.
+     * @return El codificador.
+     */
+    abstract RowEncoder encoder(WritableByteChannel channel, OutputStream stream, int size);
+}
@@ -0,0 +1,115 @@
+package ies.castillodeluna.ad.ejercicios.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Codificador JSON Lines: un objeto JSON por registro y línea, con una propiedad por
+ * columna. Los valores de las columnas sin afinidad de texto que tienen forma de
+ * número se escriben como números; el resto, como cadenas.
+ */
+final class JsonlEncoder extends RowEncoder {
+
+    private final static byte[] NULL = {'n', 'u', 'l', 'l'};
+    private final static byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    // Lo que precede a cada valor: {"columna": o ,"columna":
+    private byte[][] keys;
+
+    public JsonlEncoder(WritableByteChannel channel, OutputStream stream, int size) {
+        super(channel, stream, size);
+    }
+
+    @Override
+    protected void header() {
+        // No hay cabecera: sólo se preparan una vez los nombres de las propiedades.
+        keys = new byte[columns][];
+        for(int i = 0; i < columns; i++) {
+            ByteArrayOutputStream key = new ByteArrayOutputStream();
+            key.write(i == 0 ? '{' : ',');
+            escape(names[i], key);
+            key.write(':');
+            keys[i] = key.toByteArray();
+        }
+    }
+
+    @Override
+    public void row(ResultSet rs) throws SQLException, IOException {
+        for(int i = 0; i < columns; i++) {
+            put(keys[i]);
+            byte[] value = rs.getBytes(i + 1);
+            if(value == null) put(NULL);
+            else if(!text[i] && isNumber(value)) put(value);
+            else string(value);
+        }
+        if(columns == 0) put('{');
+        put('}');
+        put('\n');
+    }
+
+    private void string(byte[] value) throws IOException {
+        put('"');
+        for(byte b: value) {
+            switch(b) {
+                case '"', '\\' -> { put('\\'); put(b); }
+                case '\n' -> { put('\\'); put('n'); }
+                case '\r' -> { put('\\'); put('r'); }
+                case '\t' -> { put('\\'); put('t'); }
+                default -> {
+                    // Los bytes de los caracteres multibyte de UTF-8 son negativos y se copian tal cual.
+                    if(b >= 0 && b < 0x20) {
+                        put('\\'); put('u'); put('0'); put('0');
+                        put(HEX[b >> 4]); put(HEX[b & 0xF]);
+                    }
+                    else put(b);
+                }
+            }
+        }
+        put('"');
+    }
+
+    private static void escape(byte[] value, ByteArrayOutputStream out) {
+        out.write('"');
+        for(byte b: value) {
+            if(b == '"' || b == '\\') out.write('\\');
+            if(b >= 0 && b < 0x20) out.writeBytes(String.format("\\u%04x", b).getBytes());
+            else out.write(b);
+        }
+        out.write('"');
+    }
+
+    /**
+     * Comprueba si un valor es un número válido en JSON:
+     * {@code -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?}
+     */
+    static boolean isNumber(byte[] v) {
+        int i = 0, n = v.length;
+        if(i < n && v[i] == '-') i++;
+        if(i == n) return false;
+        if(v[i] == '0') i++;
+        else if(v[i] >= '1' && v[i] <= '9') while(i < n && isDigit(v[i])) i++;
+        else return false;
+
+        if(i < n && v[i] == '.') {
+            int start = ++i;
+            while(i < n && isDigit(v[i])) i++;
+            if(i == start) return false;
+        }
+        if(i < n && (v[i] == 'e' || v[i] == 'E')) {
+            i++;
+            if(i < n && (v[i] == '+' || v[i] == '-')) i++;
+            int start = i;
+            while(i < n && isDigit(v[i])) i++;
+            if(i == start) return false;
+        }
+        return i == n;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
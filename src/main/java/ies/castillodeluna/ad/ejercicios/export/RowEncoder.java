@@ -0,0 +1,122 @@
+package ies.castillodeluna.ad.ejercicios.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Codificador de los registros de una consulta. Escribe los valores, tal como
+ * los devuelve SQLite en UTF-8 ({@link ResultSet#getBytes(int)}), en un búfer
+ * que se reutiliza y que se vuelca al destino cada vez que se llena, de modo que
+ * no se crea ninguna cadena por registro ni por campo.
+ */
+abstract class RowEncoder {
+
+    private final byte[] buf;
+    private final ByteBuffer bb;
+    private int pos;
+    private long flushed;
+
+    // Destino: un canal o, si se comprime, el flujo de compresión.
+    private final WritableByteChannel channel;
+    private final OutputStream stream;
+
+    /** Número de columnas de la consulta. */
+    protected int columns;
+    /** Nombres de las columnas en UTF-8. */
+    protected byte[][] names;
+    /** Si la columna tiene afinidad de texto, en cuyo caso sus valores nunca son números. */
+    protected boolean[] text;
+
+    protected RowEncoder(WritableByteChannel channel, OutputStream stream, int size) {
+        this.channel = channel;
+        this.stream = stream;
+        buf = new byte[size];
+        bb = ByteBuffer.wrap(buf);
+    }
+
+    /**
+     * Analiza las columnas de la consulta y escribe la cabecera.
+     * @param rs El resultado de la consulta, aún sin leer.
+     * @throws SQLException Cuando no pueden obtenerse las columnas.
+     * @throws IOException Cuando no puede escribirse la cabecera.
+     */
+    public void start(ResultSet rs) throws SQLException, IOException {
+        ResultSetMetaData md = rs.getMetaData();
+        columns = md.getColumnCount();
+        names = new byte[columns][];
+        text = new boolean[columns];
+        for(int i = 0; i < columns; i++) {
+            names[i] = md.getColumnLabel(i + 1).getBytes(StandardCharsets.UTF_8);
+            text[i] = isText(md.getColumnTypeName(i + 1));
+        }
+        header();
+    }
+
+    /**
+     * Determina si un tipo declarado tiene afinidad de texto según las reglas de SQLite:
+     * no contiene INT, pero sí CHAR, CLOB o TEXT.
+     */
+    private static boolean isText(String type) {
+        if(type == null) return false;
+        type = type.toUpperCase();
+        return !type.contains("INT") && (type.contains("CHAR") || type.contains("CLOB") || type.contains("TEXT"));
+    }
+
+    /**
+     * Escribe la cabecera del fichero.
+     * @throws IOException Cuando no puede escribirse.
+     */
+    protected abstract void header() throws IOException;
+
+    /**
+     * Escribe el registro actual.
+     * @param rs El resultado de la consulta, situado en el registro.
+     * @throws SQLException Cuando no pueden leerse los valores.
+     * @throws IOException Cuando no puede escribirse.
+     */
+    public abstract void row(ResultSet rs) throws SQLException, IOException;
+
+    protected final void put(int b) throws IOException {
+        if(pos == buf.length) flush();
+        buf[pos++] = (byte) b;
+    }
+
+    protected final void put(byte[] b) throws IOException {
+        int off = 0;
+        while(off < b.length) {
+            if(pos == buf.length) flush();
+            int n = Math.min(b.length - off, buf.length - pos);
+            System.arraycopy(b, off, buf, pos, n);
+            pos += n;
+            off += n;
+        }
+    }
+
+    /**
+     * Vuelca el búfer al destino.
+     * @throws IOException Cuando no puede escribirse.
+     */
+    public void flush() throws IOException {
+        if(stream != null) stream.write(buf, 0, pos);
+        else {
+            bb.limit(pos).position(0);
+            while(bb.hasRemaining()) channel.write(bb);
+        }
+        flushed += pos;
+        pos = 0;
+    }
+
+    /**
+     * Devuelve el número de bytes escritos (antes de comprimirlos).
+     * @return El número de bytes.
+     */
+    public long getBytes() {
+        return flushed + pos;
+    }
+}
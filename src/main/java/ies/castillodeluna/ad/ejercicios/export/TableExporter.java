@@ -0,0 +1,124 @@
+package ies.castillodeluna.ad.ejercicios.export;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exporta los registros de una consulta a CSV o JSON Lines. Los registros se leen
+ * del ResultSet y se escriben directamente en el canal de destino a través de un
+ * búfer que se reutiliza, por lo que la memoria que se usa no depende del número
+ * de registros:
+ * <pre>
+ *     TableExporter exporter = new TableExporter(ExportFormat.CSV, true,
+ *         (filas, bytes) -&gt; System.err.printf("%d registros%n", filas), 1_000_000);
+ *     conexion.getExportable(Pedido.class).export(exporter, Path.of("pedidos.csv.gz"));
+ * </pre>
+ * Los objetos de esta clase no guardan estado entre exportaciones, así que
+ * pueden usarse en varias a la vez.
+ */
+public class TableExporter {
+
+    /**
+     * Tamaño por defecto del búfer de escritura.
+     */
+    public final static int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Número de registros por defecto entre dos avisos de progreso.
+     */
+    public final static long PROGRESS_EVERY = 100_000;
+
+    /**
+     * Recibe el progreso de una exportación.
+     */
+    @FunctionalInterface
+    public static interface Progress {
+        /**
+         * Informa del progreso.
+         * @param rows Los registros exportados hasta el momento.
+         * @param bytes Los bytes generados (antes de comprimirlos).
+         */
+        void update(long rows, long bytes);
+    }
+
+    private final ExportFormat format;
+    private final boolean gzip;
+    private final Progress progress;
+    private final long progressEvery;
+    private final int bufferSize;
+
+    /**
+     * Constructor de la clase. No comprime ni informa del progreso.
+     * @param format El formato de exportación.
+     */
+    public TableExporter(ExportFormat format) {
+        this(format, false, null, PROGRESS_EVERY);
+    }
+
+    /**
+     * Constructor de la clase.
+     * @param format El formato de exportación.
+     * @param gzip Si se comprime la salida con gzip.
+     * @param progress El receptor del progreso (o null). Se le informa cada
+     *      {@code progressEvery} registros y al terminar.
+     * @param progressEvery El número de registros entre dos avisos.
+     */
+    public TableExporter(ExportFormat format, boolean gzip, Progress progress, long progressEvery) {
+        this(format, gzip, progress, progressEvery, BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor de la clase.
+     * @param format El formato de exportación.
+     * @param gzip Si se comprime la salida con gzip.
+     * @param progress El receptor del progreso (o null).
+     * @param progressEvery El número de registros entre dos avisos.
+     * @param bufferSize El tamaño del búfer de escritura.
+     */
+    public TableExporter(ExportFormat format, boolean gzip, Progress progress, long progressEvery, int bufferSize) {
+        if(progressEvery < 1) throw new IllegalArgumentException("El número de registros entre avisos debe ser positivo");
+        if(bufferSize < 1) throw new IllegalArgumentException("El tamaño del búfer debe ser positivo");
+        this.format = format;
+        this.gzip = gzip;
+        this.progress = progress;
+        this.progressEvery = progressEvery;
+        this.bufferSize = bufferSize;
+    }
+
+    public ExportFormat getFormat() {
+        return format;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * Exporta los registros pendientes de una consulta. Ni el resultado ni el canal se cierran.
+     * @param rs El resultado de la consulta.
+     * @param out El canal de destino.
+     * @return El número de registros exportados.
+     * @throws SQLException Cuando no pueden leerse los registros.
+     * @throws IOException Cuando no puede escribirse en el destino.
+     */
+    public long export(ResultSet rs, WritableByteChannel out) throws SQLException, IOException {
+        // GZIPOutputStream no tiene versión para canales, pero sí puede escribir en uno.
+        GZIPOutputStream gz = gzip ? new GZIPOutputStream(Channels.newOutputStream(out), bufferSize) : null;
+        RowEncoder encoder = gz == null ? format.encoder(out, null, bufferSize) : format.encoder(null, gz, bufferSize);
+
+        encoder.start(rs);
+        long rows = 0;
+        while(rs.next()) {
+            encoder.row(rs);
+            if(++rows % progressEvery == 0 && progress != null) progress.update(rows, encoder.getBytes());
+        }
+        encoder.flush();
+        if(gz != null) gz.finish();
+        if(progress != null) progress.update(rows, encoder.getBytes());
+        return rows;
+    }
+}
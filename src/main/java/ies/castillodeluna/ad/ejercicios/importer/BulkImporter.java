@@ -0,0 +1,527 @@
+package ies.castillodeluna.ad.ejercicios.importer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.sql.DataSource;
+
+import org.sqlite.SQLiteErrorCode;
+
+import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.backend.sqlite.SqliteProfile;
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.importer.ImportReport.Rejection;
+import ies.castillodeluna.ad.ejercicios.transaction.TransactionManager;
+
+/**
+ * Importación masiva de ficheros CSV o JSON Lines en una base de datos SQLite.
+ * La importación es una cadena de tres etapas:
+ * <ol>
+ *  <li>El fichero se divide en tramos de unos {@link #CHUNK_SIZE} bytes que acaban en un
+ *      salto de línea, y cada tramo se proyecta en memoria y se analiza en paralelo
+ *      en un ForkJoinPool.
+ *  <li>Cada línea se convierte en un objeto del modelo y se valida
+ *      (véase {@link ImportTarget}). Las líneas no válidas se rechazan.
+ *  <li>Los objetos válidos se envían por lotes a un único escritor (SQLite sólo admite
+ *      uno), que los inserta con sentencias INSERT de {@link #ROWS_PER_INSERT} registros,
+ *      con el perfil {@link SqliteProfile#BULK_LOAD} aplicado a su conexión, y confirma
+ *      cada {@link #COMMIT_ROWS} registros. Si una inserción falla (p.e. por un
+ *      identificador repetido), sus registros se insertan uno a uno para rechazar sólo
+ *      los que fallan.
+ * </ol>
+ * La cola entre los analizadores y el escritor está acotada, de modo que la memoria
+ * no depende del tamaño del fichero. Los registros no se insertan necesariamente en el
+ * orden del fichero y, como se confirman por partes, si la importación se interrumpe
+ * quedan insertados los ya confirmados.
+ */
+public class BulkImporter {
+
+    /**
+     * Tamaño aproximado de los tramos en que se divide el fichero.
+     */
+    public final static int CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Número de registros de los lotes que se envían al escritor.
+     */
+    public final static int BATCH_SIZE = 1000;
+
+    /**
+     * Número de registros de cada sentencia INSERT.
+     */
+    public final static int ROWS_PER_INSERT = 100;
+
+    /**
+     * Número de registros entre dos confirmaciones.
+     */
+    public final static int COMMIT_ROWS = 100_000;
+
+    /**
+     * Número de hilos que analizan el fichero por defecto: todos los
+     * procesadores menos uno, que queda para el escritor.
+     */
+    public final static int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    /**
+     * Número máximo de rechazos de los que se guarda el detalle.
+     */
+    public final static int MAX_REJECTIONS = 1000;
+
+    /**
+     * Recibe el progreso de una importación.
+     */
+    @FunctionalInterface
+    public static interface Progress {
+        /**
+         * Informa del progreso. Se invoca tras cada confirmación y al terminar.
+         * @param inserted Los registros insertados hasta el momento.
+         * @param rejected Los registros rechazados hasta el momento.
+         */
+        void update(long inserted, long rejected);
+    }
+
+    /**
+     * Lote de objetos válidos de un tramo, con sus números de línea dentro del tramo.
+     */
+    private static record Batch<T>(int chunk, List<T> rows, int[] lines) {}
+
+    /**
+     * Rechazo cuyo número de línea es relativo a su tramo.
+     */
+    private static record Rechazo(int chunk, int line, String reason) {}
+
+    private final static Batch<?> END = new Batch<>(-1, List.of(), new int[0]);
+
+    private final DataSource ds;
+    private final SqliteProfile profile;
+    private final int parallelism;
+    private final Progress progress;
+    private final int chunkSize;
+
+    /**
+     * Constructor de la clase.
+     * @param ds La fuente de datos, de la que se toma la conexión del escritor.
+     * @param profile El perfil de las conexiones de la fuente, que se restaura al terminar.
+     * @param parallelism El número de hilos que analizan el fichero.
+     * @param progress El receptor del progreso (o null).
+     */
+    public BulkImporter(DataSource ds, SqliteProfile profile, int parallelism, Progress progress) {
+        this(ds, profile, parallelism, progress, CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor de la clase que permite fijar el tamaño de los tramos,
+     * para probar ficheros pequeños divididos en varios tramos.
+     * @param ds La fuente de datos, de la que se toma la conexión del escritor.
+     * @param profile El perfil de las conexiones de la fuente, que se restaura al terminar.
+     * @param parallelism El número de hilos que analizan el fichero.
+     * @param progress El receptor del progreso (o null).
+     * @param chunkSize El tamaño aproximado de los tramos.
+     */
+    BulkImporter(DataSource ds, SqliteProfile profile, int parallelism, Progress progress, int chunkSize) {
+        if(parallelism < 1) throw new IllegalArgumentException("El número de hilos debe ser positivo");
+        if(chunkSize < 1) throw new IllegalArgumentException("El tamaño de los tramos debe ser positivo");
+        this.ds = ds;
+        this.profile = profile;
+        this.parallelism = parallelism;
+        this.progress = progress;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Constructor de la clase. El fichero se analiza con {@link #PARALLELISM} hilos.
+     * @param ds La fuente de datos, de la que se toma la conexión del escritor.
+     * @param profile El perfil de las conexiones de la fuente, que se restaura al terminar.
+     */
+    public BulkImporter(DataSource ds, SqliteProfile profile) {
+        this(ds, profile, PARALLELISM, null);
+    }
+
+    /**
+     * Importa un fichero.
+     * @param <T> El tipo de las entidades.
+     * @param target La tabla de destino.
+     * @param format El formato del fichero.
+     * @param fichero La ruta del fichero.
+     * @return El resultado de la importación, con los registros rechazados.
+     * @throws DataAccessException Cuando no puede leerse el fichero, su cabecera no es
+     *      válida o se produce un error de acceso a la base de datos.
+     */
+    public <T extends Entity> ImportReport importar(ImportTarget<T> target, ImportFormat format, Path fichero) throws DataAccessException {
+        long inicio = System.nanoTime();
+        try(FileChannel ch = FileChannel.open(fichero, StandardOpenOption.READ)) {
+            long size = ch.size();
+            byte[] header = null;
+            long dataStart = 0;
+            if(format.hasHeader()) {
+                long fin = nextLine(ch, 0);
+                header = new byte[(int) Math.min(fin, Integer.MAX_VALUE)];
+                ch.read(ByteBuffer.wrap(header), 0);
+                header = stripEol(header);
+                dataStart = fin;
+            }
+            try {
+                format.parser(target.getColumnas(), header);
+            }
+            catch(IllegalArgumentException err) {
+                throw new DataAccessException(String.format("%s: %s", fichero, err.getMessage()));
+            }
+
+            Run<T> run = new Run<>(target, format, header, ch, split(ch, dataStart, size, chunkSize));
+            try(Connection conn = ds.getConnection()) {
+                SqliteProfile.BULK_LOAD.apply(conn);
+                try {
+                    run.fks = loadFks(conn, target);
+                    run.execute(conn);
+                }
+                finally {
+                    profile.apply(conn);
+                }
+            }
+            catch(SQLException err) {
+                throw new DataAccessException(err);
+            }
+            return run.report(format.hasHeader() ? 2 : 1, size, Duration.ofNanos(System.nanoTime() - inicio));
+        }
+        catch(IOException err) {
+            throw new DataAccessException(String.format("No puede leerse %s", fichero), err);
+        }
+    }
+
+    /**
+     * Divide el fichero en tramos que empiezan al principio de una línea.
+     * @param chunkSize El tamaño aproximado de los tramos.
+     * @return Los límites de los tramos: el tramo i es [limites[i], limites[i + 1]).
+     */
+    private static long[] split(FileChannel ch, long start, long size, int chunkSize) throws IOException {
+        List<Long> limites = new ArrayList<>();
+        long pos = start;
+        limites.add(pos);
+        while(pos < size) {
+            pos = pos + chunkSize >= size ? size : nextLine(ch, pos + chunkSize);
+            limites.add(pos);
+        }
+        return limites.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Busca el principio de la siguiente línea.
+     * @param pos La posición desde la que se busca.
+     * @return La posición que sigue al siguiente salto de línea o el tamaño del fichero.
+     */
+    private static long nextLine(FileChannel ch, long pos) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        while(true) {
+            buf.clear();
+            int n = ch.read(buf, pos);
+            if(n < 0) return ch.size();
+            for(int i = 0; i < n; i++) {
+                if(buf.get(i) == '\n') return pos + i + 1;
+            }
+            pos += n;
+        }
+    }
+
+    private static byte[] stripEol(byte[] line) {
+        int len = line.length;
+        if(len > 0 && line[len - 1] == '\n') len--;
+        if(len > 0 && line[len - 1] == '\r') len--;
+        return len == line.length ? line : Arrays.copyOf(line, len);
+    }
+
+    /**
+     * Comprueba si un error se debe a que el registro viola una restricción
+     * (clave primaria, NOT NULL, CHECK, clave ajena...). El código de error puede
+     * ser el extendido, cuyo byte menos significativo es el código primario.
+     */
+    private static boolean isConstraint(SQLException err) {
+        return (err.getErrorCode() & 0xff) == SQLiteErrorCode.SQLITE_CONSTRAINT.code;
+    }
+
+    /**
+     * Obtiene los identificadores de la tabla a la que hace referencia la clave ajena.
+     */
+    private static BitSet loadFks(Connection conn, ImportTarget<?> target) throws SQLException {
+        BitSet fks = new BitSet();
+        try(
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery(String.format("SELECT %s FROM %s", target.getFkColumna(), target.getFkTabla()));
+        ) {
+            while(rs.next()) {
+                int id = rs.getInt(1);
+                if(id >= 0) fks.set(id);
+            }
+        }
+        return fks;
+    }
+
+    /**
+     * Estado de una importación en curso.
+     */
+    private class Run<T extends Entity> {
+        private final ImportTarget<T> target;
+        private final ImportFormat format;
+        private final byte[] header;
+        private final FileChannel ch;
+        private final long[] limites;
+        private BitSet fks;
+
+        private final BlockingQueue<Batch<?>> queue = new ArrayBlockingQueue<>(2 * parallelism);
+        // Número de líneas de cada tramo, para traducir los números de línea relativos.
+        private final int[] lineas;
+        private final AtomicInteger pendientes;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        // Si se ha dejado de analizar (por un error) o de escribir.
+        private volatile boolean cancelled;
+        private volatile boolean closed;
+
+        private final ConcurrentLinkedQueue<Rechazo> rechazos = new ConcurrentLinkedQueue<>();
+        private final AtomicLong rejected = new AtomicLong();
+        private long inserted;
+
+        public Run(ImportTarget<T> target, ImportFormat format, byte[] header, FileChannel ch, long[] limites) {
+            this.target = target;
+            this.format = format;
+            this.header = header;
+            this.ch = ch;
+            this.limites = limites;
+            lineas = new int[limites.length - 1];
+            pendientes = new AtomicInteger(lineas.length);
+        }
+
+        /**
+         * Analiza los tramos en paralelo y escribe los lotes en el hilo actual.
+         */
+        public void execute(Connection conn) throws SQLException, IOException {
+            if(lineas.length == 0) return;
+            try(ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+                for(int i = 0; i < lineas.length; i++) {
+                    final int chunk = i;
+                    pool.execute(() -> parseChunk(chunk));
+                }
+                try {
+                    write(conn);
+                }
+                finally {
+                    cancelled = true;
+                    closed = true;
+                    queue.clear();
+                }
+            }
+            Throwable err = failure.get();
+            if(err instanceof IOException e) throw e;
+            if(err instanceof RuntimeException e) throw e;
+            if(err instanceof Error e) throw e;
+        }
+
+        /**
+         * Analiza las líneas de un tramo y envía al escritor los objetos válidos.
+         */
+        private void parseChunk(int chunk) {
+            try {
+                if(cancelled) return;
+                long start = limites[chunk];
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start, limites[chunk + 1] - start);
+                LineParser parser = format.parser(target.getColumnas(), header);
+                int size = buf.limit();
+                byte[] line = new byte[1024];
+                List<T> rows = new ArrayList<>(BATCH_SIZE);
+                int[] lines = new int[BATCH_SIZE];
+                int numero = 0;
+
+                int pos = 0;
+                while(pos < size && !cancelled) {
+                    int fin = pos;
+                    while(fin < size && buf.get(fin) != '\n') fin++;
+                    int len = fin - pos;
+                    if(len > line.length) line = new byte[Math.max(len, line.length * 2)];
+                    buf.get(pos, line, 0, len);
+                    if(len > 0 && line[len - 1] == '\r') len--;
+                    pos = fin + 1;
+                    numero++;
+                    if(isBlank(line, len)) continue;
+
+                    try {
+                        T obj = target.build(parser.parse(line, len), fks);
+                        lines[rows.size()] = numero;
+                        rows.add(obj);
+                    }
+                    catch(IllegalArgumentException err) {
+                        reject(chunk, numero, err.getMessage());
+                    }
+                    if(rows.size() == BATCH_SIZE) {
+                        send(new Batch<>(chunk, rows, lines));
+                        rows = new ArrayList<>(BATCH_SIZE);
+                        lines = new int[BATCH_SIZE];
+                    }
+                }
+                if(!rows.isEmpty()) send(new Batch<>(chunk, rows, lines));
+                lineas[chunk] = numero;
+            }
+            catch(Throwable err) {
+                failure.compareAndSet(null, err);
+                cancelled = true;
+            }
+            finally {
+                // El último tramo en acabar avisa al escritor.
+                if(pendientes.decrementAndGet() == 0) send(END);
+            }
+        }
+
+        /**
+         * Envía un lote al escritor, esperando si la cola está llena.
+         */
+        private void send(Batch<?> batch) {
+            try {
+                while(!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    if(closed) return;
+                }
+            }
+            catch(InterruptedException err) {
+                Thread.currentThread().interrupt();
+                cancelled = true;
+            }
+        }
+
+        /**
+         * Inserta los lotes según llegan, hasta que se han analizado todos los tramos.
+         */
+        @SuppressWarnings("unchecked")
+        private void write(Connection conn) throws SQLException {
+            int cols = target.getColumnas().size();
+            try(
+                TransactionManager tm = new TransactionManager(conn);
+                PreparedStatement multiple = conn.prepareStatement(insertSql(ROWS_PER_INSERT));
+                PreparedStatement single = conn.prepareStatement(insertSql(1));
+            ) {
+                long confirmados = 0;
+                while(true) {
+                    Batch<T> batch;
+                    try {
+                        batch = (Batch<T>) queue.take();
+                    }
+                    catch(InterruptedException err) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Se ha interrumpido la importación", err);
+                    }
+                    // Si ha fallado el análisis, se desecha lo que no se ha confirmado.
+                    if(batch == END) break;
+
+                    List<T> rows = batch.rows();
+                    int i = 0;
+                    for(; i + ROWS_PER_INSERT <= rows.size(); i += ROWS_PER_INSERT) {
+                        insert(multiple, single, batch, i, ROWS_PER_INSERT, cols);
+                    }
+                    if(i < rows.size()) {
+                        try(PreparedStatement resto = conn.prepareStatement(insertSql(rows.size() - i))) {
+                            insert(resto, single, batch, i, rows.size() - i, cols);
+                        }
+                    }
+
+                    if(inserted - confirmados >= COMMIT_ROWS) {
+                        conn.commit();
+                        confirmados = inserted;
+                        if(progress != null) progress.update(inserted, rejected.get());
+                    }
+                }
+                if(failure.get() != null) return;
+                tm.commit();
+                if(progress != null) progress.update(inserted, rejected.get());
+            }
+        }
+
+        /**
+         * Inserta varios registros de un lote con una sola sentencia. Si algún registro
+         * viola una restricción, como SQLite sólo deshace la sentencia fallida, se
+         * insertan uno a uno y se rechazan los que la violan. Cualquier otro error
+         * (disco lleno, base de datos bloqueada...) interrumpe la importación.
+         */
+        private void insert(PreparedStatement multiple, PreparedStatement single, Batch<T> batch, int from, int n, int cols) throws SQLException {
+            List<T> rows = batch.rows();
+            for(int r = 0; r < n; r++) target.bind(rows.get(from + r), multiple, r * cols);
+            try {
+                multiple.executeUpdate();
+                inserted += n;
+                return;
+            }
+            catch(SQLException err) {
+                if(!isConstraint(err)) throw err;
+                if(n == 1) {
+                    reject(batch.chunk(), batch.lines()[from], err.getMessage());
+                    return;
+                }
+            }
+            for(int r = from; r < from + n; r++) {
+                target.bind(rows.get(r), single, 0);
+                try {
+                    single.executeUpdate();
+                    inserted++;
+                }
+                catch(SQLException err) {
+                    if(!isConstraint(err)) throw err;
+                    reject(batch.chunk(), batch.lines()[r], err.getMessage());
+                }
+            }
+        }
+
+        private String insertSql(int rows) {
+            List<String> columnas = target.getColumnas();
+            String fila = "(" + String.join(", ", Collections.nCopies(columnas.size(), "?")) + ")";
+            return String.format("INSERT INTO %s (%s) VALUES %s", target.getTabla(), String.join(", ", columnas),
+                                 String.join(", ", Collections.nCopies(rows, fila)));
+        }
+
+        private void reject(int chunk, int line, String reason) {
+            if(rejected.incrementAndGet() <= MAX_REJECTIONS) rechazos.add(new Rechazo(chunk, line, reason));
+        }
+
+        /**
+         * Genera el resultado, traduciendo los números de línea relativos a cada tramo.
+         * @param primera El número de la primera línea de datos del fichero.
+         */
+        public ImportReport report(int primera, long bytes, Duration elapsed) {
+            long[] offsets = new long[lineas.length];
+            long total = 0;
+            for(int i = 0; i < lineas.length; i++) {
+                offsets[i] = primera - 1 + total;
+                total += lineas[i];
+            }
+            List<Rejection> rejections = rechazos.stream()
+                .map(r -> new Rejection(offsets[r.chunk()] + r.line(), r.reason()))
+                .sorted(Comparator.comparingLong(Rejection::line))
+                .toList();
+            return new ImportReport(total, inserted, rejected.get(), rejections, bytes, elapsed);
+        }
+    }
+
+    private static boolean isBlank(byte[] line, int len) {
+        for(int i = 0; i < len; i++) {
+            if(line[i] != ' ' && line[i] != '\t') return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,97 @@
+package ies.castillodeluna.ad.ejercicios.importer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Analizador de líneas CSV (RFC 4180). La cabecera determina qué columna del fichero
+ * corresponde a cada columna de la tabla; las que no tienen correspondencia se ignoran.
+ * Como el fichero se reparte por líneas, un campo entrecomillado no puede
+ * contener saltos de línea.
+ */
+final class CsvLineParser extends LineParser {
+
+    // Columna de la tabla de cada campo de la línea (-1, si se ignora).
+    private final int[] destino;
+    private byte[] campo = new byte[256];
+
+    /**
+     * Constructor de la clase.
+     * @param columnas Las columnas de la tabla de destino.
+     * @param header La cabecera.
+     * @throws IllegalArgumentException Cuando la cabecera no es válida o le falta
+     *      alguna columna obligatoria (todas salvo el identificador).
+     */
+    public CsvLineParser(List<String> columnas, byte[] header) {
+        super(columnas);
+        if(header == null) throw new IllegalArgumentException("Falta la cabecera");
+
+        String[] campos = split(header, header.length);
+        destino = new int[campos.length];
+        boolean[] presente = new boolean[columnas.size()];
+        for(int i = 0; i < campos.length; i++) {
+            int c = campos[i] == null ? -1 : columnas.indexOf(campos[i].strip());
+            if(c >= 0 && presente[c]) throw new IllegalArgumentException(String.format("La columna %s está repetida", campos[i]));
+            if(c >= 0) presente[c] = true;
+            destino[i] = c;
+        }
+        for(int c = 1; c < presente.length; c++) {
+            if(!presente[c]) throw new IllegalArgumentException(String.format("Falta la columna %s", columnas.get(c)));
+        }
+    }
+
+    @Override
+    String[] parse(byte[] line, int len) {
+        String[] campos = split(line, len);
+        if(campos.length != destino.length) {
+            throw new IllegalArgumentException(String.format("tiene %d campos y la cabecera %d", campos.length, destino.length));
+        }
+        String[] values = new String[columnas.size()];
+        for(int i = 0; i < campos.length; i++) {
+            if(destino[i] >= 0) values[destino[i]] = campos[i];
+        }
+        return values;
+    }
+
+    /**
+     * Divide una línea en campos. Los campos vacíos sin comillas son nulos
+     * y "" es la cadena vacía.
+     */
+    private String[] split(byte[] line, int len) {
+        String[] campos = new String[8];
+        int n = 0;
+        int i = 0;
+        while(true) {
+            int size = 0;
+            boolean quoted = i < len && line[i] == '"';
+            if(quoted) {
+                i++;
+                while(true) {
+                    if(i == len) throw new IllegalArgumentException("comillas sin cerrar");
+                    byte b = line[i++];
+                    if(b == '"') {
+                        if(i < len && line[i] == '"') i++;
+                        else break;
+                    }
+                    if(size == campo.length) campo = Arrays.copyOf(campo, size * 2);
+                    campo[size++] = b;
+                }
+                if(i < len && line[i] != ',') throw new IllegalArgumentException(String.format("carácter inesperado tras las comillas en la posición %d", i + 1));
+            }
+            else {
+                int start = i;
+                while(i < len && line[i] != ',') i++;
+                size = i - start;
+                if(size > campo.length) campo = Arrays.copyOf(campo, Math.max(size, campo.length * 2));
+                System.arraycopy(line, start, campo, 0, size);
+            }
+
+            if(n == campos.length) campos = Arrays.copyOf(campos, n * 2);
+            campos[n++] = quoted || size > 0 ? new String(campo, 0, size, StandardCharsets.UTF_8) : null;
+            if(i == len) break;
+            i++;
+        }
+        return n == campos.length ? campos : Arrays.copyOf(campos, n);
+    }
+}
@@ -0,0 +1,55 @@
+package ies.castillodeluna.ad.ejercicios.importer;
+
+import java.util.List;
+
+/**
+ * Formatos de los ficheros que pueden importarse, que son los mismos
+ * en que se exportan las tablas.
+ */
+public enum ImportFormat {
+    /**
+     * Valores separados por comas, con una cabecera con los nombres de las columnas.
+     */
+    CSV(true) {
+        @Override
+        LineParser parser(List<String> columnas, byte[] header) {
+            return new CsvLineParser(columnas, header);
+        }
+    },
+    /**
+     * Un objeto JSON por línea.
+     */
+    JSONL(false) {
+        @Override
+        LineParser parser(List<String> columnas, byte[] header) {
+            return new JsonlLineParser(columnas);
+        }
+    };
+
+    private final boolean header;
+
+    private ImportFormat(boolean header) {
+        this.header = header;
+    }
+
+    public static ImportFormat getFormat(String format) {
+        return valueOf(format.toUpperCase());
+    }
+
+    /**
+     * Indica si la primera línea del fichero es una cabecera.
+     * @return true, si así es.
+     */
+    public boolean hasHeader() {
+        return header;
+    }
+
+    /**
+     * Crea un analizador de líneas.
+     * @param columnas Las columnas de la tabla de destino.
+     * @param header La cabecera (null, si el formato no tiene).
+     * @return El analizador.
+     * @throws IllegalArgumentException Cuando la cabecera no es válida.
+     */
+    abstract LineParser parser(List<String> columnas, byte[] header);
+}
@@ -0,0 +1,51 @@
+package ies.castillodeluna.ad.ejercicios.importer;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Resultado de una importación.
+ * @param lines El número de líneas de datos leídas (sin la cabecera).
+ * @param inserted El número de registros insertados.
+ * @param rejected El número de registros rechazados.
+ * @param rejections Los rechazos, ordenados por línea. Si son muchos, sólo
+ *      se guardan los {@link BulkImporter#MAX_REJECTIONS} primeros que se producen.
+ * @param bytes El tamaño del fichero.
+ * @param elapsed Lo que ha durado la importación.
+ */
+public record ImportReport(long lines, long inserted, long rejected, List<Rejection> rejections, long bytes, Duration elapsed) {
+
+    /**
+     * Registro rechazado.
+     * @param line El número de línea en el fichero, empezando por 1.
+     * @param reason La causa.
+     */
+    public static record Rejection(long line, String reason) {
+        @Override
+        public String toString() {
+            return String.format("Línea %d: %s", line, reason);
+        }
+    }
+
+    /**
+     * Calcula la velocidad de la importación.
+     * @return Los registros insertados por segundo.
+     */
+    public double rowsPerSecond() {
+        return inserted / Math.max(elapsed.toNanos() / 1e9, 1e-9);
+    }
+
+    /**
+     * Calcula la velocidad de lectura del fichero.
+     * @return Los MiB leídos por segundo.
+     */
+    public double megabytesPerSecond() {
+        return bytes / 1048576.0 / Math.max(elapsed.toNanos() / 1e9, 1e-9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d registros insertados y %d rechazados de %d líneas en %.3f s (%.0f registros/s, %.1f MiB/s)",
+            inserted, rejected, lines, elapsed.toNanos() / 1e9, rowsPerSecond(), megabytesPerSecond());
+    }
+}
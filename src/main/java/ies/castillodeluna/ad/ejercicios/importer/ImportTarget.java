@@ -0,0 +1,197 @@
+package ies.castillodeluna.ad.ejercicios.importer;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+
+import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.model.Cliente;
+import ies.castillodeluna.ad.ejercicios.model.Pedido;
+
+/**
+ * Tabla en la que se importan registros: sus columnas y cómo se convierten los
+ * valores leídos del fichero en un objeto del modelo, comprobando que son válidos
+ * para el esquema (obligatoriedad, tipos, longitudes y claves ajenas).
+ * <p>
+ * La primera columna es siempre el identificador, que es opcional: si no
+ * aparece, lo asigna la base de datos.
+ * @param <T> El tipo de las entidades.
+ */
+public abstract class ImportTarget<T extends Entity> {
+
+    /**
+     * Importación de pedidos. La fecha puede expresarse en milisegundos desde
+     * la época (como se almacena) o en formato ISO (aaaa-mm-dd).
+     */
+    public final static ImportTarget<Pedido> PEDIDOS = new ImportTarget<>("Pedidos",
+            List.of("id_pedido", "fecha", "importe_total", "id_cliente"), "Clientes", "id_cliente") {
+
+        @Override
+        Pedido build(String[] values, BitSet fks) {
+            return new Pedido(id(values[0]), fecha(values[1]), importe(values[2]), fk(values[3], fks));
+        }
+
+        @Override
+        void bind(Pedido pedido, PreparedStatement pstmt, int offset) throws SQLException {
+            bindId(pedido, pstmt, offset + 1);
+            pstmt.setDate(offset + 2, new java.sql.Date(pedido.getFecha().getTime()));
+            pstmt.setDouble(offset + 3, pedido.getImporte());
+            pstmt.setInt(offset + 4, pedido.getIdCliente());
+        }
+    };
+
+    /**
+     * Importación de clientes.
+     */
+    public final static ImportTarget<Cliente> CLIENTES = new ImportTarget<>("Clientes",
+            List.of("id_cliente", "nombre", "email", "telefono", "id_zona"), "Zonas_Envio", "id_zona") {
+
+        @Override
+        Cliente build(String[] values, BitSet fks) {
+            String email = texto("email", values[2], 100, true);
+            int arroba = email.indexOf('@');
+            if(arroba < 1 || arroba == email.length() - 1 || email.indexOf('@', arroba + 1) >= 0) {
+                throw new IllegalArgumentException(String.format("email: '%s' no es una dirección válida", email));
+            }
+            return new Cliente(id(values[0]), texto("nombre", values[1], 100, true), email,
+                               texto("telefono", values[3], 15, false), fk(values[4], fks));
+        }
+
+        @Override
+        void bind(Cliente cliente, PreparedStatement pstmt, int offset) throws SQLException {
+            bindId(cliente, pstmt, offset + 1);
+            pstmt.setString(offset + 2, cliente.getNombre());
+            pstmt.setString(offset + 3, cliente.getEmail());
+            pstmt.setString(offset + 4, cliente.getTelefono());
+            pstmt.setInt(offset + 5, cliente.getIdZonaEnvio());
+        }
+    };
+
+    private final String tabla;
+    private final List<String> columnas;
+    private final String fkTabla;
+    private final String fkColumna;
+
+    private ImportTarget(String tabla, List<String> columnas, String fkTabla, String fkColumna) {
+        this.tabla = tabla;
+        this.columnas = columnas;
+        this.fkTabla = fkTabla;
+        this.fkColumna = fkColumna;
+    }
+
+    public String getTabla() {
+        return tabla;
+    }
+
+    /**
+     * Devuelve las columnas de la tabla. La primera es el identificador.
+     * @return Los nombres de las columnas.
+     */
+    public List<String> getColumnas() {
+        return columnas;
+    }
+
+    /**
+     * Devuelve la tabla a la que hace referencia la clave ajena.
+     * @return El nombre de la tabla.
+     */
+    public String getFkTabla() {
+        return fkTabla;
+    }
+
+    /**
+     * Devuelve la columna de la clave ajena, que se llama igual en ambas tablas.
+     * @return El nombre de la columna.
+     */
+    public String getFkColumna() {
+        return fkColumna;
+    }
+
+    /**
+     * Genera el objeto que representa un registro.
+     * @param values Los valores, en el orden de {@link #getColumnas()} (null, si falta el valor).
+     * @param fks Los identificadores existentes en la tabla referenciada.
+     * @return El objeto.
+     * @throws IllegalArgumentException Cuando algún valor no es válido, con la causa como mensaje.
+     */
+    abstract T build(String[] values, BitSet fks);
+
+    /**
+     * Fija los parámetros de una inserción con los valores de un objeto.
+     * @param obj El objeto.
+     * @param pstmt La sentencia de inserción.
+     * @param offset El número de parámetros que preceden a los del objeto.
+     * @throws SQLException Cuando no pueden fijarse.
+     */
+    abstract void bind(T obj, PreparedStatement pstmt, int offset) throws SQLException;
+
+    private static void bindId(Entity obj, PreparedStatement pstmt, int index) throws SQLException {
+        // Con NULL, SQLite asigna el identificador.
+        if(obj.getId() > 0) pstmt.setInt(index, obj.getId());
+        else pstmt.setNull(index, Types.INTEGER);
+    }
+
+    private static int id(String value) {
+        if(value == null || value.isEmpty()) return 0;
+        int id = entero("id", value);
+        if(id < 1) throw new IllegalArgumentException(String.format("id: %d no es positivo", id));
+        return id;
+    }
+
+    private static int fk(String value, BitSet fks) {
+        if(value == null || value.isEmpty()) throw new IllegalArgumentException("falta la clave ajena");
+        int id = entero("clave ajena", value);
+        if(id < 0 || !fks.get(id)) throw new IllegalArgumentException(String.format("la clave ajena %d no existe", id));
+        return id;
+    }
+
+    private static int entero(String campo, String value) {
+        try {
+            return Integer.parseInt(value.strip());
+        }
+        catch(NumberFormatException err) {
+            throw new IllegalArgumentException(String.format("%s: '%s' no es un entero", campo, value));
+        }
+    }
+
+    private static Date fecha(String value) {
+        if(value == null || value.isBlank()) throw new IllegalArgumentException("falta la fecha");
+        value = value.strip();
+        try {
+            if(value.indexOf('-', 1) < 0) return new Date(Long.parseLong(value));
+            return Date.from(LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        }
+        catch(NumberFormatException | DateTimeParseException err) {
+            throw new IllegalArgumentException(String.format("fecha: '%s' no es una fecha", value));
+        }
+    }
+
+    private static double importe(String value) {
+        if(value == null || value.isBlank()) throw new IllegalArgumentException("falta el importe");
+        double importe;
+        try {
+            importe = Double.parseDouble(value.strip());
+        }
+        catch(NumberFormatException err) {
+            throw new IllegalArgumentException(String.format("importe: '%s' no es un número", value));
+        }
+        // DECIMAL(10, 2)
+        if(!(importe >= 0 && importe < 1e8)) throw new IllegalArgumentException(String.format("importe: %s fuera de rango", value));
+        return importe;
+    }
+
+    private static String texto(String campo, String value, int max, boolean obligatorio) {
+        if(value == null || value.isBlank()) {
+            if(obligatorio) throw new IllegalArgumentException(String.format("falta %s", campo));
+            return null;
+        }
+        if(value.length() > max) throw new IllegalArgumentException(String.format("%s: supera los %d caracteres", campo, max));
+        return value;
+    }
+}
@@ -0,0 +1,131 @@
+package ies.castillodeluna.ad.ejercicios.importer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Analizador de líneas JSON Lines: cada línea es un objeto cuyas propiedades
+ * son las columnas. Las propiedades que no son columnas de la tabla se ignoran
+ * y sus valores no pueden ser objetos ni listas.
+ */
+final class JsonlLineParser extends LineParser {
+
+    private byte[] line;
+    private int len;
+    private int pos;
+
+    public JsonlLineParser(List<String> columnas) {
+        super(columnas);
+    }
+
+    @Override
+    String[] parse(byte[] line, int len) {
+        this.line = line;
+        this.len = len;
+        pos = 0;
+
+        String[] values = new String[columnas.size()];
+        expect('{');
+        if(peek() == '}') pos++;
+        else while(true) {
+            expect('"');
+            int start = pos;
+            boolean escaped = skipString();
+            // Los nombres de las columnas no requieren secuencias de escape.
+            int c = escaped ? -1 : columna(line, start, pos - start - 1);
+            expect(':');
+            String value = value();
+            if(c >= 0) values[c] = value;
+
+            int b = peek();
+            pos++;
+            if(b == '}') break;
+            if(b != ',') throw error("se esperaba , o }");
+        }
+        if(peek() != -1) throw error("hay contenido tras el objeto");
+        return values;
+    }
+
+    private String value() {
+        int b = peek();
+        if(b == '"') {
+            pos++;
+            int start = pos;
+            boolean escaped = skipString();
+            String s = new String(line, start, pos - start - 1, StandardCharsets.UTF_8);
+            return escaped ? unescape(s) : s;
+        }
+        if(b == '{' || b == '[') throw error("no se admiten valores anidados");
+
+        int start = pos;
+        while(pos < len && line[pos] != ',' && line[pos] != '}' && line[pos] != ' ' && line[pos] != '\t') pos++;
+        if(pos == start) throw error("falta el valor");
+        String token = new String(line, start, pos - start, StandardCharsets.US_ASCII);
+        return token.equals("null") ? null : token;
+    }
+
+    /**
+     * Avanza hasta después de las comillas que cierran una cadena.
+     * @return Si la cadena contiene secuencias de escape.
+     */
+    private boolean skipString() {
+        boolean escaped = false;
+        while(true) {
+            if(pos >= len) throw error("cadena sin cerrar");
+            byte b = line[pos++];
+            if(b == '"') return escaped;
+            if(b == '\\') {
+                escaped = true;
+                pos++;
+            }
+        }
+    }
+
+    private static String unescape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            c = s.charAt(++i);
+            switch(c) {
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> {
+                    if(i + 4 >= s.length()) throw new IllegalArgumentException("secuencia \\u incompleta");
+                    try {
+                        sb.append((char) Integer.parseInt(s, i + 1, i + 5, 16));
+                    }
+                    catch(NumberFormatException err) {
+                        throw new IllegalArgumentException(String.format("secuencia \\u%s inválida", s.substring(i + 1, i + 5)));
+                    }
+                    i += 4;
+                }
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void expect(int c) {
+        if(peek() != c) throw error(String.format("se esperaba %c", (char) c));
+        pos++;
+    }
+
+    /**
+     * Devuelve el siguiente carácter que no es un espacio, sin consumirlo (-1 al final).
+     */
+    private int peek() {
+        while(pos < len && (line[pos] == ' ' || line[pos] == '\t')) pos++;
+        return pos < len ? line[pos] : -1;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(String.format("JSON inválido en la posición %d: %s", pos + 1, message));
+    }
+}
@@ -0,0 +1,51 @@
+package ies.castillodeluna.ad.ejercicios.importer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Analizador de las líneas de un fichero de importación. Cada línea es un registro
+ * y sus valores se devuelven en el orden de las columnas de la tabla de destino.
+ * Los analizadores guardan estado entre llamadas (sus búferes), por lo que cada
+ * hilo debe usar el suyo.
+ */
+abstract class LineParser {
+
+    /** Columnas de la tabla de destino. */
+    protected final List<String> columnas;
+    /** Nombres de las columnas en UTF-8. */
+    protected final byte[][] nombres;
+
+    protected LineParser(List<String> columnas) {
+        this.columnas = columnas;
+        nombres = new byte[columnas.size()][];
+        for(int i = 0; i < nombres.length; i++) nombres[i] = columnas.get(i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Obtiene la posición de una columna de la tabla de destino.
+     * @param nombre El nombre de la columna, en UTF-8.
+     * @param off La posición en que empieza el nombre.
+     * @param len La longitud del nombre.
+     * @return La posición o -1, si la tabla no tiene esa columna.
+     */
+    protected int columna(byte[] nombre, int off, int len) {
+        for(int i = 0; i < nombres.length; i++) {
+            byte[] n = nombres[i];
+            if(n.length != len) continue;
+            int j = 0;
+            while(j < len && n[j] == nombre[off + j]) j++;
+            if(j == len) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Analiza una línea.
+     * @param line Los bytes de la línea, sin el salto de línea.
+     * @param len La longitud de la línea.
+     * @return Los valores, en el orden de las columnas de destino (null, si falta).
+     * @throws IllegalArgumentException Cuando la línea está mal formada, con la causa como mensaje.
+     */
+    abstract String[] parse(byte[] line, int len);
+}
@@ -0,0 +1,29 @@
+package ies.castillodeluna.ad.ejercicios.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Carga perezosa de una clave foránea. Muchos eventos seguidos con la misma
+ * entidad y atributo delatan un patrón N+1 (véase FkPrefetcher).
+ */
+@Name(FkLazyLoadEvent.NAME)
+@Label("Carga perezosa")
+@Category({"Acceso a datos", "Entidades"})
+@Description("Consulta de una clave foránea al acceder a su getter")
+public class FkLazyLoadEvent extends Event {
+
+    public final static String NAME = "ies.castillodeluna.ad.FkLazyLoad";
+
+    @Label("Entidad")
+    public String entity;
+
+    @Label("Atributo")
+    public String field;
+
+    @Label("Clave foránea")
+    public int fkId;
+}
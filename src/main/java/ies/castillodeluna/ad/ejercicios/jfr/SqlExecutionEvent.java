@@ -0,0 +1,31 @@
+package ies.castillodeluna.ad.ejercicios.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Ejecución de una sentencia preparada. Lo emiten las sentencias que
+ * se obtienen de la caché de sentencias (véase StatementCache).
+ * <p>
+ * Como todos los eventos de este paquete, si JFR no lo está grabando, crearlo,
+ * comenzarlo y comprobar {@link #shouldCommit()} no cuesta prácticamente nada:
+ * los atributos sólo se calculan cuando el evento va a registrarse.
+ */
+@Name(SqlExecutionEvent.NAME)
+@Label("Ejecución SQL")
+@Category({"Acceso a datos", "SQL"})
+@Description("Ejecución de una sentencia SQL")
+public class SqlExecutionEvent extends Event {
+
+    public final static String NAME = "ies.castillodeluna.ad.SqlExecution";
+
+    @Label("Sentencia")
+    public String sql;
+
+    @Label("Filas")
+    @Description("Filas modificadas (-1 en las consultas, cuyas filas se registran al cerrar su flujo)")
+    public long rows;
+}
@@ -0,0 +1,25 @@
+package ies.castillodeluna.ad.ejercicios.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Vida de un flujo generado a partir de un ResultSet: desde que se crea hasta
+ * que se cierra, que es el tiempo durante el cual retiene la sentencia (y
+ * quizás la conexión).
+ */
+@Name(SqlStreamEvent.NAME)
+@Label("Flujo de resultados")
+@Category({"Acceso a datos", "SQL"})
+@Description("Flujo de filas desde que se abre hasta que se cierra")
+public class SqlStreamEvent extends Event {
+
+    public final static String NAME = "ies.castillodeluna.ad.SqlStream";
+
+    @Label("Filas")
+    @Description("Filas leídas del flujo")
+    public long rows;
+}
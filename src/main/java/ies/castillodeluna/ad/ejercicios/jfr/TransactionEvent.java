@@ -0,0 +1,26 @@
+package ies.castillodeluna.ad.ejercicios.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Transacción, desde que comienza hasta que se confirma o se desecha.
+ */
+@Name(TransactionEvent.NAME)
+@Label("Transacción")
+@Category({"Acceso a datos", "Transacciones"})
+@Description("Transacción desde su comienzo hasta su confirmación o desecho")
+public class TransactionEvent extends Event {
+
+    public final static String NAME = "ies.castillodeluna.ad.Transaction";
+
+    @Label("Confirmada")
+    public boolean committed;
+
+    @Label("Anidada")
+    @Description("Si forma parte de otra transacción, que es la que la confirma")
+    public boolean nested;
+}
@@ -0,0 +1,20 @@
+package ies.castillodeluna.ad.ejercicios.metrics;
+
+/**
+ * Contador monótono.
+ */
+public interface Counter {
+
+    /**
+     * Incrementa el contador.
+     * @param n La cantidad que se suma.
+     */
+    public void add(long n);
+
+    /**
+     * Incrementa en uno el contador.
+     */
+    default void increment() {
+        add(1);
+    }
+}
@@ -0,0 +1,126 @@
+package ies.castillodeluna.ad.ejercicios.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias de resolución fija: los valores menores que 16 ns tienen
+ * su propio intervalo y, a partir de ahí, cada potencia de dos se divide en 16 intervalos,
+ * por lo que el error relativo de los percentiles es inferior al 6.25%. Los contadores
+ * ocupan un array de tamaño fijo, de modo que registrar una medición no crea objetos
+ * ni bloquea a otros hilos.
+ */
+public class LatencyHistogram implements Timer, LatencyHistogramMXBean {
+
+    private final static int SUB_BITS = 4;
+    private final static int SUB = 1 << SUB_BITS;
+    private final static int BUCKETS = (Long.SIZE - SUB_BITS) * SUB;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Calcula el intervalo al que pertenece un valor.
+     */
+    private static int index(long value) {
+        if(value < SUB) return (int) value;
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        return (exp - SUB_BITS + 1) * SUB + (int) ((value >>> (exp - SUB_BITS)) & (SUB - 1));
+    }
+
+    /**
+     * Calcula el menor valor que pertenece a un intervalo.
+     */
+    private static long lowerBound(int index) {
+        if(index < SUB) return index;
+        int exp = index / SUB + SUB_BITS - 1;
+        return (long) (SUB + index % SUB) << (exp - SUB_BITS);
+    }
+
+    @Override
+    public void record(long nanos) {
+        if(nanos < 0) nanos = 0;
+        buckets.incrementAndGet(index(nanos));
+        count.increment();
+        total.add(nanos);
+        long m = max.get();
+        while(nanos > m && !max.compareAndSet(m, nanos)) m = max.get();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getTotal() {
+        return total.sum();
+    }
+
+    @Override
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getTotal() / n;
+    }
+
+    @Override
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Calcula un percentil. Como el histograma se actualiza mientras se recorre,
+     * el resultado es aproximado también en ese sentido.
+     * @param q El percentil expresado como un valor entre 0 y 1 (p.e. 0.99).
+     * @return El límite superior del intervalo en el que cae el percentil (0, si no hay mediciones).
+     */
+    public long getPercentile(double q) {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for(int i = 0; i < BUCKETS; i++) n += counts[i] = buckets.get(i);
+        if(n == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long acc = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            acc += counts[i];
+            if(acc >= rank) return i + 1 < BUCKETS ? Math.min(lowerBound(i + 1) - 1, getMax()) : getMax();
+        }
+        return getMax();
+    }
+
+    @Override
+    public long getP50() {
+        return getPercentile(0.5);
+    }
+
+    @Override
+    public long getP99() {
+        return getPercentile(0.99);
+    }
+
+    @Override
+    public long getP999() {
+        return getPercentile(0.999);
+    }
+
+    /**
+     * Pone a cero el histograma.
+     */
+    @Override
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d p50=%d p99=%d p999=%d max=%d",
+            getCount(), getPercentile(0.5), getPercentile(0.99), getPercentile(0.999), getMax());
+    }
+}
@@ -0,0 +1,16 @@
+package ies.castillodeluna.ad.ejercicios.metrics;
+
+/**
+ * Vista de un {@link LatencyHistogram} que se publica por JMX.
+ * Los tiempos se expresan en nanosegundos.
+ */
+public interface LatencyHistogramMXBean {
+    public long getCount();
+    public long getTotal();
+    public double getMean();
+    public long getMax();
+    public long getP50();
+    public long getP99();
+    public long getP999();
+    public void reset();
+}
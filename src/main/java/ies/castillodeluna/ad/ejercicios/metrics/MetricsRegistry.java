@@ -0,0 +1,46 @@
+package ies.castillodeluna.ad.ejercicios.metrics;
+
+/**
+ * Registro de métricas en el que se apuntan los DAO, las transacciones y el pool
+ * de conexiones. Los nombres siguen el esquema <code>ámbito.entidad.operación</code>
+ * (p.e. "dao.Cliente.get" o "pool.HikariPool-1.wait").
+ * <p>
+ * Los temporizadores y contadores se piden una sola vez, al crear el objeto que los
+ * usa, y se conservan, de modo que registrar una medición no requiere buscarlos ni
+ * crear objetos. Para enviar las métricas a otro sistema basta con implementar esta
+ * interfaz; {@link SimpleMetricsRegistry} las guarda en memoria y las publica por JMX.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Registro que descarta todas las mediciones.
+     */
+    public final static MetricsRegistry NOOP = new MetricsRegistry() {
+        private final Timer timer = nanos -> {};
+        private final Counter counter = n -> {};
+
+        @Override
+        public Timer timer(String name) {
+            return timer;
+        }
+
+        @Override
+        public Counter counter(String name) {
+            return counter;
+        }
+    };
+
+    /**
+     * Obtiene un temporizador. Si ya existe, se devuelve el existente.
+     * @param name El nombre de la métrica.
+     * @return El temporizador.
+     */
+    public Timer timer(String name);
+
+    /**
+     * Obtiene un contador. Si ya existe, se devuelve el existente.
+     * @param name El nombre de la métrica.
+     * @return El contador.
+     */
+    public Counter counter(String name);
+}
@@ -0,0 +1,62 @@
+package ies.castillodeluna.ad.ejercicios.metrics;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Traslada a un {@link MetricsRegistry} las mediciones de un pool de HikariCP
+ * (véase {@link HikariConfig#setMetricsTrackerFactory(MetricsTrackerFactory)}):
+ * <ul>
+ *  <li>pool.&lt;nombre&gt;.wait: tiempo que se espera para obtener una conexión.
+ *  <li>pool.&lt;nombre&gt;.usage: tiempo durante el que se retiene la conexión.
+ *  <li>pool.&lt;nombre&gt;.create: tiempo que se tarda en abrir una conexión física.
+ *  <li>pool.&lt;nombre&gt;.timeouts: veces que se agota la espera sin obtener conexión.
+ * </ul>
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+
+    private final MetricsRegistry registry;
+
+    /**
+     * Constructor de la clase.
+     * @param registry El registro en que se apuntan las mediciones.
+     */
+    public PoolMetrics(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        String prefix = "pool." + poolName + ".";
+        Timer wait = registry.timer(prefix + "wait");
+        Timer usage = registry.timer(prefix + "usage");
+        Timer create = registry.timer(prefix + "create");
+        Counter timeouts = registry.counter(prefix + "timeouts");
+
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                wait.record(elapsedAcquiredNanos);
+            }
+
+            // HikariCP sólo da en milisegundos los tiempos de uso y de creación.
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usage.record(elapsedBorrowedMillis * 1_000_000);
+            }
+
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                create.record(connectionCreatedMillis * 1_000_000);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+}
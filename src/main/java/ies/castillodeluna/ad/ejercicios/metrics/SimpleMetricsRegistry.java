@@ -0,0 +1,129 @@
+package ies.castillodeluna.ad.ejercicios.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Registro de métricas que las guarda en memoria: los temporizadores son
+ * histogramas de latencias ({@link LatencyHistogram}) y los contadores, {@link LongAdder}.
+ * Opcionalmente, cada métrica se publica por JMX al crearla, con el nombre
+ * <code>ies.castillodeluna.ad.ejercicios:type=Timer,name=...</code>
+ * (o <code>type=Counter</code>), de modo que puede consultarse con jconsole o VisualVM.
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+    /**
+     * Dominio de los nombres JMX.
+     */
+    public final static String DOMAIN = "ies.castillodeluna.ad.ejercicios";
+
+    /**
+     * Vista del contador que se publica por JMX.
+     */
+    public static interface CounterMXBean {
+        long getCount();
+        void reset();
+    }
+
+    private static class SimpleCounter implements Counter, CounterMXBean {
+        private final LongAdder value = new LongAdder();
+
+        @Override
+        public void add(long n) {
+            value.add(n);
+        }
+
+        @Override
+        public long getCount() {
+            return value.sum();
+        }
+
+        @Override
+        public void reset() {
+            value.reset();
+        }
+    }
+
+    private final Map<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private final Map<String, SimpleCounter> counters = new ConcurrentHashMap<>();
+    private final boolean jmx;
+
+    /**
+     * Constructor del registro, que publica las métricas por JMX.
+     */
+    public SimpleMetricsRegistry() {
+        this(true);
+    }
+
+    /**
+     * Constructor del registro.
+     * @param jmx Si se publican las métricas por JMX.
+     */
+    public SimpleMetricsRegistry(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    @Override
+    public LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, n -> publicar(new LatencyHistogram(), LatencyHistogramMXBean.class, "Timer", n));
+    }
+
+    @Override
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> publicar(new SimpleCounter(), CounterMXBean.class, "Counter", n));
+    }
+
+    /**
+     * Devuelve los histogramas registrados.
+     * @return Un mapa (de sólo lectura) con los histogramas indexados por su nombre.
+     */
+    public Map<String, LatencyHistogram> getTimers() {
+        return Collections.unmodifiableMap(timers);
+    }
+
+    /**
+     * Devuelve el valor actual de un contador.
+     * @param name El nombre de la métrica.
+     * @return El valor del contador (0, si no existe).
+     */
+    public long getCount(String name) {
+        SimpleCounter counter = counters.get(name);
+        return counter == null ? 0 : counter.getCount();
+    }
+
+    /**
+     * Devuelve el valor actual de los contadores.
+     * @return Un mapa con los valores indexados por el nombre del contador.
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new ConcurrentHashMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.getCount()));
+        return values;
+    }
+
+    /**
+     * Publica una métrica por JMX, si así se ha pedido. Si no puede
+     * publicarse (p.e. porque otro registro usa el mismo nombre), la
+     * métrica sigue funcionando, aunque sólo puede consultarse en memoria.
+     */
+    private <M extends I, I> M publicar(M metric, Class<I> mxbean, String type, String name) {
+        if(!jmx) return metric;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName oname = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            if(!server.isRegistered(oname)) server.registerMBean(new StandardMBean(metric, mxbean, true), oname);
+        }
+        catch(JMException err) {
+            // La métrica no se publica, pero se sigue registrando.
+        }
+        return metric;
+    }
+}
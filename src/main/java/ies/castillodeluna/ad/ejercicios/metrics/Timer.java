@@ -0,0 +1,13 @@
+package ies.castillodeluna.ad.ejercicios.metrics;
+
+/**
+ * Registra la duración de una operación.
+ */
+public interface Timer {
+
+    /**
+     * Registra una medición.
+     * @param nanos La duración de la operación en nanosegundos.
+     */
+    public void record(long nanos);
+}
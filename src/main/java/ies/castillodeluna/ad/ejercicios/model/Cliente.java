@@ -1,6 +1,7 @@
 package ies.castillodeluna.ad.ejercicios.model;
 
 import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.annotations.Fk;
 
 /**
  * Clase que representa a un Cliente en el sistema.
@@ -13,6 +14,8 @@ public class Cliente implements Entity {
     private String email;        // Correo electrónico del cliente
     private String telefono;      // Número de teléfono del cliente (ahora es String)
     private int id_zona;      // ID de la zona de envío (relación FK)
+    @Fk
+    private ZonaEnvio zona;   // Zona de envío a la que hace referencia id_zona
 
     /**
      * Constructor vacío de Cliente.
@@ -117,6 +120,22 @@ public class Cliente implements Entity {
         this.id_zona = id_zona;
     }
 
+    /**
+     * Obtiene la zona de envío del cliente.
+     * @return La zona de envío o null, si aún no se ha obtenido.
+     */
+    public ZonaEnvio getZona() {
+        return zona;
+    }
+
+    /**
+     * Establece la zona de envío del cliente.
+     * @param zona Zona de envío
+     */
+    public void setZona(ZonaEnvio zona) {
+        this.zona = zona;
+    }
+
     /**
      * Representa a un cliente como una cadena de texto.
      * @return Información detallada del cliente
@@ -0,0 +1,12 @@
+package ies.castillodeluna.ad.ejercicios.model;
+
+/**
+ * Resumen de los pedidos de un cliente o de una zona de envío,
+ * calculado por la base de datos.
+ * @param id El identificador del cliente o de la zona.
+ * @param pedidos El número de pedidos.
+ * @param total La suma de los importes.
+ * @param media El importe medio (0, si no hay pedidos).
+ */
+public record ResumenPedidos(int id, long pedidos, double total, double media) {
+}
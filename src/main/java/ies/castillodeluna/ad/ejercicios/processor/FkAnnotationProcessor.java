@@ -1,27 +1,61 @@
 package ies.castillodeluna.ad.ejercicios.processor;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
-import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
 
 import ies.castillodeluna.ad.ejercicios.annotations.Fk;
 
 /**
  * Verifica durante la compilación que todos los campos definidos
- * como clave foránea tienen su getter correspondiente.
+ * como clave foránea tienen su getter y su setter correspondientes y
+ * genera, para cada entidad, el código que evita usar reflexión en tiempo
+ * de ejecución:
+ * <ul>
+ *  <li>{@code <Entidad>Lazy}: subclase que carga perezosamente las claves
+ *      foráneas (sólo para las entidades con atributos {@code @Fk}).
+ *      {@link ies.castillodeluna.ad.ejercicios.FkLazyLoader} la usa, cuando
+ *      existe, en lugar de generar un envoltorio con javassist.
+ *  <li>{@code <Entidad>Mapper}: {@link ies.castillodeluna.ad.ejercicios.SqlUtils.RowMapper}
+ *      que transforma las filas de un {@code SELECT *} de la tabla en entidades
+ *      leyendo las columnas por su posición. Los atributos (salvo los {@code @Fk})
+ *      deben declararse en el mismo orden que las columnas de la tabla.
+ * </ul>
+ * Se procesan todas las clases que implementan Entity, tengan o no claves
+ * foráneas, por lo que el procesador se registra para cualquier anotación.
  */
-@SupportedAnnotationTypes("edu.acceso.sqlutils.annotations.Fk")
-@SupportedSourceVersion(SourceVersion.RELEASE_17)
+@SupportedAnnotationTypes("*")
 public class FkAnnotationProcessor extends AbstractProcessor {
 
+    private final static String ENTITY = "ies.castillodeluna.ad.ejercicios.Entity";
+
+    /** Clases ya generadas, para no procesarlas en la siguiente ronda. */
+    private final Set<String> generadas = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
         // Para todas las claves foráneas.
@@ -31,24 +65,344 @@ public class FkAnnotationProcessor extends AbstractProcessor {
                 continue;
             }
 
-            // Verifica que el campo tiene un getter
+            // Verifica que el campo tiene un getter y un setter
             TypeElement classElement = (TypeElement) element.getEnclosingElement();
             String fieldName = element.getSimpleName().toString();
-            String getterName = "get" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+            String getterName = accessor("get", fieldName);
+            String setterName = accessor("set", fieldName);
 
-            boolean hasGetter = classElement.getEnclosedElements().stream()
-                .filter(e -> e.getKind() == ElementKind.METHOD)
-                .map(Element::getSimpleName)
-                .anyMatch(name -> name.contentEquals(getterName));
-
-            if (!hasGetter) {
+            if (findMethod(classElement, getterName, 0) == null) {
                 error(element, String.format("El campo '%s' anotado con @Fk debe tener un getter llamado '%s'.", fieldName, getterName));
             }
+            if (findMethod(classElement, setterName, 1) == null) {
+                error(element, String.format("El campo '%s' anotado con @Fk debe tener un setter llamado '%s'.", fieldName, setterName));
+            }
+            if (!isEntity(element.asType())) {
+                error(element, String.format("El campo '%s' anotado con @Fk debe ser de un tipo que implemente Entity.", fieldName));
+            }
+        }
+
+        // Para todas las entidades.
+        TypeElement entity = processingEnv.getElementUtils().getTypeElement(ENTITY);
+        if(entity == null) return false;
+
+        for(TypeElement type: ElementFilter.typesIn(roundEnv.getRootElements())) {
+            String name = type.getQualifiedName().toString();
+            if(generadas.contains(name)) continue;
+            if(type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) continue;
+            if(!isEntity(type.asType())) continue;
+
+            List<VariableElement> fks = new ArrayList<>();
+            List<VariableElement> columnas = new ArrayList<>();
+            for(VariableElement field: ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                Set<Modifier> mods = field.getModifiers();
+                if(mods.contains(Modifier.STATIC) || mods.contains(Modifier.TRANSIENT)) continue;
+                if(field.getAnnotation(Fk.class) != null) fks.add(field);
+                else columnas.add(field);
+            }
+
+            try {
+                if(!fks.isEmpty()) generateLazy(type, fks);
+                generateMapper(type, columnas);
+            }
+            catch(IOException err) {
+                error(type, String.format("No puede generarse el código para '%s': %s", name, err.getMessage()));
+            }
         }
-        return true;
+
+        // No reclamamos ninguna anotación, para que otros procesadores puedan tratarlas.
+        return false;
+    }
+
+    /**
+     * Genera la subclase que carga perezosamente las claves foráneas.
+     * @param type La entidad.
+     * @param fks Los atributos que son clave foránea.
+     * @throws IOException Cuando no puede escribirse el código fuente.
+     */
+    private void generateLazy(TypeElement type, List<VariableElement> fks) throws IOException {
+        if(!hasNoArgsConstructor(type) || type.getModifiers().contains(Modifier.FINAL)) {
+            error(type, String.format("'%s' debe poder extenderse y tener un constructor sin parámetros.", type.getSimpleName()));
+            return;
+        }
+
+        String pkg = packageOf(type);
+        String entidad = type.getSimpleName().toString();
+        String clase = entidad + "Lazy";
+
+        try(PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualify(pkg, clase), type).openWriter())) {
+            if(!pkg.isEmpty()) out.printf("package %s;%n%n", pkg);
+            out.println("import ies.castillodeluna.ad.ejercicios.Entity;");
+            out.println("import ies.castillodeluna.ad.ejercicios.LazyEntity;");
+            out.println("import ies.castillodeluna.ad.ejercicios.DAO.Crud;");
+            out.println("import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;");
+            out.println("import ies.castillodeluna.ad.ejercicios.errors.DataAccessRuntimeException;");
+            out.println("import ies.castillodeluna.ad.ejercicios.jfr.FkLazyLoadEvent;");
+            out.println();
+            out.println("/**");
+            out.printf(" * Versión de %s que obtiene sus claves foráneas la primera vez que se consultan.%n", entidad);
+            out.printf(" * Generada por %s: no debe editarse.%n", FkAnnotationProcessor.class.getSimpleName());
+            out.println(" */");
+            out.printf("public class %s extends %s implements LazyEntity {%n", clase, entidad);
+
+            out.println();
+            out.println("    /**");
+            out.printf("     * Crea objetos %s sin reflexión (véase FkLazyLoader).%n", clase);
+            out.println("     */");
+            out.println("    public static class Factory implements LazyEntity.Factory {");
+            out.println("        @Override");
+            out.printf("        public %s create() {%n", clase);
+            out.printf("            return new %s();%n", clase);
+            out.println("        }");
+            out.println("    }");
+
+            for(VariableElement fk: fks) {
+                String field = fk.getSimpleName().toString();
+                out.printf("%n    private Integer %sFk;%n", field);
+                out.printf("    private Crud<%s> %sDao;%n", fk.asType(), field);
+            }
+
+            out.println();
+            out.println("    @Override");
+            out.println("    @SuppressWarnings(\"unchecked\")");
+            out.println("    public boolean setFk(String name, Integer fkid, Crud<? extends Entity> dao) {");
+            out.println("        switch(name) {");
+            for(VariableElement fk: fks) {
+                String field = fk.getSimpleName().toString();
+                out.printf("            case \"%s\": %s(fkid, (Crud<%s>) dao); return true;%n", field, accessor("set", field) + "Fk", fk.asType());
+            }
+            out.println("            default: return false;");
+            out.println("        }");
+            out.println("    }");
+
+            for(VariableElement fk: fks) {
+                String field = fk.getSimpleName().toString();
+                String ref = fk.asType().toString();
+                String getter = accessor("get", field);
+                String refName = processingEnv.getTypeUtils().asElement(fk.asType()).getSimpleName().toString();
+
+                out.println();
+                out.println("    /**");
+                out.printf("     * Define la clave foránea '%s'.%n", field);
+                out.println("     * @param fkid El valor del identificador que es clave foránea.");
+                out.println("     * @param dao El objeto DAO que permite consultar el objeto con ese identificador.");
+                out.println("     * @return El propio objeto.");
+                out.println("     */");
+                out.printf("    public %s %s(Integer fkid, Crud<%s> dao) {%n", clase, accessor("set", field) + "Fk", ref);
+                out.printf("        %sFk = fkid;%n", field);
+                out.printf("        %sDao = dao;%n", field);
+                out.println("        return this;");
+                out.println("    }");
+
+                out.println();
+                out.println("    @Override");
+                out.printf("    public %s %s() {%n", ref, getter);
+                out.printf("        %s value = super.%s();%n", ref, getter);
+                out.printf("        if(value == null && %sFk != null) {%n", field);
+                out.println("            FkLazyLoadEvent event = new FkLazyLoadEvent();");
+                out.println("            event.begin();");
+                out.println("            try {");
+                out.printf("                value = %sDao.get(%sFk).orElseThrow(() -> new DataAccessRuntimeException(%n", field, field);
+                out.printf("                    String.format(\"Violación de integridad referencial: %%s('%%d') referido en %%s no existe\", \"%s\", %sFk, \"%s\")));%n",
+                    refName, field, entidad);
+                out.println("            }");
+                out.println("            catch(DataAccessException err) {");
+                out.println("                throw new DataAccessRuntimeException(err);");
+                out.println("            }");
+                out.println("            if(event.shouldCommit()) {");
+                out.printf("                event.entity = \"%s\";%n", entidad);
+                out.printf("                event.field = \"%s\";%n", field);
+                out.printf("                event.fkId = %sFk;%n", field);
+                out.println("                event.commit();");
+                out.println("            }");
+                out.printf("            %s(value);%n", accessor("set", field));
+                out.println("        }");
+                out.println("        return value;");
+                out.println("    }");
+            }
+            out.println("}");
+        }
+        generadas.add(qualify(pkg, clase));
+    }
+
+    /**
+     * Genera el RowMapper que transforma las filas de la tabla en entidades.
+     * Si existe un constructor cuyos parámetros coinciden con las columnas se usa
+     * ese constructor; en caso contrario, el constructor sin parámetros y los setters.
+     * @param type La entidad.
+     * @param columnas Los atributos que se corresponden con columnas, en orden.
+     * @throws IOException Cuando no puede escribirse el código fuente.
+     */
+    private void generateMapper(TypeElement type, List<VariableElement> columnas) throws IOException {
+        List<String> lecturas = new ArrayList<>();
+        for(int i = 0; i < columnas.size(); i++) {
+            String lectura = readColumn(columnas.get(i).asType(), i + 1);
+            if(lectura == null) {
+                warning(columnas.get(i), String.format("No se genera el mapeador de '%s': tipo no soportado.", type.getSimpleName()));
+                return;
+            }
+            lecturas.add(lectura);
+        }
+
+        boolean porConstructor = hasConstructor(type, columnas);
+        if(!porConstructor) {
+            if(!hasNoArgsConstructor(type)) {
+                warning(type, String.format("No se genera el mapeador de '%s': no hay constructor adecuado.", type.getSimpleName()));
+                return;
+            }
+            for(VariableElement columna: columnas) {
+                if(findMethod(type, accessor("set", columna.getSimpleName().toString()), 1) == null) {
+                    warning(columna, String.format("No se genera el mapeador de '%s': falta el setter de '%s'.", type.getSimpleName(), columna.getSimpleName()));
+                    return;
+                }
+            }
+        }
+
+        String pkg = packageOf(type);
+        String entidad = type.getSimpleName().toString();
+        String clase = entidad + "Mapper";
+
+        try(PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualify(pkg, clase), type).openWriter())) {
+            if(!pkg.isEmpty()) out.printf("package %s;%n%n", pkg);
+            out.println("import java.sql.ResultSet;");
+            out.println("import java.sql.SQLException;");
+            out.println();
+            out.println("import ies.castillodeluna.ad.ejercicios.SqlUtils.CheckedFunction;");
+            out.println("import ies.castillodeluna.ad.ejercicios.SqlUtils.RowMapper;");
+            out.println();
+            out.println("/**");
+            out.printf(" * Transforma las filas de un SELECT * de la tabla en objetos %s leyendo las columnas por posición.%n", entidad);
+            out.printf(" * Generada por %s: no debe editarse.%n", FkAnnotationProcessor.class.getSimpleName());
+            out.println(" */");
+            out.printf("public final class %s implements RowMapper<%s> {%n%n", clase, entidad);
+            out.printf("    public final static %s INSTANCE = new %s();%n%n", clase, clase);
+            out.printf("    private final static int COLUMNAS = %d;%n%n", columnas.size());
+            out.printf("    private %s() {%n    }%n%n", clase);
+            out.println("    /**");
+            out.println("     * Comprueba, una vez por ResultSet, que tiene tantas columnas como la tabla.");
+            out.println("     */");
+            out.println("    @Override");
+            out.printf("    public CheckedFunction<ResultSet, %s> bind(ResultSet rs) throws SQLException {%n", entidad);
+            out.println("        int n = rs.getMetaData().getColumnCount();");
+            out.println("        if(n != COLUMNAS) {");
+            out.printf("            throw new SQLException(String.format(\"%s: se esperaban %%d columnas y hay %%d\", COLUMNAS, n));%n", entidad);
+            out.println("        }");
+            out.printf("        return %s::read;%n", clase);
+            out.println("    }");
+            out.println();
+            out.printf("    private static %s read(ResultSet rs) throws SQLException {%n", entidad);
+            if(porConstructor) {
+                out.printf("        return new %s(%n", entidad);
+                for(int i = 0; i < lecturas.size(); i++) {
+                    out.printf("            %s%s%n", lecturas.get(i), i < lecturas.size() - 1 ? "," : "");
+                }
+                out.println("        );");
+            }
+            else {
+                out.printf("        %s obj = new %s();%n", entidad, entidad);
+                for(int i = 0; i < lecturas.size(); i++) {
+                    out.printf("        obj.%s(%s);%n", accessor("set", columnas.get(i).getSimpleName().toString()), lecturas.get(i));
+                }
+                out.println("        return obj;");
+            }
+            out.println("    }");
+            out.println("}");
+        }
+        generadas.add(qualify(pkg, clase));
+    }
+
+    /**
+     * Genera la expresión que lee una columna del tipo indicado.
+     * @param type El tipo del atributo.
+     * @param index La posición de la columna.
+     * @return La expresión o null, si el tipo no está soportado.
+     */
+    private String readColumn(TypeMirror type, int index) {
+        switch(type.getKind()) {
+            case INT: return String.format("rs.getInt(%d)", index);
+            case LONG: return String.format("rs.getLong(%d)", index);
+            case DOUBLE: return String.format("rs.getDouble(%d)", index);
+            case FLOAT: return String.format("rs.getFloat(%d)", index);
+            case SHORT: return String.format("rs.getShort(%d)", index);
+            case BYTE: return String.format("rs.getByte(%d)", index);
+            case BOOLEAN: return String.format("rs.getBoolean(%d)", index);
+            case DECLARED: break;
+            default: return null;
+        }
+
+        switch(processingEnv.getTypeUtils().erasure(type).toString()) {
+            case "java.lang.String": return String.format("rs.getString(%d)", index);
+            case "java.util.Date":
+            case "java.sql.Date": return String.format("rs.getDate(%d)", index);
+            case "java.sql.Timestamp": return String.format("rs.getTimestamp(%d)", index);
+            case "java.math.BigDecimal": return String.format("rs.getBigDecimal(%d)", index);
+            case "java.lang.Integer":
+            case "java.lang.Long":
+            case "java.lang.Double":
+            case "java.lang.Boolean":
+            case "java.time.LocalDate":
+            case "java.time.LocalDateTime": return String.format("rs.getObject(%d, %s.class)", index, type);
+            default: return null;
+        }
+    }
+
+    /**
+     * Comprueba si un tipo implementa Entity.
+     */
+    private boolean isEntity(TypeMirror type) {
+        TypeElement entity = processingEnv.getElementUtils().getTypeElement(ENTITY);
+        return entity != null && processingEnv.getTypeUtils().isAssignable(type, entity.asType());
+    }
+
+    /**
+     * Comprueba si la clase tiene un constructor accesible cuyos parámetros son
+     * exactamente los tipos de los atributos indicados.
+     */
+    private boolean hasConstructor(TypeElement type, List<VariableElement> fields) {
+        Types types = processingEnv.getTypeUtils();
+        for(ExecutableElement ctor: ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if(ctor.getModifiers().contains(Modifier.PRIVATE)) continue;
+            List<? extends VariableElement> params = ctor.getParameters();
+            if(params.size() != fields.size()) continue;
+
+            boolean coincide = true;
+            for(int i = 0; coincide && i < params.size(); i++) {
+                coincide = types.isSameType(params.get(i).asType(), fields.get(i).asType());
+            }
+            if(coincide) return true;
+        }
+        return false;
+    }
+
+    private boolean hasNoArgsConstructor(TypeElement type) {
+        return ElementFilter.constructorsIn(type.getEnclosedElements()).stream()
+            .anyMatch(c -> c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE));
+    }
+
+    private ExecutableElement findMethod(TypeElement type, String name, int params) {
+        return ElementFilter.methodsIn(type.getEnclosedElements()).stream()
+            .filter(m -> m.getSimpleName().contentEquals(name) && m.getParameters().size() == params)
+            .findFirst().orElse(null);
+    }
+
+    private static String accessor(String prefix, String fieldName) {
+        return prefix + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+    }
+
+    private String packageOf(TypeElement type) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+    }
+
+    private static String qualify(String pkg, String clase) {
+        return pkg.isEmpty() ? clase : pkg + "." + clase;
     }
 
     private void error(Element e, String msg) {
         processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, e);
     }
-}
\ No newline at end of file
+
+    private void warning(Element e, String msg) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, msg, e);
+    }
+}
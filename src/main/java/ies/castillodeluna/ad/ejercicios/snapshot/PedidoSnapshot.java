@@ -0,0 +1,421 @@
+package ies.castillodeluna.ad.ejercicios.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.model.ResumenPedidos;
+
+/**
+ * Instantánea columnar de la tabla Pedidos en un fichero que se lee proyectado en
+ * memoria. Cada pedido se guarda como cuatro valores de ancho fijo (identificador,
+ * cliente, fecha en días desde la época e importe), por columnas, de modo que los
+ * recorridos, filtros y sumas trabajan directamente con tipos primitivos, sin crear
+ * ningún objeto por pedido y leyendo sólo las columnas que necesitan:
+ * <pre>
+ *     PedidoSnapshot.refresh(conn, fichero);
+ *     PedidoSnapshot snapshot = PedidoSnapshot.open(fichero);
+ *     double total = snapshot.sumImporte(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31));
+ * </pre>
+ * El fichero es una cabecera seguida de bloques de, como mucho, {@link #BLOCK_ROWS}
+ * pedidos ordenados por identificador. Al actualizarlo ({@link #refresh(Connection, Path)})
+ * sólo se añaden bloques con los pedidos cuyo identificador es mayor que el último
+ * exportado, así que no refleja las modificaciones ni los borrados de los pedidos ya
+ * exportados: para ello hay que regenerarlo ({@link #write(Connection, Path)}).
+ * <p>
+ * Un objeto de esta clase ve el fichero tal como estaba al abrirlo. Las proyecciones
+ * se liberan cuando el objeto deja de usarse.
+ */
+public class PedidoSnapshot {
+
+    /**
+     * Número máximo de pedidos de cada bloque.
+     */
+    public final static int BLOCK_ROWS = 262_144;
+
+    // "PEDSNAP1"
+    private final static long MAGIC = 0x50454453_4E415031L;
+    private final static int VERSION = 1;
+
+    // Cabecera: magic (8), versión (4), bloques (4), pedidos (8), último id (8), fin de los datos (8).
+    private final static int HEADER = 64;
+    // Cabecera de cada bloque: pedidos (4), último id (4) y relleno hasta 16 para alinear los importes.
+    private final static int BLOCK_HEADER = 16;
+    // Bytes por pedido: importe (8), id (4), cliente (4) y fecha (4).
+    private final static int ROW_BYTES = 20;
+
+    private final static String query = "SELECT id_pedido, id_cliente, fecha, importe_total FROM Pedidos WHERE id_pedido > ? ORDER BY id_pedido";
+
+    /**
+     * Recibe los valores de un pedido.
+     */
+    @FunctionalInterface
+    public static interface PedidoConsumer {
+        void accept(int id, int idCliente, int fecha, double importe);
+    }
+
+    /**
+     * Condición sobre los valores de un pedido.
+     */
+    @FunctionalInterface
+    public static interface PedidoPredicate {
+        boolean test(int id, int idCliente, int fecha, double importe);
+    }
+
+    /**
+     * Bloque de pedidos, con una vista de cada columna.
+     */
+    private static record Block(int rows, IntBuffer ids, IntBuffer clientes, IntBuffer fechas, DoubleBuffer importes) {}
+
+    /**
+     * Datos de la cabecera del fichero.
+     */
+    private static record Header(int blocks, long rows, int maxId, long end) {
+        private final static Header EMPTY = new Header(0, 0, 0, HEADER);
+
+        public static Header read(FileChannel ch) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while(buf.hasRemaining()) {
+                if(ch.read(buf, buf.position()) < 0) throw new IOException("El fichero no es una instantánea de pedidos");
+            }
+            if(buf.getLong(0) != MAGIC) throw new IOException("El fichero no es una instantánea de pedidos");
+            if(buf.getInt(8) != VERSION) throw new IOException(String.format("Versión de instantánea no admitida: %d", buf.getInt(8)));
+            return new Header(buf.getInt(12), buf.getLong(16), (int) buf.getLong(24), buf.getLong(32));
+        }
+
+        public void write(FileChannel ch) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putLong(0, MAGIC).putInt(8, VERSION).putInt(12, blocks).putLong(16, rows).putLong(24, maxId).putLong(32, end);
+            while(buf.hasRemaining()) ch.write(buf, buf.position());
+        }
+    }
+
+    private final List<Block> blocks;
+    private final long rows;
+    private final int maxId;
+
+    private PedidoSnapshot(List<Block> blocks, long rows, int maxId) {
+        this.blocks = blocks;
+        this.rows = rows;
+        this.maxId = maxId;
+    }
+
+    /**
+     * Abre una instantánea.
+     * @param fichero La ruta del fichero.
+     * @return La instantánea.
+     * @throws DataAccessException Cuando no puede leerse o no es una instantánea.
+     */
+    public static PedidoSnapshot open(Path fichero) throws DataAccessException {
+        try(FileChannel ch = FileChannel.open(fichero, StandardOpenOption.READ)) {
+            Header header = Header.read(ch);
+            List<Block> blocks = new ArrayList<>(header.blocks());
+            long pos = HEADER;
+            for(int i = 0; i < header.blocks(); i++) {
+                ByteBuffer bh = ByteBuffer.allocate(BLOCK_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                ch.read(bh, pos);
+                int n = bh.getInt(0);
+                long size = blockSize(n);
+                if(n < 0 || n > BLOCK_ROWS || pos + size > header.end()) throw new IOException("La instantánea está dañada");
+
+                // La vista del bloque se conserva aunque se cierre el canal.
+                MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_ONLY, pos, size);
+                int off = BLOCK_HEADER;
+                DoubleBuffer importes = m.slice(off, 8 * n).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                off += 8 * n;
+                IntBuffer ids = m.slice(off, 4 * n).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                off += 4 * n;
+                IntBuffer clientes = m.slice(off, 4 * n).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                off += 4 * n;
+                IntBuffer fechas = m.slice(off, 4 * n).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                blocks.add(new Block(n, ids, clientes, fechas, importes));
+                pos += size;
+            }
+            return new PedidoSnapshot(blocks, header.rows(), header.maxId());
+        }
+        catch(IOException err) {
+            throw new DataAccessException(String.format("No puede abrirse la instantánea %s", fichero), err);
+        }
+    }
+
+    /**
+     * Genera una instantánea completa de los pedidos. El fichero se escribe aparte
+     * y sólo sustituye al anterior cuando está completo.
+     * @param conn La conexión con la base de datos.
+     * @param fichero La ruta del fichero.
+     * @return El número de pedidos exportados.
+     * @throws DataAccessException Cuando se produce un error de acceso o de escritura.
+     */
+    public static long write(Connection conn, Path fichero) throws DataAccessException {
+        Path tmp = fichero.resolveSibling(fichero.getFileName() + ".tmp");
+        try {
+            long n;
+            try(FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                                  StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                n = append(conn, ch, Header.EMPTY);
+            }
+            Files.move(tmp, fichero, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return n;
+        }
+        catch(IOException err) {
+            throw new DataAccessException(String.format("No puede escribirse la instantánea %s", fichero), err);
+        }
+        finally {
+            try {
+                Files.deleteIfExists(tmp);
+            }
+            catch(IOException err) {
+                // Sólo queda un fichero temporal.
+            }
+        }
+    }
+
+    /**
+     * Actualiza una instantánea añadiéndole los pedidos cuyo identificador es mayor
+     * que el último exportado. Si no existe, se genera completa.
+     * @param conn La conexión con la base de datos.
+     * @param fichero La ruta del fichero.
+     * @return El número de pedidos añadidos.
+     * @throws DataAccessException Cuando se produce un error de acceso o de escritura.
+     */
+    public static long refresh(Connection conn, Path fichero) throws DataAccessException {
+        if(!Files.exists(fichero)) return write(conn, fichero);
+        try(FileChannel ch = FileChannel.open(fichero, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return append(conn, ch, Header.read(ch));
+        }
+        catch(IOException err) {
+            throw new DataAccessException(String.format("No puede actualizarse la instantánea %s", fichero), err);
+        }
+    }
+
+    /**
+     * Añade al final de los datos los pedidos posteriores al último exportado. La cabecera
+     * sólo se actualiza cuando los bloques nuevos ya están en el disco, así que, si se
+     * interrumpe, la instantánea queda como estaba.
+     */
+    private static long append(Connection conn, FileChannel ch, Header header) throws IOException, DataAccessException {
+        // Lo que hubiera tras los datos es de una actualización interrumpida.
+        ch.truncate(header.end());
+
+        int[] ids = new int[BLOCK_ROWS];
+        int[] clientes = new int[BLOCK_ROWS];
+        int[] fechas = new int[BLOCK_ROWS];
+        double[] importes = new double[BLOCK_ROWS];
+        ByteBuffer buf = ByteBuffer.allocate((int) blockSize(BLOCK_ROWS)).order(ByteOrder.LITTLE_ENDIAN);
+
+        int blocks = header.blocks();
+        int maxId = header.maxId();
+        long pos = header.end();
+        long added = 0;
+        try(PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setInt(1, header.maxId());
+            ResultSet rs = pstmt.executeQuery();
+            int n = 0;
+            while(rs.next()) {
+                ids[n] = rs.getInt(1);
+                clientes[n] = rs.getInt(2);
+                Date fecha = rs.getDate(3);
+                fechas[n] = fecha == null ? Integer.MIN_VALUE : (int) fecha.toLocalDate().toEpochDay();
+                importes[n] = rs.getDouble(4);
+                if(++n == BLOCK_ROWS) {
+                    maxId = ids[n - 1];
+                    pos = writeBlock(ch, pos, buf, ids, clientes, fechas, importes, n);
+                    blocks++;
+                    added += n;
+                    n = 0;
+                }
+            }
+            if(n > 0) {
+                maxId = ids[n - 1];
+                pos = writeBlock(ch, pos, buf, ids, clientes, fechas, importes, n);
+                blocks++;
+                added += n;
+            }
+            if(added == 0 && header.blocks() > 0) return 0;
+
+            ch.force(false);
+            new Header(blocks, header.rows() + added, maxId, pos).write(ch);
+            ch.force(true);
+            return added;
+        }
+        catch(SQLException err) {
+            throw new DataAccessException(err);
+        }
+    }
+
+    private static long writeBlock(FileChannel ch, long pos, ByteBuffer buf, int[] ids, int[] clientes, int[] fechas, double[] importes, int n) throws IOException {
+        buf.clear();
+        buf.putInt(n).putInt(ids[n - 1]).putLong(0);
+        buf.asDoubleBuffer().put(importes, 0, n);
+        buf.position(buf.position() + 8 * n);
+        for(int[] columna: new int[][] {ids, clientes, fechas}) {
+            buf.asIntBuffer().put(columna, 0, n);
+            buf.position(buf.position() + 4 * n);
+        }
+        while(buf.position() % 8 != 0) buf.put((byte) 0);
+        buf.flip();
+        while(buf.hasRemaining()) pos += ch.write(buf, pos);
+        return pos;
+    }
+
+    private static long blockSize(int rows) {
+        return (BLOCK_HEADER + (long) ROW_BYTES * rows + 7) & ~7L;
+    }
+
+    /**
+     * Devuelve el número de pedidos de la instantánea.
+     * @return El número de pedidos.
+     */
+    public long size() {
+        return rows;
+    }
+
+    /**
+     * Devuelve el último identificador exportado, a partir del cual se actualiza la instantánea.
+     * @return El identificador (0, si está vacía).
+     */
+    public int getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * Convierte una fecha de la instantánea.
+     * @param fecha La fecha en días desde la época.
+     * @return La fecha.
+     */
+    public static LocalDate toLocalDate(int fecha) {
+        return LocalDate.ofEpochDay(fecha);
+    }
+
+    /**
+     * Recorre todos los pedidos en orden de identificador.
+     * @param action La operación que recibe cada pedido.
+     */
+    public void forEach(PedidoConsumer action) {
+        for(Block b: blocks) {
+            IntBuffer ids = b.ids(), clientes = b.clientes(), fechas = b.fechas();
+            DoubleBuffer importes = b.importes();
+            for(int i = 0; i < b.rows(); i++) action.accept(ids.get(i), clientes.get(i), fechas.get(i), importes.get(i));
+        }
+    }
+
+    /**
+     * Recorre los pedidos que cumplen una condición.
+     * @param filter La condición.
+     * @param action La operación que recibe cada pedido.
+     */
+    public void forEach(PedidoPredicate filter, PedidoConsumer action) {
+        forEach((id, idCliente, fecha, importe) -> {
+            if(filter.test(id, idCliente, fecha, importe)) action.accept(id, idCliente, fecha, importe);
+        });
+    }
+
+    /**
+     * Cuenta los pedidos que cumplen una condición.
+     * @param filter La condición.
+     * @return El número de pedidos.
+     */
+    public long count(PedidoPredicate filter) {
+        long n = 0;
+        for(Block b: blocks) {
+            IntBuffer ids = b.ids(), clientes = b.clientes(), fechas = b.fechas();
+            DoubleBuffer importes = b.importes();
+            for(int i = 0; i < b.rows(); i++) {
+                if(filter.test(ids.get(i), clientes.get(i), fechas.get(i), importes.get(i))) n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Suma los importes de todos los pedidos. Sólo se lee la columna de importes.
+     * @return La suma.
+     */
+    public double sumImporte() {
+        double total = 0;
+        for(Block b: blocks) {
+            DoubleBuffer importes = b.importes();
+            for(int i = 0; i < b.rows(); i++) total += importes.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Suma los importes de los pedidos que cumplen una condición.
+     * @param filter La condición.
+     * @return La suma.
+     */
+    public double sumImporte(PedidoPredicate filter) {
+        double total = 0;
+        for(Block b: blocks) {
+            IntBuffer ids = b.ids(), clientes = b.clientes(), fechas = b.fechas();
+            DoubleBuffer importes = b.importes();
+            for(int i = 0; i < b.rows(); i++) {
+                double importe = importes.get(i);
+                if(filter.test(ids.get(i), clientes.get(i), fechas.get(i), importe)) total += importe;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Suma los importes de los pedidos de un periodo. Sólo se leen las columnas
+     * de fechas e importes.
+     * @param desde El primer día del periodo.
+     * @param hasta El último día del periodo.
+     * @return La suma.
+     */
+    public double sumImporte(LocalDate desde, LocalDate hasta) {
+        int d = (int) desde.toEpochDay(), h = (int) hasta.toEpochDay();
+        double total = 0;
+        for(Block b: blocks) {
+            IntBuffer fechas = b.fechas();
+            DoubleBuffer importes = b.importes();
+            for(int i = 0; i < b.rows(); i++) {
+                int fecha = fechas.get(i);
+                if(fecha >= d && fecha <= h) total += importes.get(i);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Calcula el número de pedidos de un cliente, su importe total y su importe medio,
+     * como {@link ies.castillodeluna.ad.ejercicios.DAO.PedidoDao#getResumenCliente(int)}.
+     * Sólo se leen las columnas de clientes e importes.
+     * @param idCliente El identificador del cliente.
+     * @return El resumen de los pedidos del cliente.
+     */
+    public ResumenPedidos getResumenCliente(int idCliente) {
+        long n = 0;
+        double total = 0;
+        for(Block b: blocks) {
+            IntBuffer clientes = b.clientes();
+            DoubleBuffer importes = b.importes();
+            for(int i = 0; i < b.rows(); i++) {
+                if(clientes.get(i) == idCliente) {
+                    n++;
+                    total += importes.get(i);
+                }
+            }
+        }
+        return new ResumenPedidos(idCliente, n, total, n == 0 ? 0 : total / n);
+    }
+}
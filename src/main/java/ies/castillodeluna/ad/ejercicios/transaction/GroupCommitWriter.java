@@ -0,0 +1,232 @@
+package ies.castillodeluna.ad.ejercicios.transaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+
+/**
+ * Escritor único con confirmación agrupada (group commit). SQLite sólo admite un escritor
+ * a la vez, así que, en vez de que cada hilo escriba con su propia conexión y compita por
+ * el bloqueo de la base de datos, las modificaciones se encolan y un único hilo las ejecuta
+ * por grupos: todas las pendientes se ejecutan en una misma transacción, que se confirma
+ * una sola vez, y sólo entonces se completa el futuro de cada una.
+ * <pre>
+ *     GroupCommitWriter writer = new GroupCommitWriter(ds, Duration.ofMillis(1), 1000);
+ *     writer.submit(conn -&gt; new ClienteSqlite(conn).delete(1)).join();
+ * </pre>
+ * Cada modificación se ejecuta dentro de un punto de salvaguarda, de modo que si falla
+ * sólo se deshace ella y no el resto del grupo. Si falla la confirmación, fallan todas.
+ */
+public class GroupCommitWriter implements AutoCloseable {
+
+    /**
+     * Número máximo de modificaciones por grupo por defecto.
+     */
+    public final static int MAX_GROUP = 1000;
+
+    /**
+     * Modificación que se ejecuta con la conexión del escritor.
+     */
+    @FunctionalInterface
+    public static interface Mutation<R> {
+        R run(Connection conn) throws DataAccessException, SQLException;
+    }
+
+    /**
+     * Modificación encolada junto al futuro que la completa.
+     */
+    private static class Tarea<R> {
+        private final Mutation<R> mutation;
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+        private final long llegada = System.nanoTime();
+        private R result;
+        private boolean ok;
+
+        public Tarea(Mutation<R> mutation) {
+            this.mutation = mutation;
+        }
+
+        /**
+         * Ejecuta la modificación dentro de un punto de salvaguarda. Si falla, se deshace
+         * y se completa el futuro con el error; si no, se espera a la confirmación.
+         * @param conn La conexión del escritor.
+         * @throws SQLException Si no puede crearse o deshacerse el punto de salvaguarda.
+         */
+        public void ejecutar(Connection conn) throws SQLException {
+            Savepoint sp = conn.setSavepoint();
+            try {
+                result = mutation.run(conn);
+                conn.releaseSavepoint(sp);
+                ok = true;
+            }
+            catch(DataAccessException | SQLException | RuntimeException err) {
+                conn.rollback(sp);
+                future.completeExceptionally(err instanceof DataAccessException ? err : new DataAccessException(err));
+            }
+        }
+
+        public void completar() {
+            if(ok) future.complete(result);
+        }
+
+        public void fallar(Throwable err) {
+            future.completeExceptionally(err);
+        }
+    }
+
+    private final DataSource ds;
+    private final long maxDelay;
+    private final int maxGroup;
+    private final BlockingQueue<Tarea<?>> cola = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private boolean closed;
+
+    /**
+     * Constructor de la clase. Arranca el hilo escritor.
+     * @param ds La fuente de datos de la que el escritor obtiene su conexión.
+     * @param maxDelay El tiempo máximo que una modificación puede esperar a que se unan
+     *      otras a su grupo. Con cero, el grupo lo forman las que ya estén en cola.
+     * @param maxGroup El número máximo de modificaciones de un grupo.
+     */
+    public GroupCommitWriter(DataSource ds, Duration maxDelay, int maxGroup) {
+        if(maxGroup < 1) throw new IllegalArgumentException("El tamaño del grupo debe ser positivo");
+        this.ds = ds;
+        this.maxDelay = maxDelay.toNanos();
+        this.maxGroup = maxGroup;
+        writer = new Thread(this::escribir, "sqlite-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Encola una modificación.
+     * @param <R> El tipo del resultado de la modificación.
+     * @param mutation La modificación.
+     * @return El futuro que se completa con el resultado una vez confirmado el grupo
+     *      o con un {@link DataAccessException}, si falla.
+     */
+    public synchronized <R> CompletableFuture<R> submit(Mutation<R> mutation) {
+        if(closed) return CompletableFuture.failedFuture(new DataAccessException("El escritor está cerrado"));
+        Tarea<R> tarea = new Tarea<>(mutation);
+        cola.add(tarea);
+        return tarea.future;
+    }
+
+    /**
+     * Bucle del hilo escritor: forma grupos con las modificaciones encoladas y los ejecuta.
+     * Termina al cerrarse el escritor o interrumpirse el hilo y, en cualquier caso, deja
+     * de admitir modificaciones y hace fallar las que aún estén en cola.
+     */
+    private void escribir() {
+        List<Tarea<?>> grupo = new ArrayList<>(maxGroup);
+        boolean interrumpido = false;
+        try {
+            while(!interrumpido) {
+                Tarea<?> primera;
+                try {
+                    primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                }
+                catch(InterruptedException err) {
+                    interrumpido = true;
+                    break;
+                }
+                if(primera == null) {
+                    synchronized(this) {
+                        if(closed && cola.isEmpty()) return;
+                    }
+                    continue;
+                }
+
+                grupo.add(primera);
+                long limite = primera.llegada + maxDelay;
+                while(grupo.size() < maxGroup) {
+                    Tarea<?> tarea = cola.poll();
+                    if(tarea == null) {
+                        long espera = limite - System.nanoTime();
+                        if(espera <= 0) break;
+                        try {
+                            tarea = cola.poll(espera, TimeUnit.NANOSECONDS);
+                        }
+                        catch(InterruptedException err) {
+                            // El grupo ya formado se ejecuta antes de terminar.
+                            interrumpido = true;
+                            break;
+                        }
+                        if(tarea == null) break;
+                    }
+                    grupo.add(tarea);
+                }
+
+                ejecutar(grupo);
+                grupo.clear();
+            }
+        }
+        finally {
+            synchronized(this) {
+                closed = true;
+            }
+            DataAccessException error = new DataAccessException("El escritor se ha detenido");
+            for(Tarea<?> tarea: grupo) tarea.fallar(error);
+            for(Tarea<?> tarea = cola.poll(); tarea != null; tarea = cola.poll()) tarea.fallar(error);
+            if(interrumpido) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ejecuta un grupo de modificaciones en una única transacción. Los futuros se completan
+     * en cuanto se confirma; si algo falla antes, incluso con un Error, fallan todos
+     * y el hilo escritor sigue atendiendo al resto de la cola.
+     * @param grupo Las modificaciones.
+     */
+    private void ejecutar(List<Tarea<?>> grupo) {
+        try(Connection conn = ds.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for(Tarea<?> tarea: grupo) tarea.ejecutar(conn);
+                conn.commit();
+                for(Tarea<?> tarea: grupo) tarea.completar();
+            }
+            catch(Throwable err) {
+                conn.rollback();
+                throw err;
+            }
+            finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        catch(Throwable err) {
+            // Los futuros ya completados (si falla algo tras confirmar) no cambian.
+            DataAccessException error = new DataAccessException("No pudo confirmarse el grupo de modificaciones", err);
+            for(Tarea<?> tarea: grupo) tarea.fallar(error);
+        }
+    }
+
+    /**
+     * Deja de admitir modificaciones y espera a que se ejecuten las pendientes.
+     * Si se interrumpe la espera, se conserva la marca de interrupción y las
+     * pendientes se siguen ejecutando en segundo plano.
+     */
+    @Override
+    public void close() {
+        synchronized(this) {
+            closed = true;
+        }
+        try {
+            writer.join();
+        }
+        catch(InterruptedException err) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
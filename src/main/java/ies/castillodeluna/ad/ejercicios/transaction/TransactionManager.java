@@ -3,6 +3,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 
 import ies.castillodeluna.ad.ejercicios.errors.DataAccessException;
+import ies.castillodeluna.ad.ejercicios.jfr.TransactionEvent;
 
 /**
  * Modela un gestor de transacciones que permite definir transacciones
@@ -26,6 +27,7 @@ public class TransactionManager implements AutoCloseable {
     private Connection conn;
     private boolean committed;
     private boolean originalAutoCommit;
+    private final TransactionEvent event = new TransactionEvent();
 
     /**
      * Constructor de la clase.
@@ -37,6 +39,7 @@ public class TransactionManager implements AutoCloseable {
         setConn(conn);
         originalAutoCommit = conn.getAutoCommit();
         conn.setAutoCommit(false);
+        event.begin();
     }
 
     /**
@@ -78,8 +81,27 @@ public class TransactionManager implements AutoCloseable {
      */
     @Override
     public void close() throws SQLException {
-        if(!committed && !isNested()) conn.rollback();
-        conn.setAutoCommit(originalAutoCommit);
+        try {
+            if(!committed && !isNested()) conn.rollback();
+            conn.setAutoCommit(originalAutoCommit);
+        }
+        finally {
+            registrar(event, committed, isNested());
+        }
+    }
+
+    /**
+     * Registra en JFR el final de una transacción.
+     * @param event El evento, comenzado al iniciarse la transacción.
+     * @param committed Si la transacción se ha confirmado.
+     * @param nested Si forma parte de otra transacción.
+     */
+    private static void registrar(TransactionEvent event, boolean committed, boolean nested) {
+        if(event.shouldCommit()) {
+            event.committed = committed;
+            event.nested = nested;
+            event.commit();
+        }
     }
 
     /**
@@ -102,10 +124,13 @@ public class TransactionManager implements AutoCloseable {
     public static void transactionSQL(Connection conn, Transactionable operations) throws DataAccessException {
         boolean originalAutoCommit = true;
         boolean rollback = false;
+        TransactionEvent event = new TransactionEvent();
+        event.begin();
 
         try {
             if(conn == null) throw new IllegalArgumentException("La conexión no puede ser nula");
             if(!conn.isValid(0)) throw new SQLException("La conexión debe ser válida");
+            originalAutoCommit = conn.getAutoCommit();
             conn.setAutoCommit(false);
             
             operations.run(conn);
@@ -122,11 +147,19 @@ public class TransactionManager implements AutoCloseable {
         }
         finally {
             try {
-                if(!originalAutoCommit && !rollback) conn.commit();
+                // Si la transacción forma parte de otra, es esta la que confirma.
+                if(originalAutoCommit) {
+                    if(!rollback) conn.commit();
+                    conn.setAutoCommit(true);
+                }
             }
             catch(SQLException err) {
+                rollback = true;
                 throw new DataAccessException(err);
             }
+            finally {
+                registrar(event, !rollback, !originalAutoCommit);
+            }
         }
     }
 }
\ No newline at end of file
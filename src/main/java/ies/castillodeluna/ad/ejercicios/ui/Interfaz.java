@@ -1,12 +1,16 @@
 package ies.castillodeluna.ad.ejercicios.ui;
 
+import ies.castillodeluna.ad.ejercicios.FkPrefetcher;
 import ies.castillodeluna.ad.ejercicios.backend.Conexion;
 import ies.castillodeluna.ad.ejercicios.model.Cliente;
 import ies.castillodeluna.ad.ejercicios.model.Pedido;
+import ies.castillodeluna.ad.ejercicios.model.ResumenPedidos;
 import ies.castillodeluna.ad.ejercicios.model.ZonaEnvio;
 import ies.castillodeluna.ad.ejercicios.DAO.Crud;
+import ies.castillodeluna.ad.ejercicios.DAO.PedidoDao;
 
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 public class Interfaz {
     private static final Scanner scanner = new Scanner(System.in);
@@ -26,6 +30,7 @@ public class Interfaz {
             System.out.println("3. Consultar Zonas de Envío");
             System.out.println("4. Consultar Clientes");
             System.out.println("5. Consultar Pedidos por Cliente");
+            System.out.println("6. Consultar Ventas por Zona");
             System.out.println("0. Salir");
 
             int opcion = leerEntero("Seleccione una opción: ");
@@ -45,6 +50,9 @@ public class Interfaz {
                 case 5:
                     consultarPedidosPorCliente();  // Llama a la función para consultar los pedidos por cliente
                     break;
+                case 6:
+                    consultarVentasPorZona();  // Llama a la función para consultar las ventas de cada zona
+                    break;
                 case 0:
                     return;  // Sale del programa
                 default:
@@ -147,14 +155,18 @@ public class Interfaz {
     // Consultar todos los clientes registrados
     private void consultarClientes() {
         Crud<Cliente> clienteDao = conexion.getClienteDao();
-        try {
+        Crud<ZonaEnvio> zonaEnvioDao = conexion.getZonaEnvioDao();
+        // Las zonas se consultan por lotes, no una vez por cada cliente
+        try (Stream<Cliente> clientes = new FkPrefetcher<>(clienteDao.get())
+                .setFk(Cliente::getIdZonaEnvio, Cliente::setZona, zonaEnvioDao)
+                .stream()) {
             // Obtener todos los clientes y mostrar sus datos completos
-            clienteDao.get().forEach(cliente -> {
+            clientes.forEach(cliente -> {
                 System.out.println("ID: " + cliente.getId() + 
                                    " | Nombre: " + cliente.getNombre() + 
                                    " | Email: " + cliente.getEmail() + 
                                    " | Teléfono: " + cliente.getTelefono() + 
-                                   " | ID Zona: " + cliente.getIdZonaEnvio());
+                                   " | Zona: " + cliente.getZona().getNombre());
             });
         } catch (Exception e) {
             System.out.println("Error al consultar clientes: " + e.getMessage());
@@ -165,17 +177,34 @@ public class Interfaz {
     // Consultar los pedidos de un cliente y su dinero total
     private void consultarPedidosPorCliente() {
         int clienteId = leerEntero("Introduce ID del cliente para ver sus pedidos: ");
-        Crud<Pedido> pedidoDao = conexion.getPedidoDao();
+        PedidoDao pedidoDao = conexion.getPedidoDao();
 
+        // La base de datos sólo devuelve los pedidos del cliente (usando el índice sobre id_cliente).
         try {
-            // Filtrar y mostrar los pedidos del cliente con el ID proporcionado
-            pedidoDao.get()
-                    .filter(pedido -> pedido.getIdCliente() == clienteId)
-                    .forEach(pedido -> {
-                        System.out.println("Pedido ID: " + pedido.getId() + " | Dinero: " + pedido.getImporte());
-                    });
+            try (Stream<Pedido> pedidos = pedidoDao.getByCliente(clienteId)) {
+                pedidos.forEach(pedido -> {
+                    System.out.println("Pedido ID: " + pedido.getId() + " | Dinero: " + pedido.getImporte());
+                });
+            }
+            // El total lo calcula la base de datos, una vez cerrado el flujo (y liberada su conexión).
+            ResumenPedidos resumen = pedidoDao.getResumenCliente(clienteId);
+            System.out.println("Pedidos: " + resumen.pedidos() + " | Dinero total: " + resumen.total());
         } catch (Exception e) {
             System.out.println("Error al consultar pedidos: " + e.getMessage());
         }
     }
+
+    // Consultar el número de pedidos y el dinero total de cada zona de envío
+    private void consultarVentasPorZona() {
+        PedidoDao pedidoDao = conexion.getPedidoDao();
+
+        try (Stream<ResumenPedidos> resumenes = pedidoDao.getResumenPorZona()) {
+            resumenes.forEach(resumen -> {
+                System.out.println("Zona ID: " + resumen.id() + " | Pedidos: " + resumen.pedidos() +
+                                    " | Dinero total: " + resumen.total() + " | Media: " + resumen.media());
+            });
+        } catch (Exception e) {
+            System.out.println("Error al consultar ventas: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,3 @@
+-- Índice para las consultas de pedidos por cliente.
+-- IF NOT EXISTS, porque las bases de datos creadas antes de existir las migraciones pueden tenerlo.
+CREATE INDEX IF NOT EXISTS idx_pedidos_cliente ON Pedidos(id_cliente);
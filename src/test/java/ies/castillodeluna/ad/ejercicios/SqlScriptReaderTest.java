@@ -0,0 +1,152 @@
+package ies.castillodeluna.ad.ejercicios;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class SqlScriptReaderTest {
+
+    // Tamaño del búfer de SqlScriptReader.
+    private final static int BUFFER = 8192;
+
+    private static List<String> leer(String guion) {
+        return leer(new StringReader(guion));
+    }
+
+    private static List<String> leer(Reader reader) {
+        return new SqlScriptReader(reader).stream().toList();
+    }
+
+    /**
+     * Lector que entrega el texto de carácter en carácter, como puede hacerlo
+     * un lector de red o de un fichero comprimido.
+     */
+    private static class LectorLento extends Reader {
+        private final StringReader reader;
+
+        public LectorLento(String texto) {
+            reader = new StringReader(texto);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return reader.read(cbuf, off, Math.min(len, 1));
+        }
+
+        @Override
+        public void close() {
+            reader.close();
+        }
+    }
+
+    @Test
+    void separaLasSentenciasPorPuntoYComa() {
+        assertEquals(
+            List.of("CREATE TABLE t (id INTEGER)", "INSERT INTO t VALUES (1)", "SELECT * FROM t"),
+            leer("CREATE TABLE t (id INTEGER);\nINSERT INTO t VALUES (1);  SELECT * FROM t")
+        );
+    }
+
+    @Test
+    void ignoraLasSentenciasVacias() {
+        assertEquals(List.of("SELECT 1"), leer(";;\n  ;SELECT 1;;  \n"));
+        assertEquals(List.of(), leer("  \n -- sólo un comentario\n"));
+    }
+
+    @Test
+    void devuelveNullAlAcabar() throws IOException {
+        SqlScriptReader sr = new SqlScriptReader(new StringReader("SELECT 1;"));
+        assertEquals("SELECT 1", sr.next());
+        assertNull(sr.next());
+        assertNull(sr.next());
+    }
+
+    @Test
+    void noCortaElCuerpoDeUnDisparador() {
+        String disparador = """
+            CREATE TRIGGER borrar_pedidos AFTER DELETE ON Clientes
+            BEGIN
+                DELETE FROM Pedidos WHERE id_cliente = OLD.id_cliente;
+                INSERT INTO Log (texto) VALUES ('borrado');
+            END""";
+        assertEquals(List.of(disparador, "SELECT 1"), leer(disparador + ";\nSELECT 1;"));
+    }
+
+    @Test
+    void noCortaUnCaseDentroDeUnDisparador() {
+        String disparador = """
+            CREATE TRIGGER clasificar AFTER INSERT ON Pedidos
+            BEGIN
+                UPDATE Pedidos SET tipo = CASE WHEN NEW.importe_total > 100 THEN 'grande' ELSE 'normal' END
+                WHERE id_pedido = NEW.id_pedido;
+                UPDATE Clientes SET nivel = CASE nivel WHEN 1 THEN 2 END WHERE id_cliente = NEW.id_cliente;
+            END""";
+        assertEquals(List.of(disparador, "SELECT 2"), leer(disparador + ";SELECT 2"));
+    }
+
+    @Test
+    void noCortaUnCaseFueraDeUnDisparador() {
+        String consulta = "SELECT CASE WHEN x > 0 THEN 'a;b' ELSE 'c' END FROM t";
+        assertEquals(List.of(consulta, "SELECT 3"), leer(consulta + "; SELECT 3;"));
+    }
+
+    @Test
+    void distingueLasTransaccionesDeLosBloques() {
+        assertEquals(
+            List.of("BEGIN TRANSACTION", "INSERT INTO t VALUES (1)", "END"),
+            leer("BEGIN TRANSACTION;\nINSERT INTO t VALUES (1);\nEND;")
+        );
+        assertEquals(
+            List.of("begin", "DELETE FROM t", "COMMIT", "SELECT 4"),
+            leer("begin; DELETE FROM t; COMMIT; SELECT 4;")
+        );
+    }
+
+    @Test
+    void noCortaLosPuntoYComaEntrecomillados() {
+        List<String> sentencias = List.of(
+            "INSERT INTO t VALUES ('a;b', 'it''s; fine')",
+            "SELECT \"col;1\", `col;2`, [col;3] FROM t",
+            "SELECT 'fin'"
+        );
+        assertEquals(sentencias, leer(String.join(";\n", sentencias) + ";"));
+    }
+
+    @Test
+    void eliminaLosComentarios() {
+        assertEquals(
+            List.of("SELECT 1", "SELECT  \n 2", "SELECT 3 - 1 / 1"),
+            leer("SELECT 1; -- comentario; con punto y coma\nSELECT /* otro; */\n 2;\nSELECT 3 - 1 / 1;")
+        );
+    }
+
+    /**
+     * Coloca el inicio de un comentario en torno al límite del búfer, de modo que
+     * sus dos caracteres de apertura pueden quedar en lecturas distintas.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = { -3, -2, -1, 0, 1, 2 })
+    void reconoceLosComentariosEnElLimiteDelBufer(int desplazamiento) {
+        String relleno = "SELECT '" + "x".repeat(BUFFER + desplazamiento - 11) + "';";
+        String guion = relleno + "--; no es una sentencia\nSELECT 1;" + relleno + "/*; tampoco */SELECT 2;";
+        List<String> esperado = List.of(relleno.substring(0, relleno.length() - 1), "SELECT 1", relleno.substring(0, relleno.length() - 1), "SELECT 2");
+
+        assertEquals(esperado, leer(guion));
+        assertEquals(esperado, leer(new LectorLento(guion)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { -2, -1, 0, 1 })
+    void reconoceLasComillasDuplicadasEnElLimiteDelBufer(int desplazamiento) {
+        String sentencia = "SELECT '" + "x".repeat(BUFFER + desplazamiento - 8) + "'';'";
+        assertEquals(List.of(sentencia, "SELECT 5"), leer(sentencia + ";SELECT 5;"));
+    }
+}
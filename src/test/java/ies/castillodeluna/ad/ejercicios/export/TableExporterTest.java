@@ -0,0 +1,109 @@
+package ies.castillodeluna.ad.ejercicios.export;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import ies.castillodeluna.ad.ejercicios.Entity;
+import ies.castillodeluna.ad.ejercicios.DAO.Crud;
+import ies.castillodeluna.ad.ejercicios.backend.sqlite.ConexionSqlite;
+import ies.castillodeluna.ad.ejercicios.importer.ImportFormat;
+import ies.castillodeluna.ad.ejercicios.importer.ImportReport;
+import ies.castillodeluna.ad.ejercicios.importer.ImportTarget;
+import ies.castillodeluna.ad.ejercicios.model.Cliente;
+import ies.castillodeluna.ad.ejercicios.model.Pedido;
+import ies.castillodeluna.ad.ejercicios.model.ZonaEnvio;
+
+/**
+ * Lo que se exporta de una tabla puede volver a importarse tal cual en otra base de datos.
+ */
+class TableExporterTest {
+
+    @TempDir
+    Path dir;
+
+    private static ConexionSqlite abrir(Path db) throws Exception {
+        Map<String, Object> opciones = new HashMap<>();
+        opciones.put("url", db.toString());
+        return new ConexionSqlite(opciones);
+    }
+
+    /**
+     * Deja la base de datos sin clientes ni pedidos (el esquema crea algunos clientes).
+     */
+    private static void vaciar(ConexionSqlite conexion) throws Exception {
+        Crud<Cliente> clienteDao = conexion.getClienteDao();
+        for(String cliente: describir(clienteDao, TableExporterTest::describir)) {
+            clienteDao.delete(Integer.parseInt(cliente.substring(0, cliente.indexOf('|'))));
+        }
+    }
+
+    private static <T extends Entity> List<String> describir(Crud<T> dao, Function<T, String> campos) throws Exception {
+        try(Stream<T> stream = dao.get()) {
+            return stream.map(campos).toList();
+        }
+    }
+
+    private static String describir(Cliente c) {
+        return String.join("|", String.valueOf(c.getId()), c.getNombre(), c.getEmail(), String.valueOf(c.getTelefono()), String.valueOf(c.getIdZonaEnvio()));
+    }
+
+    private static String describir(Pedido p) {
+        return String.join("|", String.valueOf(p.getId()), String.valueOf(p.getFecha().getTime()), String.valueOf(p.getImporte()), String.valueOf(p.getIdCliente()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExportFormat.class)
+    void loExportadoSeImportaIgual(ExportFormat formato) throws Exception {
+        Path clientes = dir.resolve("clientes." + formato.getExtension());
+        Path pedidos = dir.resolve("pedidos." + formato.getExtension());
+        List<String> clientesOrigen, pedidosOrigen;
+
+        try(ConexionSqlite origen = abrir(dir.resolve("origen.db"))) {
+            origen.getZonaEnvioDao().insert(new ZonaEnvio(0, "Este", 6.25));
+            origen.getClienteDao().insert(List.of(
+                new Cliente(0, "Pérez, Ana", "ana@example.com", "600111222", 1),
+                new Cliente(0, "Luis \"el Rápido\"", "luis@example.com", null, 2),
+                new Cliente(0, "Zoë 😀 \\ barra", "zoe@example.com", "+34 600 000 000", 3)
+            ));
+            origen.getPedidoDao().insert(List.of(
+                new Pedido(0, new Date(1_700_000_000_000L), 12.34, 1),
+                new Pedido(0, new Date(1_600_000_000_000L), 0, 2),
+                new Pedido(0, new Date(1_500_000_000_000L), 99_999_999.99, 7)
+            ));
+            // Hueco en los identificadores: se conservan al importar.
+            origen.getPedidoDao().delete(2);
+
+            clientesOrigen = describir(origen.getClienteDao(), TableExporterTest::describir);
+            pedidosOrigen = describir(origen.getPedidoDao(), TableExporterTest::describir);
+            TableExporter exporter = new TableExporter(formato);
+            assertEquals(clientesOrigen.size(), origen.getExportable(Cliente.class).export(exporter, clientes));
+            assertEquals(pedidosOrigen.size(), origen.getExportable(Pedido.class).export(exporter, pedidos));
+        }
+
+        try(ConexionSqlite destino = abrir(dir.resolve("destino.db"))) {
+            vaciar(destino);
+            destino.getZonaEnvioDao().insert(new ZonaEnvio(0, "Este", 6.25));
+            ImportFormat importFormat = ImportFormat.valueOf(formato.name());
+            ImportReport report = destino.importar(ImportTarget.CLIENTES, importFormat, clientes, null);
+            assertEquals(List.of(), report.rejections());
+            assertEquals(clientesOrigen.size(), report.inserted());
+            report = destino.importar(ImportTarget.PEDIDOS, importFormat, pedidos, null);
+            assertEquals(List.of(), report.rejections());
+            assertEquals(pedidosOrigen.size(), report.inserted());
+
+            assertEquals(clientesOrigen, describir(destino.getClienteDao(), TableExporterTest::describir));
+            assertEquals(pedidosOrigen, describir(destino.getPedidoDao(), TableExporterTest::describir));
+        }
+    }
+}
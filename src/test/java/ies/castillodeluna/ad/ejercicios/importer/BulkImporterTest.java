@@ -0,0 +1,87 @@
+package ies.castillodeluna.ad.ejercicios.importer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.sqlite.SQLiteDataSource;
+
+import ies.castillodeluna.ad.ejercicios.backend.sqlite.ConexionSqlite;
+import ies.castillodeluna.ad.ejercicios.backend.sqlite.SqliteProfile;
+
+/**
+ * Los números de línea de los rechazos son los del fichero aunque
+ * el fichero se divida en muchos tramos.
+ */
+class BulkImporterTest {
+
+    // Tramos de unas pocas líneas.
+    private final static int CHUNK = 200;
+    private final static int REGISTROS = 400;
+
+    @TempDir
+    Path dir;
+
+    private static String linea(ImportFormat formato, int id, String email, int zona) {
+        return switch(formato) {
+            case CSV -> String.format("%d,Cliente %d,%s,,%d", id, id, email, zona);
+            case JSONL -> String.format("{\"id_cliente\": %d, \"nombre\": \"Cliente %d\", \"email\": \"%s\", \"id_zona\": %d}", id, id, email, zona);
+        };
+    }
+
+    @ParameterizedTest
+    @EnumSource(ImportFormat.class)
+    void losRechazosConservanSuNumeroDeLinea(ImportFormat formato) throws Exception {
+        Path db = dir.resolve("clientes.db");
+        Map<String, Object> opciones = new HashMap<>();
+        opciones.put("url", db.toString());
+        // Crea el esquema, que ya tiene los clientes 1 a 4 y las zonas 1 y 2.
+        new ConexionSqlite(opciones).close();
+
+        StringBuilder sb = new StringBuilder();
+        int numero = 0;
+        if(formato.hasHeader()) {
+            sb.append("id_cliente,nombre,email,telefono,id_zona\r\n");
+            numero++;
+        }
+        List<Long> esperados = new ArrayList<>();
+        int validos = 0;
+        for(int i = 1; i <= REGISTROS; i++) {
+            if(i % 11 == 0) {
+                sb.append(i % 22 == 0 ? "\n" : "  \r\n");
+                numero++;
+            }
+            int id = 100 + i;
+            String email = String.format("c%d@example.com", i);
+            int zona = i % 2 + 1;
+            if(i % 17 == 0) email = "sin-arroba";
+            else if(i % 23 == 0) zona = 9;
+            else if(i % 97 == 0) id = i / 97;   // Ya existe: viola la clave primaria.
+            else validos++;
+
+            sb.append(linea(formato, id, email, zona)).append(i % 2 == 0 ? "\n" : "\r\n");
+            numero++;
+            if(i % 17 == 0 || i % 23 == 0 || i % 97 == 0) esperados.add((long) numero);
+        }
+        Path fichero = dir.resolve("clientes." + formato.name().toLowerCase());
+        Files.writeString(fichero, sb);
+
+        SQLiteDataSource ds = new SQLiteDataSource();
+        ds.setUrl("jdbc:sqlite:" + db);
+        ImportReport report = new BulkImporter(ds, SqliteProfile.OLTP, 3, null, CHUNK)
+            .importar(ImportTarget.CLIENTES, formato, fichero);
+
+        assertEquals(validos, report.inserted());
+        assertEquals(esperados.size(), report.rejected());
+        assertEquals(esperados, report.rejections().stream().map(ImportReport.Rejection::line).toList());
+        assertEquals(numero - (formato.hasHeader() ? 1 : 0), report.lines());
+    }
+}
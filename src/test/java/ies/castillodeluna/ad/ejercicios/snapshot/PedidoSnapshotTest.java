@@ -0,0 +1,102 @@
+package ies.castillodeluna.ad.ejercicios.snapshot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ies.castillodeluna.ad.ejercicios.DAO.PedidoDao;
+import ies.castillodeluna.ad.ejercicios.backend.sqlite.ConexionSqlite;
+import ies.castillodeluna.ad.ejercicios.model.Pedido;
+import ies.castillodeluna.ad.ejercicios.model.ResumenPedidos;
+
+/**
+ * La instantánea, recién generada y tras actualizarse, da los mismos
+ * resultados que las consultas de agregación de la base de datos.
+ */
+class PedidoSnapshotTest {
+
+    // Margen para las sumas, que no se hacen en el mismo orden.
+    private final static double DELTA = 1e-6;
+
+    @TempDir
+    Path dir;
+
+    private static List<Pedido> pedidos(int n, int desde) {
+        List<Pedido> pedidos = new ArrayList<>(n);
+        for(int i = 0; i < n; i++) {
+            int k = desde + i;
+            pedidos.add(new Pedido(0, new Date(1_600_000_000_000L + k * 3_600_000L), (k % 1000) * 0.37 + 0.01, k % 4 + 1));
+        }
+        return pedidos;
+    }
+
+    /**
+     * Compara la instantánea con los resúmenes que calcula la base de datos.
+     */
+    private static void comparar(PedidoSnapshot snapshot, PedidoDao dao) throws Exception {
+        Map<Integer, ResumenPedidos> resumenes = new HashMap<>();
+        try(Stream<ResumenPedidos> stream = dao.getResumenPorCliente()) {
+            stream.forEach(r -> resumenes.put(r.id(), r));
+        }
+
+        long pedidos = 0;
+        double total = 0;
+        for(int idCliente = 1; idCliente <= 5; idCliente++) {
+            ResumenPedidos esperado = dao.getResumenCliente(idCliente);
+            ResumenPedidos resumen = snapshot.getResumenCliente(idCliente);
+            assertEquals(esperado.pedidos(), resumen.pedidos());
+            assertEquals(esperado.total(), resumen.total(), DELTA);
+            assertEquals(esperado.media(), resumen.media(), DELTA);
+            if(esperado.pedidos() > 0) assertEquals(esperado.pedidos(), resumenes.get(idCliente).pedidos());
+            pedidos += esperado.pedidos();
+            total += esperado.total();
+        }
+        assertEquals(pedidos, snapshot.size());
+        assertEquals(total, snapshot.sumImporte(), DELTA);
+        assertEquals(snapshot.size(), snapshot.count((id, cliente, fecha, importe) -> true));
+    }
+
+    @Test
+    void coincideConLasConsultasTrasGenerarseYActualizarse() throws Exception {
+        Map<String, Object> opciones = new HashMap<>();
+        opciones.put("url", dir.resolve("pedidos.db").toString());
+        Path fichero = dir.resolve("pedidos.snap");
+
+        try(ConexionSqlite conexion = new ConexionSqlite(opciones)) {
+            PedidoDao dao = conexion.getPedidoDao();
+            // Más de un bloque, con el último incompleto.
+            int n = PedidoSnapshot.BLOCK_ROWS + 1000;
+            dao.insert(pedidos(n, 0));
+
+            assertEquals(n, conexion.snapshotPedidos(fichero, true));
+            PedidoSnapshot snapshot = PedidoSnapshot.open(fichero);
+            assertEquals(n, snapshot.size());
+            comparar(snapshot, dao);
+
+            // Sin pedidos nuevos no cambia nada.
+            assertEquals(0, conexion.snapshotPedidos(fichero, false));
+            assertEquals(n, PedidoSnapshot.open(fichero).size());
+
+            dao.insert(pedidos(500, n));
+            assertEquals(500, conexion.snapshotPedidos(fichero, false));
+            snapshot = PedidoSnapshot.open(fichero);
+            assertEquals(n + 500, snapshot.size());
+            // La base de datos está recién creada: los identificadores empiezan en 1.
+            assertEquals(n + 500, snapshot.getMaxId());
+            comparar(snapshot, dao);
+
+            // Generarla de nuevo da lo mismo que actualizarla.
+            assertEquals(n + 500, conexion.snapshotPedidos(fichero, true));
+            comparar(PedidoSnapshot.open(fichero), dao);
+        }
+    }
+}